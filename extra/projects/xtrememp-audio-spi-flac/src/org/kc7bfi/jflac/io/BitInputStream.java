@@ -185,6 +185,43 @@ public class BitInputStream {
         }
     }
     
+    /**
+     * Consume bits and update CRC-16 with the bytes fully consumed. The bits
+     * must be available.
+     * @param bits  Number of bits to consume
+     */
+    private void consume(int bits) {
+        int end = getBit + bits;
+        int bytes = end >> 3;
+        for (int i = 0; i < bytes; i++) {
+            readCRC16 = CRC16.update(buffer[getByte + i], readCRC16);
+        }
+        getByte += bytes;
+        getBit = end & 7;
+        availBits -= bits;
+        totalBitsRead += bits;
+    }
+    
+    /**
+     * Return next bits without consuming them. The bits are extracted at once
+     * from a word assembled from the buffered bytes, not one by one.
+     * @param bits  The number of bits to peek at, 1 to 32
+     * @return      The bits as an unsigned integer
+     * @throws IOException  Thrown if error reading input stream
+     */
+    private int peekBits(int bits) throws IOException {
+        while (availBits < bits) {
+            readFromStream();
+        }
+        int end = getBit + bits;
+        int bytes = (end + 7) >> 3; // at most 5
+        long word = 0;
+        for (int i = 0; i < bytes; i++) {
+            word = (word << 8) | (buffer[getByte + i] & 0xff);
+        }
+        return (int) ((word >>> ((bytes << 3) - end)) & (0xFFFFFFFFL >>> (32 - bits)));
+    }
+    
     /**
      * read a single bit.
      * @return  The bit
@@ -298,10 +335,9 @@ public class BitInputStream {
      * @throws IOException  Thrown if error reading input stream
      */
     public int readRawUInt(int bits) throws IOException {
-        int val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = readBitToInt(val);
-        }
+        if (bits == 0) { return 0; }
+        int val = peekBits(bits);
+        consume(bits);
         return val;
     }
     
@@ -312,11 +348,8 @@ public class BitInputStream {
      * @throws IOException  Thrown if error reading input stream
      */
     public int peekRawUInt(int bits) throws IOException {
-        int val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = peekBitToInt(val, i);
-        }
-        return val;
+        if (bits == 0) { return 0; }
+        return peekBits(bits);
     }
     
     /**
@@ -327,22 +360,11 @@ public class BitInputStream {
      */
     public int readRawInt(int bits) throws IOException { 
         if (bits == 0) { return 0; }
-        int uval = 0;
-        for (int i = 0; i < bits; i++) {
-            uval = readBitToInt(uval);
-        }
+        int uval = readRawUInt(bits);
         
         // fix the sign
-        int val;
         int bitsToleft = 32 - bits;
-        if (bitsToleft != 0) {
-            uval <<= bitsToleft;
-            val = uval;
-            val >>= bitsToleft;
-        } else {
-            val = uval;
-        }
-        return val;
+        return (uval << bitsToleft) >> bitsToleft;
     }
     
     /**
@@ -352,11 +374,12 @@ public class BitInputStream {
      * @throws IOException  Thrown if error reading input stream
      */
     public long readRawULong(int bits) throws IOException {
-        long val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = readBitToLong(val);
+        if (bits <= 32) {
+            return readRawUInt(bits) & 0xFFFFFFFFL;
         }
-        return val;
+        long hi = readRawUInt(bits - 32) & 0xFFFFFFFFL;
+        long lo = readRawUInt(32) & 0xFFFFFFFFL;
+        return (hi << 32) | lo;
     }
     
     /**
@@ -406,11 +429,25 @@ public class BitInputStream {
     public int readUnaryUnsigned() throws IOException {
         int val = 0;
         while (true) {
-            int bit = readBit();
-            if (bit != 0) break;
-            val++;
+            while (availBits == 0) {
+                readFromStream();
+            }
+            // up to 8 buffered bytes at once, the consumed bits shifted out
+            int bytes = Math.min(8, putByte - getByte);
+            long word = 0;
+            for (int i = 0; i < bytes; i++) {
+                word = (word << 8) | (buffer[getByte + i] & 0xff);
+            }
+            word <<= 64 - (bytes << 3) + getBit;
+            if (word != 0) {
+                int zeros = Long.numberOfLeadingZeros(word);
+                consume(zeros + 1);
+                return val + zeros;
+            }
+            int bits = (bytes << 3) - getBit;
+            consume(bits);
+            val += bits;
         }
-        return val;
     }
     
     /**
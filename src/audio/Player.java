@@ -2,13 +2,11 @@
 package audio;
 
 import java.net.URI;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -21,18 +19,20 @@ import services.database.Db;
 import audio.tagging.Metadata;
 import audio.tagging.MetadataReader;
 import audio.tagging.MetadataWriter;
+import audio.tagging.TagWriteQueue;
 import layout.widget.controller.io.InOutput;
 import util.async.Async;
 import util.async.executor.EventReducer;
 import util.async.executor.FxTimer;
+import util.async.executor.MonitoredExecutor;
 import util.collections.mapset.MapSet;
 
 import static audio.tagging.Metadata.EMPTY;
-import static java.util.concurrent.TimeUnit.DAYS;
 import static util.async.executor.EventReducer.toLast;
 import static util.dev.Util.log;
 import static util.dev.Util.noØ;
 import static util.functional.Util.list;
+import static util.functional.Util.listRO;
 
 /**
  *
@@ -44,12 +44,18 @@ public class Player {
 
     public static final PlayerState state = PlayerState.deserialize();
 
-    public static final ExecutorService IO_THREAD = new ThreadPoolExecutor(1, 3, 0, DAYS, new LinkedBlockingQueue<>(), r -> {
-            Thread t = new Thread(r);
-                   t.setDaemon(true); // do not prevent application closing
-                   t.setName("tagging-thread");
-            return t;
-        });
+    /**
+     * Executor for playback control, e.g., creating playback, playing, checking whether item is
+     * playable. Latency sensitive, do not use for anything else.
+     */
+    public static final MonitoredExecutor PLAYBACK_THREAD = new MonitoredExecutor("playback-thread", 1, Thread.MAX_PRIORITY, 200);
+    /**
+     * Executor for reading and writing tags. Tasks may execute in parallel, but writing to the
+     * same file is serialized, see {@link MetadataWriter}.
+     */
+    public static final MonitoredExecutor IO_THREAD = new MonitoredExecutor("tagging-thread", 2, Thread.NORM_PRIORITY, -1);
+    /** Executor for refreshing application with changed metadata and other background updates. */
+    public static final MonitoredExecutor REFRESH_THREAD = new MonitoredExecutor("refresh-thread", 1, Thread.MIN_PRIORITY, -1);
 
     public static void initialize() {
         PLAYBACK.initialize();
@@ -81,12 +87,13 @@ public class Player {
         playingtem.onChange(m -> state.playback.duration.set(m.getLength()));
         // maintain PLAYED_FIRST_TIME & PLAYED_LAST_TIME metadata
         // note: for performance reasons we update AFTER song stops playing, not WHEN it starts
-        // as with playcount incrementing, it could discrupt playback, although now we are losing
-        // updates on application closing!
+        // as with playcount incrementing, it could discrupt playback. The write is deferred and
+        // coalesced with other changes of the song, pending writes are flushed on application close
         playingtem.onChange((o,n) -> {
-            MetadataWriter.use(o, w -> {
-                w.setPlayedFirstNowIfEmpty();
-                w.setPlayedLastNow();
+            LocalDateTime now = LocalDateTime.now();
+            TagWriteQueue.enqueue(o, w -> {
+                w.setPlayedFirstIfEmpty(now);
+                w.setPlayedLast(now);
             });
         });
     }
@@ -192,13 +199,13 @@ public class Player {
         if(ms.isEmpty()) return;
 
         // always on br thread
-        IO_THREAD.execute(() -> {
+        REFRESH_THREAD.execute(() -> {
             // metadata map hashed with resource identity : O(n^2) -> O(n)
             MapSet<URI,Metadata> mm = new MapSet<>(Metadata::getURI,ms);
 
             // update library
             Db.updatePer(ms);
-            Db.updateInMemoryDBfromPersisted();
+            Db.updateInMemoryDB(listRO(), listRO(), ms);
 
             Async.runFX(() -> {
                 // update all playlist items referring to this updated metadata
@@ -242,20 +249,6 @@ public class Player {
             Metadata nv = new_metadata;
             val = nv;
 
-            // There is a small problem
-            // During tagging it is possible the playback needs to be suspended and activated
-            // This unfortunately cascades and fires this method, but suspending/activating
-            // should be transparent to playback song change/update events (not when app starts,
-            // only when tagging)
-            //
-            // This can lead to dangerous situations (rarely) for example when tagging suspends
-            // playback and calls this method and there is a listener to this which calls tagging
-            // this will cause infinite loop!
-            //
-            // for now we will use flag as dirty solution
-            if(PLAYBACK.suspension_flag) return;
-
-
             if(change) changes.forEach(h -> h.accept(ov,nv));
             updates.forEach(h -> h.accept(ov,nv));
         }
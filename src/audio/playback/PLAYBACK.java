@@ -44,7 +44,6 @@ import static javafx.scene.media.MediaPlayer.Status.PAUSED;
 import static javafx.scene.media.MediaPlayer.Status.PLAYING;
 import static javafx.util.Duration.millis;
 import static main.App.APP;
-import static util.async.Async.runFX;
 
 /**
  * Provides methods for player.
@@ -65,6 +64,16 @@ public final class PLAYBACK implements Configurable {
     public static Duration seekUnitT = millis(4000);
     @IsConfig(name="Seek fraction", info = "Relative time in fraction of song's length to seek forward/backward by.", min=0, max=1)
     public static double seekUnitP = 0.05;
+    @IsConfig(name="Progress update period", info = "Time between playback position updates for formats played without JavaFX (flac, ogg). Shorter period updates the position more smoothly, but costs more resources.")
+    public static Duration progressPeriod = millis(50);
+    @IsConfig(name="Spectrum bands", info = "Number of frequency bands of audio spectrum. Takes effect on next played item.", min=2, max=1024)
+    public static int spectrumBands = 128;
+    @IsConfig(name="Spectrum update rate", info = "Number of audio spectrum updates per second. Takes effect on next played item.", min=1, max=200)
+    public static double spectrumFps = 60;
+    @IsConfig(name="Read-ahead", info = "Length of audio decoded ahead of the playback for formats played without JavaFX (flac, ogg). Longer read-ahead protects the playback from slow disk or network better, but costs more memory. Takes effect on next played item.")
+    public static Duration readAhead = millis(3000);
+    @IsConfig(name="Gapless playback", info = "Prepares next item of the playlist ahead, so it follows the current one without a gap. For formats played without JavaFX (flac, ogg) and consecutive items with the same audio format.")
+    public static boolean gapless = true;
 
     public static final PlaybackState state = Player.state.playback;
     private static final GeneralPlayer player = new GeneralPlayer();
@@ -99,14 +108,6 @@ public final class PLAYBACK implements Configurable {
         activate();
     }
 
-    public static void suspend() {
-        suspension_flag = true;
-        LOGGER.info("Suspending playback");
-        state.realTime.set(getRealTime());
-        Player.state.serialize();
-        player.dispose();
-    }
-
     public static void activate() {
         LOGGER.info("Activating playback");
         post_activating = true;
@@ -120,10 +121,6 @@ public final class PLAYBACK implements Configurable {
         }
         if (s == PLAYING) {
             player.play(PlaylistManager.use(Playlist::getPlaying, null));
-            // suspension_flag = false; // set inside player.play();
-            runFX(200, () -> suspension_flag = false); // just in case som condition prevents resetting flag
-        } else {
-            suspension_flag = false;
         }
     }
 
@@ -133,8 +130,6 @@ public final class PLAYBACK implements Configurable {
     public static boolean post_activating = false;
     // this negates the above when app starts and playback is activated 1st time
     public static boolean post_activating_1st = true;
-    // this prevents update/change playing song events on suspension/activating, it is important (see where it is used)
-    public static boolean suspension_flag = false;
 
 
 /******************************************************************************/
@@ -0,0 +1,202 @@
+package audio.playback.player;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static util.dev.Util.log;
+import static util.file.Util.getSuffix;
+
+/**
+ * Snapshot of an audio file made for its playback, so the file is not held open while it plays and
+ * the playback is not affected when the file is written to.
+ * <p/>
+ * On some platforms an open file can not be written to, so writing tag of the playing file would
+ * require suspending the playback. Streams of the snapshot never keep the file open, instead they
+ * read it in chunks of {@link #CHUNK_SIZE} bytes, reopening it and seeking to the current position
+ * for every chunk. Writes of the file must go through {@link #write(java.io.File, Write)}, which
+ * excludes the reads and before the file changes, copies it into a temporary file the snapshots
+ * of the file continue to read from (copy on write). The playback thus continues with the audio
+ * data as they were when it started, while the file is copied only if it is written to while it
+ * plays. The temporary file is deleted on {@link #dispose()}.
+ * <p/>
+ * Players that need a file they can keep open use {@link #ofCopy(java.io.File)} instead.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+public class FileSnapshot {
+
+    /** Number of bytes read from the file at once. */
+    public static final int CHUNK_SIZE = 256*1024;
+
+    // excludes reading the snapshots and writing the file, striped by file
+    private static final Object[] LOCKS = new Object[64];
+    static {
+        for(int i=0; i<LOCKS.length; i++) LOCKS[i] = new Object();
+    }
+    // snapshots to copy the file for before it is written to
+    private static final Set<FileSnapshot> LIVE = ConcurrentHashMap.newKeySet();
+
+    /** The original file. */
+    public final File file;
+    private final Object lock;
+    private volatile File copy;         // guarded by lock
+    private boolean disposed = false;   // guarded by lock
+
+    private FileSnapshot(File file, File copy) {
+        this.file = file;
+        this.lock = lockOf(file);
+        this.copy = copy;
+    }
+
+    /** Returns snapshot of the file. The file is not read until the snapshot is. */
+    public static FileSnapshot of(File f) {
+        FileSnapshot s = new FileSnapshot(f, null);
+        LIVE.add(s);
+        return s;
+    }
+
+    /** Returns snapshot of the file in temporary file, for players that can only play a file. */
+    public static FileSnapshot ofCopy(File f) throws IOException {
+        synchronized(lockOf(f)) {
+            return new FileSnapshot(f, copyOf(f));
+        }
+    }
+
+    /**
+     * Writes the file by the specified action. The snapshots of the file are not read in the
+     * meantime and if they would be affected, they are detached from the file first.
+     *
+     * @param f written file
+     * @param write action writing the file
+     * @throws Exception exception thrown by the action
+     */
+    public static void write(File f, Write write) throws Exception {
+        synchronized(lockOf(f)) {
+            for(FileSnapshot s : LIVE) {
+                if(s.file.equals(f) && s.copy==null) {
+                    try {
+                        s.copy = copyOf(f);
+                    } catch(IOException e) {
+                        log(FileSnapshot.class).warn("Can not copy {} before it is written, its playback may be affected", f, e);
+                    }
+                }
+            }
+            write.run();
+        }
+    }
+
+    /** @return new stream of the data of the snapshot, supports mark */
+    public InputStream open() {
+        return new BufferedInputStream(new ChunkInputStream());
+    }
+
+    /** @return temporary file of the snapshot or the original file if the snapshot has no copy */
+    public File getFile() {
+        File c = copy;
+        return c!=null ? c : file;
+    }
+
+    /** Deletes temporary file of the snapshot, if any. The snapshot must not be used anymore. */
+    public void dispose() {
+        LIVE.remove(this);
+        synchronized(lock) {
+            disposed = true;
+            if(copy!=null && copy.exists() && !copy.delete())
+                log(FileSnapshot.class).warn("Can not delete playback snapshot {}", copy);
+        }
+    }
+
+    private static File copyOf(File f) throws IOException {
+        // keep the suffix, players may recognize the format by it
+        File copy = Files.createTempFile("playback-", "." + getSuffix(f)).toFile();
+        Files.copy(f.toPath(), copy.toPath(), REPLACE_EXISTING);
+        return copy;
+    }
+
+    private static Object lockOf(File f) {
+        return LOCKS[(f.hashCode() & 0x7fffffff) % LOCKS.length];
+    }
+
+    /** Writing of a file. */
+    @FunctionalInterface
+    public interface Write {
+        void run() throws Exception;
+    }
+
+    /** Stream of the snapshot data, reading the file a chunk at a time, without keeping it open. */
+    private class ChunkInputStream extends InputStream {
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int chunkLength = 0;
+        private int chunkPos = 0;
+        private long pos = 0;           // position in the file of the end of the chunk
+        private boolean end = false;
+
+        @Override
+        public int read() throws IOException {
+            if(chunkPos>=chunkLength && !fill()) return -1;
+            return chunk[chunkPos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len==0) return 0;
+            if(chunkPos>=chunkLength && !fill()) return -1;
+            int n = Math.min(len, chunkLength-chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off, n);
+            chunkPos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            if(n<=0) return 0;
+            long buffered = chunkLength-chunkPos;
+            if(n<=buffered) {
+                chunkPos += n;
+            } else {
+                // the rest of the skip is checked against the end of the file on next read
+                pos += n-buffered;
+                chunkPos = chunkLength = 0;
+                end = false;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return chunkLength-chunkPos;
+        }
+
+        private boolean fill() throws IOException {
+            if(end) return false;
+            synchronized(lock) {
+                if(disposed) throw new IOException("Playback snapshot of " + file + " is disposed");
+                try(RandomAccessFile f = new RandomAccessFile(getFile(), "r")) {
+                    if(pos>=f.length()) {
+                        end = true;
+                        return false;
+                    }
+                    f.seek(pos);
+                    int n = f.read(chunk, 0, chunk.length);
+                    if(n<=0) {
+                        end = true;
+                        return false;
+                    }
+                    chunkLength = n;
+                    chunkPos = 0;
+                    pos += n;
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -12,6 +12,7 @@ import audio.playback.RealTimeProperty;
 import audio.playlist.Playlist;
 import audio.playlist.PlaylistItem;
 import audio.playlist.PlaylistManager;
+import audio.playlist.sequence.PlayingSequence.LoopMode;
 import audio.tagging.Metadata;
 import util.animation.Anim;
 import util.async.Async;
@@ -62,6 +63,14 @@ public class GeneralPlayer {
             return;
         }
 
+        // Do not recreate player if the item already plays, because it followed the previous one
+        // without a gap, see JavaSoundPlayer.prepareNext()
+        if(p==fp && fp.adoptPlayback(item)) {
+            i = item;
+            onPlaybackCreated(item, true);
+            return;
+        }
+
         i = item;
         if(p!=null) p.dispose();
         p = getPlayer(item);
@@ -69,24 +78,7 @@ public class GeneralPlayer {
         try {
             if(p==null) throw new NoPlayerException();
             p.createPlayback(item, state,
-                () -> {
-                    realTime.real_seek = state.realTime.get();
-                    realTime.curr_sek = ZERO;
-                    p.play();
-
-                    realTime.synchroRealTime_onPlayed();
-                    // throw item change event
-                    Player.playingtem.itemChanged(item);
-                    suspension_flag = false;
-                    // fire other events (may rely on the above)
-                    PLAYBACK.onPlaybackStart.run();
-                    if(post_activating_1st || !post_activating)
-                        // bug fix, not updated playlist items can get here, but should not!
-                        if(item.getTimeMs()>0)
-                            PLAYBACK.onPlaybackAt.forEach(t -> t.restart(item.getTime()));
-                    post_activating = false;
-                    post_activating_1st = false;
-                },
+                () -> onPlaybackCreated(item, false),
                 () -> runFX(() -> {
                     log(GeneralPlayer.class).info("Player {} can not play item {}", p,item);
                     item.playbackerror = true;
@@ -99,6 +91,35 @@ public class GeneralPlayer {
         }
     }
 
+    private void onPlaybackCreated(PlaylistItem item, boolean adopted) {
+        realTime.real_seek = state.realTime.get();
+        realTime.curr_sek = ZERO;
+        if(!adopted) p.play();
+
+        realTime.synchroRealTime_onPlayed();
+        // throw item change event
+        Player.playingtem.itemChanged(item);
+        // fire other events (may rely on the above)
+        PLAYBACK.onPlaybackStart.run();
+        if(post_activating_1st || !post_activating)
+            // bug fix, not updated playlist items can get here, but should not!
+            if(item.getTimeMs()>0)
+                PLAYBACK.onPlaybackAt.forEach(t -> t.restart(item.getTime()));
+        post_activating = false;
+        post_activating_1st = false;
+
+        prepareNext(item);
+    }
+
+    // prepares item that plays next when this one ends, so there is no gap between them
+    private void prepareNext(PlaylistItem item) {
+        PlaylistItem next = gapless && p==fp && state.loopMode.get()==LoopMode.PLAYLIST
+            ? PlaylistManager.use(Playlist::getNextPlaying, null)
+            : null;
+        // same item playing again is handled by seeking, see play()
+        fp.prepareNext(next!=null && !next.same(item) && getPlayer(next)==fp ? next : null);
+    }
+
     public void resume() {
         if(p==null) return;
         p.resume();
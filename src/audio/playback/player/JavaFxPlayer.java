@@ -5,6 +5,8 @@
  */
 package audio.playback.player;
 
+import java.io.IOException;
+
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.media.Media;
@@ -15,6 +17,8 @@ import javafx.util.Duration;
 
 import org.reactfx.Subscription;
 
+import org.controlsfx.tools.Platform;
+
 import audio.Item;
 import audio.Player;
 import audio.playback.PLAYBACK;
@@ -22,6 +26,7 @@ import audio.playback.PlaybackState;
 import util.dev.TODO;
 
 import static javafx.scene.media.MediaPlayer.Status.*;
+import static org.controlsfx.tools.Platform.WINDOWS;
 import static util.async.Async.runFX;
 import static util.dev.TODO.Purpose.BUG;
 import static util.dev.Util.log;
@@ -34,6 +39,7 @@ import static util.reactive.Util.maintain;
 public class JavaFxPlayer implements GeneralPlayer.Play {
 
     private MediaPlayer player;
+    private volatile FileSnapshot snapshot;
     private Subscription d1,d2,d3,d4,d5,d6,d7;
 
     @Override
@@ -67,23 +73,38 @@ public class JavaFxPlayer implements GeneralPlayer.Play {
             + "produces: 'á' (probably Unicode))")
     public void createPlayback(Item item, PlaybackState state, Runnable onOk, Runnable onFail) {
 
-        Player.IO_THREAD.execute(() -> {
+        Player.PLAYBACK_THREAD.execute(() -> {
+            // The media keeps the file open and on Windows an open file can not be written to,
+            // so there it plays from a copy and writing to the file (e.g. tag) does not interfere
+            // with playback. Elsewhere the file can be written to while it plays.
+            FileSnapshot snapshotOrNull = null;
+            if(item.isFileBased() && Platform.getCurrent()==WINDOWS) {
+                try {
+                    snapshotOrNull = FileSnapshot.ofCopy(item.getFile());
+                } catch(IOException e) {
+                    log(JavaFxPlayer.class).warn("Can not create playback snapshot of {}", item.getURI(), e);
+                }
+            }
+            FileSnapshot itemSnapshot = snapshotOrNull;
             Media media;
             try {
                 // bug here, which also
                 // blocks thread for like half second!, so i execute this not on fx
-                media = new Media(item.getURI().toString());
+                media = new Media(itemSnapshot==null ? item.getURI().toString() : itemSnapshot.getFile().toURI().toString());
             } catch(MediaException e) {
                 log(JavaFxPlayer.class).error("Media creation error for {}", item.getURI());
+                if(itemSnapshot!=null) itemSnapshot.dispose();
                 onFail.run();
                 return;
             }
             runFX(() -> {
                 player = new MediaPlayer(media);
+                // the snapshot is disposed together with the player that plays it
+                snapshot = itemSnapshot;
 
                 player.setStartTime(Duration.ZERO);
-                player.setAudioSpectrumInterval(0.01);
-                player.setAudioSpectrumNumBands(128);
+                player.setAudioSpectrumInterval(1/PLAYBACK.spectrumFps);
+                player.setAudioSpectrumNumBands(PLAYBACK.spectrumBands);
                 // player.setAudioSpectrumThreshold(i) // ? what val is ok?
                 player.setAudioSpectrumListener(PLAYBACK.spectrumListenerDistributor);
 
@@ -149,5 +170,10 @@ public class JavaFxPlayer implements GeneralPlayer.Play {
         // stop() not necessary, calling dispose stops playback and frees resources
         player.dispose();
         player = null;
+
+        // the player no longer holds the snapshot file open, so it can be deleted
+        FileSnapshot s = snapshot;
+        snapshot = null;
+        if(s!=null) s.dispose();
     }
 }
\ No newline at end of file
@@ -14,11 +14,13 @@ import audio.playback.player.xtrememp.audio.AudioPlayer;
 import audio.playback.player.xtrememp.audio.PlaybackEvent;
 import audio.playback.player.xtrememp.audio.PlaybackListener;
 import audio.playback.player.xtrememp.audio.PlayerException;
+import audio.playback.player.xtrememp.dsp.SpectrumAnalyzer;
 
 import static javafx.scene.media.MediaPlayer.Status.*;
 import static javafx.util.Duration.millis;
 import static util.async.Async.runFX;
 import static util.async.Async.runLater;
+import static util.dev.Util.log;
 
 /**
  *
@@ -27,6 +29,7 @@ import static util.async.Async.runLater;
 public class JavaSoundPlayer implements GeneralPlayer.Play {
 
     private final AudioPlayer p = new AudioPlayer();
+    private SpectrumAnalyzer spectrum;
     private double seeked = 0;
 
     public JavaSoundPlayer() {
@@ -42,19 +45,18 @@ public class JavaSoundPlayer implements GeneralPlayer.Play {
             }
 
             @Override public void playbackEndOfMedia(PlaybackEvent pe) {
+                if(pe.getProperties().containsKey("gapless"))
+                    log(JavaSoundPlayer.class).info("Gapless transition, gap: {}ms", p.getLastGap());
                 runLater(()->{
                     PLAYBACK.onPlaybackEnd.run();
                 });
             }
-            long l = 0;
+            // the events are throttled by the player, see AudioPlayer.setProgressPeriod()
             @Override public void playbackProgress(PlaybackEvent pe) {
-                l++;
-                if(l%2==0)  {// lets throttle the events a bit
-                    Duration d = millis(seeked+pe.getPosition()/1000);
-                    runLater(()->{
-                        PLAYBACK.state.currentTime.set(d);
-                    });
-                }
+                Duration d = millis(seeked+pe.getPosition()/1000);
+                runLater(()->{
+                    PLAYBACK.state.currentTime.set(d);
+                });
             }
 
             // state changes, impl detail is whether we update playback status
@@ -80,8 +82,11 @@ public class JavaSoundPlayer implements GeneralPlayer.Play {
 
     @Override
     public void createPlayback(Item item, PlaybackState state, Runnable onOk, Runnable onFail) {
-        Player.IO_THREAD.execute( () -> {
+        Player.PLAYBACK_THREAD.execute( () -> {
             try {
+                p.setProgressPeriod((long) (PLAYBACK.progressPeriod.toMillis()*1000));
+                p.setReadAheadTime((long) (PLAYBACK.readAhead.toMillis()*1000));
+                initSpectrum();
                 p.open(item.getFile());
                 p.setVolume(state.volume.get());
                 p.setMute(state.mute.get());
@@ -111,6 +116,36 @@ public class JavaSoundPlayer implements GeneralPlayer.Play {
         });
     }
 
+    /**
+     * Prepares the item to play after the current one, so it can follow it without a gap.
+     * @param item item to prepare or null to discard the prepared one
+     */
+    public void prepareNext(Item item) {
+        p.prepareNext(item==null || !item.isFileBased() ? null : item.getFile());
+    }
+
+    /**
+     * Returns true if the item already plays, because it followed the previous item without
+     * a gap. The playback is then used as if it was created for the item.
+     */
+    public boolean adoptPlayback(Item item) {
+        if(!item.isFileBased() || !p.adoptSplicedSource(item.getFile())) return false;
+        seeked = 0;
+        PLAYBACK.state.duration.set(millis(p.getDuration()/1000));
+        return true;
+    }
+
+    // spectrum for formats not played by javafx, the analyzer is recreated when settings change
+    private void initSpectrum() {
+        if(spectrum==null || spectrum.getBands()!=PLAYBACK.spectrumBands) {
+            if(spectrum!=null) p.getDSS().remove(spectrum);
+            spectrum = new SpectrumAnalyzer(PLAYBACK.spectrumBands, PLAYBACK.spectrumListenerDistributor, r -> runFX(r));
+            p.getDSS().add(spectrum);
+        }
+        spectrum.setInterval(1/PLAYBACK.spectrumFps);
+        p.getDSS().setBlockRate(PLAYBACK.spectrumFps);
+    }
+
     @Override
     public void dispose() {
         p.stop();
@@ -119,7 +154,7 @@ public class JavaSoundPlayer implements GeneralPlayer.Play {
     @Override
     public void play() {
         seeked = 0;
-        Player.IO_THREAD.execute( () -> {
+        Player.PLAYBACK_THREAD.execute( () -> {
             try {
                 p.play();
             } catch (PlayerException ex) {
@@ -137,7 +172,7 @@ public class JavaSoundPlayer implements GeneralPlayer.Play {
 
     @Override
     public void resume() {
-        Player.IO_THREAD.execute( () -> {
+        Player.PLAYBACK_THREAD.execute( () -> {
             try {
                 p.play();
             } catch (PlayerException ex) {
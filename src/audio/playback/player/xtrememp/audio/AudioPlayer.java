@@ -19,8 +19,12 @@
 package audio.playback.player.xtrememp.audio;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -62,11 +66,9 @@ import org.tritonus.share.sampled.TAudioFormat;
 import org.tritonus.share.sampled.file.TAudioFileFormat;
 
 import audio.playback.PLAYBACK;
+import audio.playback.player.FileSnapshot;
 import audio.playback.player.xtrememp.dsp.DigitalSignalSynchronizer;
 import javazoom.spi.PropertiesContainer;
-import util.dev.TODO;
-
-import static util.dev.TODO.Purpose.BUG;
 
 /**
  *
@@ -102,6 +104,27 @@ public class AudioPlayer implements Callable<Void> {
     protected volatile int state = AudioSystem.NOT_SPECIFIED;
     protected Map<String, Object> emptyMap = new HashMap<>();
     protected long oldPosition = 0;
+    protected SeekIndex seekIndex;
+    protected final PlaybackEvent progressEvent = new PlaybackEvent(this, Playback.PLAYING, 0, emptyMap);
+    protected long progressPeriod = 50000;
+    protected long progressLast = 0;
+    protected FileSnapshot snapshot;                // of the played file
+    // gapless playback
+    protected final ExecutorService prepareService;
+    protected volatile NextStream next;             // stream prepared to follow the current one
+    protected volatile long nextGeneration = 0;     // invalidates outdated preparations
+    protected volatile Object splicedSource;        // source continuing the previous one, until adopted
+    protected boolean splicePending = false;        // spliced source did not start playing yet
+    protected long splicePosition = 0;              // line position the spliced source starts at
+    protected long preDecodeTime = 2000000;
+    protected long audioEnd = -1;                   // time (ns) audio of naturally ended source ends
+    protected volatile long lastGap = -1;
+    // read-ahead decoding
+    protected final ExecutorService decodeService;
+    protected volatile ReadAheadBuffer readAhead;
+    protected long readAheadTime = 3000000;
+    protected boolean lineFilled = false;           // line has been written to since it started
+    protected volatile int underruns = 0;
 
     public AudioPlayer() {
         execService = Executors.newSingleThreadExecutor(r -> {
@@ -112,6 +135,19 @@ public class AudioPlayer implements Callable<Void> {
             t.setName("non-fx-playback-thread");
             return t;
         });
+        decodeService = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setPriority(Thread.MAX_PRIORITY);
+            t.setName("non-fx-decoding-thread");
+            return t;
+        });
+        prepareService = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("gapless-prepare-thread");
+            return t;
+        });
         dss = new DigitalSignalSynchronizer();
         listeners = new HashSet<>();
         reset();
@@ -159,6 +195,9 @@ public class AudioPlayer implements Callable<Void> {
         future = null;
         emptyMap.clear();
         oldPosition = 0;
+        seekIndex = null;
+        splicedSource = null;
+        splicePending = false;
     }
 
     /**
@@ -201,7 +240,9 @@ public class AudioPlayer implements Callable<Void> {
         lock.lock();
         try {
             reset();
-            initAudioInputStream();
+            if (!initPreparedAudioInputStream()) {
+                initAudioInputStream();
+            }
             initSourceDataLine();
         } finally {
             lock.unlock();
@@ -212,7 +253,6 @@ public class AudioPlayer implements Callable<Void> {
      * Inits AudioInputStream and AudioFileFormat from the data source.
      * @throws PlayerException
      */
-    @SuppressWarnings("unchecked")
     protected void initAudioInputStream() throws PlayerException {
         // Close any previous opened audio stream before creating a new one.
         closeStream();
@@ -224,70 +264,9 @@ public class AudioPlayer implements Callable<Void> {
                 } else if (audioSource instanceof URL) {
                     initAudioInputStream((URL) audioSource);
                 }
-                AudioFormat sourceFormat = audioInputStream.getFormat();
-                LOGGER.info("Source format: {}", sourceFormat);
-                int nSampleSizeInBits = sourceFormat.getSampleSizeInBits();
-                if (nSampleSizeInBits <= 0) {
-                    nSampleSizeInBits = 16;
-                }
-                if ((sourceFormat.getEncoding() == AudioFormat.Encoding.ULAW) || (sourceFormat.getEncoding() == AudioFormat.Encoding.ALAW)) {
-                    nSampleSizeInBits = 16;
-                }
-                if (nSampleSizeInBits != 8) {
-                    nSampleSizeInBits = 16;
-                }
-                // this fails for variable bitrate, needs a fix
-                AudioFormat targetFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(), nSampleSizeInBits, sourceFormat.getChannels(), sourceFormat.getChannels() * (nSampleSizeInBits / 8), sourceFormat.getSampleRate(), false);
-                LOGGER.info("Target format: {}", targetFormat);
                 // Create decoded stream.
-                audioInputStream = AudioSystem.getAudioInputStream(targetFormat, audioInputStream);
-                if (audioFileFormat instanceof TAudioFileFormat) {
-                    // Tritonus SPI compliant audio file format.
-                    properties = ((TAudioFileFormat) audioFileFormat).properties();
-                    // Clone the Map because it is not mutable.
-                    properties = deepCopy(properties);
-                } else {
-                    properties = new HashMap<String, Object>();
-                }
-
-                // Add JavaSound properties.
-                if (audioFileFormat.getByteLength() > 0) {
-                    properties.put("audio.length.bytes", new Integer(audioFileFormat.getByteLength()));
-                }
-                if (audioFileFormat.getFrameLength() > 0) {
-                    properties.put("audio.length.frames", new Integer(audioFileFormat.getFrameLength()));
-                }
-                if (audioFileFormat.getType() != null) {
-                    properties.put("audio.type", audioFileFormat.getType().toString());
-                }
-                // Audio format.
-                AudioFormat audioFormat = audioFileFormat.getFormat();
-                if (audioFormat.getFrameRate() > 0) {
-                    properties.put("audio.framerate.fps", new Float(audioFormat.getFrameRate()));
-                }
-                if (audioFormat.getFrameSize() > 0) {
-                    properties.put("audio.framesize.bytes", new Integer(audioFormat.getFrameSize()));
-                }
-                if (audioFormat.getSampleRate() > 0) {
-                    properties.put("audio.samplerate.hz", new Float(audioFormat.getSampleRate()));
-                }
-                if (audioFormat.getSampleSizeInBits() > 0) {
-                    properties.put("audio.samplesize.bits", new Integer(audioFormat.getSampleSizeInBits()));
-                }
-                if (audioFormat.getChannels() > 0) {
-                    properties.put("audio.channels", new Integer(audioFormat.getChannels()));
-                }
-                if (audioFormat instanceof TAudioFormat) {
-                    // Tritonus SPI compliant audio format.
-                    properties.putAll(((TAudioFormat) audioFormat).properties());
-                }
-                if (audioFormat instanceof FlacAudioFormat) {
-                    // Tritonus SPI compliant audio format.
-                    properties.putAll(((FlacAudioFormat) audioFormat).properties());
-                }
-                for (String key : properties.keySet()) {
-                    LOGGER.info("Audio Format Properties: {} = {}", key, properties.get(key));
-                }
+                audioInputStream = decode(audioInputStream);
+                properties = readProperties(audioFileFormat);
             } catch (UnsupportedAudioFileException ex) {
                 closeStream();
                 throw new PlayerException(ex);
@@ -297,6 +276,87 @@ public class AudioPlayer implements Callable<Void> {
             }
         }
     }
+
+    /**
+     * Returns stream decoding the specified stream to PCM.
+     * @param sourceStream
+     */
+    protected AudioInputStream decode(AudioInputStream sourceStream) {
+        AudioFormat sourceFormat = sourceStream.getFormat();
+        LOGGER.info("Source format: {}", sourceFormat);
+        int nSampleSizeInBits = sourceFormat.getSampleSizeInBits();
+        if (nSampleSizeInBits <= 0) {
+            nSampleSizeInBits = 16;
+        }
+        if ((sourceFormat.getEncoding() == AudioFormat.Encoding.ULAW) || (sourceFormat.getEncoding() == AudioFormat.Encoding.ALAW)) {
+            nSampleSizeInBits = 16;
+        }
+        if (nSampleSizeInBits != 8) {
+            nSampleSizeInBits = 16;
+        }
+        // this fails for variable bitrate, needs a fix
+        AudioFormat targetFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(), nSampleSizeInBits, sourceFormat.getChannels(), sourceFormat.getChannels() * (nSampleSizeInBits / 8), sourceFormat.getSampleRate(), false);
+        LOGGER.info("Target format: {}", targetFormat);
+        return AudioSystem.getAudioInputStream(targetFormat, sourceStream);
+    }
+
+    /**
+     * Returns properties of the audio file format.
+     * @param audioFileFormat
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> readProperties(AudioFileFormat audioFileFormat) {
+        Map<String, Object> properties;
+        if (audioFileFormat instanceof TAudioFileFormat) {
+            // Tritonus SPI compliant audio file format.
+            properties = ((TAudioFileFormat) audioFileFormat).properties();
+            // Clone the Map because it is not mutable.
+            properties = deepCopy(properties);
+        } else {
+            properties = new HashMap<String, Object>();
+        }
+
+        // Add JavaSound properties.
+        if (audioFileFormat.getByteLength() > 0) {
+            properties.put("audio.length.bytes", new Integer(audioFileFormat.getByteLength()));
+        }
+        if (audioFileFormat.getFrameLength() > 0) {
+            properties.put("audio.length.frames", new Integer(audioFileFormat.getFrameLength()));
+        }
+        if (audioFileFormat.getType() != null) {
+            properties.put("audio.type", audioFileFormat.getType().toString());
+        }
+        // Audio format.
+        AudioFormat audioFormat = audioFileFormat.getFormat();
+        if (audioFormat.getFrameRate() > 0) {
+            properties.put("audio.framerate.fps", new Float(audioFormat.getFrameRate()));
+        }
+        if (audioFormat.getFrameSize() > 0) {
+            properties.put("audio.framesize.bytes", new Integer(audioFormat.getFrameSize()));
+        }
+        if (audioFormat.getSampleRate() > 0) {
+            properties.put("audio.samplerate.hz", new Float(audioFormat.getSampleRate()));
+        }
+        if (audioFormat.getSampleSizeInBits() > 0) {
+            properties.put("audio.samplesize.bits", new Integer(audioFormat.getSampleSizeInBits()));
+        }
+        if (audioFormat.getChannels() > 0) {
+            properties.put("audio.channels", new Integer(audioFormat.getChannels()));
+        }
+        if (audioFormat instanceof TAudioFormat) {
+            // Tritonus SPI compliant audio format.
+            properties.putAll(((TAudioFormat) audioFormat).properties());
+        }
+        if (audioFormat instanceof FlacAudioFormat) {
+            // Tritonus SPI compliant audio format.
+            properties.putAll(((FlacAudioFormat) audioFormat).properties());
+        }
+        for (String key : properties.keySet()) {
+            LOGGER.info("Audio Format Properties: {} = {}", key, properties.get(key));
+        }
+        return properties;
+    }
+
     /**
      * Inits Audio resources from file.
      * @param file
@@ -304,7 +364,11 @@ public class AudioPlayer implements Callable<Void> {
      * @throws java.io.IOException
      */
     protected void initAudioInputStream(File file) throws UnsupportedAudioFileException, IOException {
-        audioInputStream = AudioSystem.getAudioInputStream(file);
+        // play from a snapshot, so writing to the file (e.g. tag) does not interfere with playback
+        if (snapshot == null || !snapshot.file.equals(file)) {
+            setSnapshot(FileSnapshot.of(file));
+        }
+        audioInputStream = AudioSystem.getAudioInputStream(snapshot.open());
         // wrap in buffer to support mark()
         BufferedInputStream bs = new BufferedInputStream(audioInputStream);
         audioInputStream = new AudioInputStream(bs, audioInputStream.getFormat(), audioInputStream.getFrameLength());
@@ -312,6 +376,7 @@ public class AudioPlayer implements Callable<Void> {
         // audioInputStream = AudioSystem.getAudioInputStream(file);
         audioInputStream.mark(Integer.MAX_VALUE);   // allows us to seek backwards if mark supported
         audioFileFormat = AudioSystem.getAudioFileFormat(file);
+        seekIndex = SeekIndex.of(file, audioFileFormat);
     }
 
     /**
@@ -393,6 +458,204 @@ public class AudioPlayer implements Callable<Void> {
         }
     }
 
+    /**
+     * Prepares file to play after the current one ends, which allows gapless playback. The file
+     * is opened and its first {@link #getPreDecodeTime()} decoded in background. When the current
+     * source ends and the prepared one has the same audio format, it continues playing on the
+     * same line without closing it, see {@link #adoptSplicedSource(java.lang.Object)}. Otherwise
+     * it is still used to open the file faster when it is opened next.
+     * <p/>
+     * Replaces previously prepared file.
+     * @param file file to prepare or null to only discard the prepared one
+     */
+    public void prepareNext(File file) {
+        long generation = ++nextGeneration;
+        discardNext();
+        if (file == null) return;
+        prepareService.execute(() -> {
+            if (generation != nextGeneration) return;
+            try {
+                long start = System.currentTimeMillis();
+                NextStream n = openNext(file);
+                if (generation == nextGeneration) {
+                    discardNext();
+                    next = n;
+                    LOGGER.info("Prepared next source {} in {}ms", file, System.currentTimeMillis() - start);
+                } else {
+                    n.close();
+                }
+            } catch (UnsupportedAudioFileException | IOException ex) {
+                LOGGER.warn("Cannot prepare next source {}", file, ex);
+            }
+        });
+    }
+
+    private void discardNext() {
+        NextStream n = next;
+        next = null;
+        if (n != null) n.close();
+    }
+
+    private NextStream openNext(File file) throws UnsupportedAudioFileException, IOException {
+        FileSnapshot snapshot = FileSnapshot.of(file);
+        AudioInputStream sourceStream = AudioSystem.getAudioInputStream(snapshot.open());
+        AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+        AudioInputStream decodedStream = decode(sourceStream);
+        AudioFormat format = decodedStream.getFormat();
+
+        // decode the beginning ahead, so the transition does not wait for the decoder
+        int frames = (int) (format.getFrameRate() * preDecodeTime / 1000000);
+        byte[] data = new byte[Math.max(0, frames * format.getFrameSize())];
+        int length = 0, read;
+        while (length < data.length && (read = decodedStream.read(data, length, data.length - length)) != -1) {
+            length += read;
+        }
+        InputStream s = new SequenceInputStream(new ByteArrayInputStream(data, 0, length), decodedStream);
+        AudioInputStream stream = new AudioInputStream(s, format, AudioSystem.NOT_SPECIFIED);
+        return new NextStream(snapshot, fileFormat, stream, readProperties(fileFormat), SeekIndex.of(file, fileFormat));
+    }
+
+    /**
+     * Uses prepared stream, if it was prepared for the current source.
+     * @return true if used
+     */
+    private boolean initPreparedAudioInputStream() {
+        NextStream n = next;
+        if (n == null || !n.file.equals(audioSource)) return false;
+        next = null;
+        closeStream();
+        setSnapshot(n.snapshot);
+        audioFileFormat = n.fileFormat;
+        audioInputStream = n.stream;
+        properties = n.properties;
+        seekIndex = n.seekIndex;
+        LOGGER.info("Data source: {} (prepared)", audioSource);
+        return true;
+    }
+
+    /**
+     * Switches to the prepared stream, if its format matches the open line. Invoked when current
+     * stream ends. Listeners are notified about the end of the previous source only when its
+     * remaining audio is played.
+     * @return true if switched
+     */
+    private boolean splice() {
+        NextStream n = next;
+        if (n == null || sourceDataLine == null || !n.stream.getFormat().matches(sourceDataLine.getFormat())) {
+            return false;
+        }
+        next = null;
+        closeStream();
+        setSnapshot(n.snapshot);
+        audioSource = n.file;
+        audioFileFormat = n.fileFormat;
+        audioInputStream = n.stream;
+        properties = n.properties;
+        seekIndex = n.seekIndex;
+        splicePosition = getPosition() + getBufferedTime();
+        splicePending = true;
+        splicedSource = n.file;
+        LOGGER.info("Spliced data source: {}", audioSource);
+        return true;
+    }
+
+    // notifies end of the previous source when the spliced one starts playing, or immediately
+    private void completeSplice(boolean immediately) {
+        if (splicePending && (immediately || getPosition() >= splicePosition)) {
+            splicePending = false;
+            oldPosition = immediately ? getPosition() : splicePosition;
+            Map<String, Object> ps = new HashMap<>();
+            ps.put("gapless", Boolean.TRUE);
+            notifyEvent(Playback.EOM, ps);
+        }
+    }
+
+    /**
+     * Returns true if the source continues playing after the previous one ended, without being
+     * opened, see {@link #prepareNext(java.io.File)}. Returns true only once for every such source,
+     * so it can be adopted as opened.
+     * @param source
+     */
+    public boolean adoptSplicedSource(Object source) {
+        Object s = splicedSource;
+        if (s == null || !s.equals(source) || future == null || future.isDone()) return false;
+        splicedSource = null;
+        return true;
+    }
+
+    /**
+     * Returns duration of audio written to the line, but not yet played, in microseconds.
+     */
+    private long getBufferedTime() {
+        AudioFormat f = sourceDataLine.getFormat();
+        long bytes = sourceDataLine.getBufferSize() - sourceDataLine.available();
+        return (long) (bytes / f.getFrameSize() / f.getFrameRate() * 1000000);
+    }
+
+    /**
+     * Returns duration of silence between the last two sources that followed each other without
+     * interruption, in milliseconds, or -1 if unknown.
+     */
+    public long getLastGap() {
+        return lastGap;
+    }
+
+    /**
+     * Set duration of the beginning of the prepared file decoded ahead, in microseconds.
+     */
+    public void setPreDecodeTime(long time) {
+        this.preDecodeTime = Math.max(0, time);
+    }
+
+    /**
+     * Return duration of the beginning of the prepared file decoded ahead, in microseconds.
+     */
+    public long getPreDecodeTime() {
+        return preDecodeTime;
+    }
+
+    /**
+     * Set duration of audio decoded ahead of the playback, in microseconds. Decoding runs on its
+     * own thread and fills a buffer of this length, which the playback reads from, so decoding
+     * hiccups do not cause underruns of the line. Takes effect when the next source opens.
+     */
+    public void setReadAheadTime(long time) {
+        this.readAheadTime = Math.max(0, time);
+    }
+
+    /**
+     * Return duration of audio decoded ahead of the playback, in microseconds.
+     */
+    public long getReadAheadTime() {
+        return readAheadTime;
+    }
+
+    /**
+     * Return fill level of the read-ahead buffer in <0-1>.
+     */
+    public double getReadAheadFill() {
+        ReadAheadBuffer r = readAhead;
+        return r == null ? 0 : r.getFill();
+    }
+
+    /**
+     * Return number of times the line ran out of data while playing.
+     */
+    public int getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Return speed of decoding of the current source as a multiple of realtime or -1 if unknown.
+     */
+    public double getDecodeSpeed() {
+        ReadAheadBuffer r = readAhead;
+        SourceDataLine l = sourceDataLine;
+        if (r == null || l == null) return -1;
+        AudioFormat f = l.getFormat();
+        return r.getDecodeSpeed(f.getFrameRate() * f.getFrameSize());
+    }
+
     /**
      * Set SourceDataLine buffer size. It affects audio latency
      * (the delay between SourceDataLine.write(data) and real sound).
@@ -407,6 +670,22 @@ public class AudioPlayer implements Callable<Void> {
         }
     }
 
+    /**
+     * Set period of playback progress notifications. The listeners are notified at most once per
+     * period, the decoding itself is not affected.
+     * @param period period in microseconds, 0 notifies for every decoded buffer
+     */
+    public void setProgressPeriod(long period) {
+        this.progressPeriod = Math.max(0, period);
+    }
+
+    /**
+     * Return period of playback progress notifications in microseconds.
+     */
+    public long getProgressPeriod() {
+        return progressPeriod;
+    }
+
     /**
      * Return SourceDataLine buffer size.
      * @return -1 (AudioSystem.NOT_SPECIFIED) for maximum buffer size.
@@ -631,6 +910,7 @@ public class AudioPlayer implements Callable<Void> {
         int audioDataLength = READ_BUFFER_SIZE;
         ByteBuffer audioDataBuffer = ByteBuffer.allocate(audioDataLength);
         audioDataBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] audioData = audioDataBuffer.array();
         lock.lock();
         try {
             while ((nBytesRead != -1) && (state != STOP) && (state != SEEK) && (state != AudioSystem.NOT_SPECIFIED)) {
@@ -638,28 +918,41 @@ public class AudioPlayer implements Callable<Void> {
                     if (state == PLAY) {
                         int toRead = audioDataLength;
                         int totalRead = 0;
-                        while (toRead > 0 && (nBytesRead = audioInputStream.read(audioDataBuffer.array(), totalRead, toRead)) != -1) {
+                        if (readAhead == null || readAhead.source != audioInputStream) {
+                            discardReadAhead();
+                            readAhead = new ReadAheadBuffer(audioInputStream, getReadAheadCapacity(), decodeService);
+                        }
+                        readAhead.start();
+                        while (toRead > 0 && (nBytesRead = readAhead.read(audioData, totalRead, toRead)) != -1) {
                             totalRead += nBytesRead;
                             toRead -= nBytesRead;
                         }
                         if (totalRead > 0) {
-                            byte[] trimBuffer = audioDataBuffer.array();
-                            if (totalRead < trimBuffer.length) {
-                                trimBuffer = new byte[totalRead];
-                                System.arraycopy(audioDataBuffer.array(), 0, trimBuffer, 0, totalRead);
+                            if (audioEnd != -1) {
+                                measureGap();
                             }
-                            sourceDataLine.write(trimBuffer, 0, totalRead);
-                            dss.writeAudioData(trimBuffer, 0, totalRead);
-                            for (PlaybackListener pl : listeners) {
-                                PlaybackEvent pe = new PlaybackEvent(this, Playback.PLAYING, getPosition() - oldPosition, emptyMap);
-                                if (audioInputStream instanceof PropertiesContainer) {
-                                    // Pass audio parameters such as instant bitrate, ...
-                                    pe.setProperties(((PropertiesContainer) audioInputStream).properties());
-                                }
-                                pl.playbackProgress(pe);
+                            if (lineFilled && sourceDataLine.available() == sourceDataLine.getBufferSize()) {
+                                underruns++;
+                                LOGGER.warn("Audio line underrun, read-ahead fill: {}", readAhead.getFill());
                             }
+                            sourceDataLine.write(audioData, 0, totalRead);
+                            lineFilled = true;
+                            dss.writeAudioData(audioData, 0, totalRead);
+                            notifyProgress();
+                        }
+                        if (nBytesRead == -1 && splice()) {
+                            audioEnd = System.nanoTime() + getBufferedTime() * 1000;
+                            nBytesRead = 0;
                         }
                     } else if (state == INIT || state == PAUSE) {
+                        completeSplice(true);
+                        if (state == PAUSE) {
+                            audioEnd = -1;
+                        }
+                        if (readAhead != null) {
+                            readAhead.stop();
+                        }
+                        lineFilled = false;
                         if (sourceDataLine != null && sourceDataLine.isRunning()) {
                             sourceDataLine.flush();
                             sourceDataLine.stop();
@@ -673,7 +966,16 @@ public class AudioPlayer implements Callable<Void> {
                     throw new PlayerException(ex);
                 }
             }
+            discardReadAhead();
+            // stopped before the spliced source started playing, it will not be adopted
+            splicePending = false;
+            splicedSource = null;
             if (sourceDataLine != null) {
+                if (nBytesRead == -1) {
+                    // play the remaining audio, rather than discarding it
+                    sourceDataLine.drain();
+                    audioEnd = System.nanoTime();
+                }
                 sourceDataLine.flush();
                 sourceDataLine.stop();
                 sourceDataLine.close();
@@ -753,6 +1055,17 @@ public class AudioPlayer implements Callable<Void> {
     }
 
     public void seek(Duration d) {
+        long to = (long) (d.toMillis()*1000);
+        long[] point = seekIndex==null ? null : seekIndex.floor(to);
+        if (point != null && audioSource instanceof File) {
+            try {
+                seekIndexed(to, point[0], point[1]);
+            } catch (PlayerException ex) {
+                LOGGER.error("",ex);
+            }
+            return;
+        }
+
         int bytelen = getByteLength();
         double total = getDuration();
         double tobe = d.toMillis()*1000/total;
@@ -786,6 +1099,7 @@ public class AudioPlayer implements Callable<Void> {
             lock.lock();
             try {
                 notifyEvent(Playback.SEEKING);
+                discardReadAhead();
                 skipped = doSeek(to,by);
                 oldPosition = getPosition();
                 if (skipped == -1) throw new PlayerException("Seek not supported");
@@ -803,6 +1117,154 @@ public class AudioPlayer implements Callable<Void> {
         return skipped;
     }
 
+    /**
+     * Seeks to the specified position using seek index point. Reopens the stream, skips to the
+     * point and decodes only the remainder.
+     * <p/>
+     * If the index has header (FLAC), the point is a frame position in the file and the decoder is
+     * given the header followed by the data from the point, so it starts decoding exactly at the
+     * frame of the point without reading any frame before it. Otherwise the decoded stream is asked
+     * to skip to the point, which may require decoding.
+     *
+     * @param to position in microseconds
+     * @param pointTime position of the seek index point in microseconds
+     * @param pointByte position of the seek index point in encoded stream in bytes
+     */
+    private void seekIndexed(long to, long pointTime, long pointByte) throws PlayerException {
+        LOGGER.info("Seeking using index: to: {}us, index point: {}us at {}B", to, pointTime, pointByte);
+        oldPosition = getPosition();
+        int oldState = state;
+        if (state == PLAY) {
+            state = PAUSE;
+        }
+        lock.lock();
+        try {
+            notifyEvent(Playback.SEEKING);
+            discardReadAhead();
+            long headerLength = seekIndex.getHeaderLength();
+            if (headerLength > 0 && snapshot != null) {
+                initAudioInputStreamAt(headerLength, pointByte);
+            } else {
+                initAudioInputStream();
+                if (pointByte > 0 && audioInputStream.skip(pointByte) <= 0)
+                    throw new PlayerException("Seek not supported");
+            }
+
+            // decode and drop audio data between the point and the position
+            // the point is the first sample frame of the audio frame the decoder starts at, it was
+            // rounded down when converted to time, so round it back up
+            AudioFormat format = audioInputStream.getFormat();
+            float frameRate = format.getFrameRate();
+            long frames = Math.round(to/1000000d*frameRate) - (long) Math.ceil(pointTime/1000000d*frameRate);
+            long toDrop = Math.max(0, frames)*format.getFrameSize();
+            byte[] dropBuffer = new byte[READ_BUFFER_SIZE];
+            while (toDrop > 0) {
+                int read = audioInputStream.read(dropBuffer, 0, (int) Math.min(toDrop, dropBuffer.length));
+                if (read == -1) break;
+                toDrop -= read;
+            }
+            oldPosition = getPosition();
+        } catch (IOException ex) {
+            throw new PlayerException(ex);
+        } finally {
+            lock.unlock();
+        }
+        if (oldState == PLAY) {
+            play();
+        }
+    }
+
+    /**
+     * Inits audio input stream from the snapshot of the played file, consisting of the header of
+     * the file followed by the data starting at the specified position.
+     *
+     * @param headerLength length of the header in bytes
+     * @param position position in bytes in the file of the data following the header
+     */
+    private void initAudioInputStreamAt(long headerLength, long position) throws PlayerException {
+        closeStream();
+        try {
+            byte[] header = new byte[(int) headerLength];
+            try (InputStream in = snapshot.open()) {
+                new DataInputStream(in).readFully(header);
+            }
+            InputStream data = snapshot.open();
+            for (long toSkip = Math.max(position, headerLength); toSkip > 0; ) {
+                long skipped = data.skip(toSkip);
+                if (skipped <= 0) {
+                    if (data.read() == -1) break;
+                    skipped = 1;
+                }
+                toSkip -= skipped;
+            }
+            InputStream in = new BufferedInputStream(new SequenceInputStream(new ByteArrayInputStream(header), data));
+            audioInputStream = decode(AudioSystem.getAudioInputStream(in));
+        } catch (UnsupportedAudioFileException | IOException ex) {
+            closeStream();
+            throw new PlayerException(ex);
+        }
+    }
+
+    /**
+     * Notifies listeners about playback progress, at most once per {@link #getProgressPeriod()}.
+     * The event object is reused.
+     */
+    private void notifyProgress() {
+        completeSplice(false);
+        long now = System.nanoTime()/1000;
+        if (now - progressLast < progressPeriod) return;
+        progressLast = now;
+
+        Map properties = emptyMap;
+        if (audioInputStream instanceof PropertiesContainer) {
+            // Pass audio parameters such as instant bitrate, ...
+            properties = ((PropertiesContainer) audioInputStream).properties();
+            updateSeekIndex(properties);
+        }
+        progressEvent.setPosition(getPosition() - oldPosition);
+        progressEvent.setProperties(properties);
+        for (PlaybackListener pl : listeners) {
+            pl.playbackProgress(progressEvent);
+        }
+    }
+
+    private void discardReadAhead() {
+        if (readAhead != null) {
+            readAhead.stop();
+            readAhead = null;
+        }
+    }
+
+    private int getReadAheadCapacity() {
+        AudioFormat f = audioInputStream.getFormat();
+        return (int) (f.getFrameRate() * readAheadTime / 1000000) * f.getFrameSize();
+    }
+
+    // measures time between end of audio of the previous source and start of audio of this one
+    private void measureGap() {
+        long gap = Math.max(0, System.nanoTime() - audioEnd) / 1000000;
+        audioEnd = -1;
+        // longer gap means the playback did not continue right away, e.g., was stopped
+        if (gap < 10000) {
+            lastGap = gap;
+            LOGGER.info("Gap between sources: {}ms", gap);
+        }
+    }
+
+    // adds the current position to seek index, if the decoder provides it
+    private void updateSeekIndex(Map ps) {
+        if (seekIndex != null) {
+            Object time = ps.get("mp3.position.microseconds");
+            Object bytes = ps.get("mp3.position.byte");
+            if (time == null) {
+                time = ps.get("ogg.position.microseconds");
+                bytes = ps.get("ogg.position.byte");
+            }
+            if (time instanceof Number && bytes instanceof Number)
+                seekIndex.add(((Number) time).longValue(), ((Number) bytes).longValue());
+        }
+    }
+
     private long doSeek(long to, long by) throws IOException, PlayerException {
         if(audioInputStream==null)
             return 0;
@@ -829,21 +1291,51 @@ public class AudioPlayer implements Callable<Void> {
 //        }
     }
 
-    @TODO(purpose = BUG)
     protected void closeStream() {
         if (audioInputStream != null) {
             try {
-                audioInputStream.close(); // bugged, see below
+                audioInputStream.close();
                 audioInputStream = null;
                 LOGGER.info("Stream closed");
             } catch (IOException ex) {
                 LOGGER.error("Cannot close stream", ex);
             }
-            // bug fix, close() wont release file sometimes, this would prevent
-            // this app and whole OS from accessing the file until this app
-            // terminates
-            // apparently a widespread java bug, java devs dont care
-            System.gc();
+        }
+    }
+
+    // replaces snapshot of the played file
+    private void setSnapshot(FileSnapshot s) {
+        if (snapshot != null && snapshot != s) {
+            snapshot.dispose();
+        }
+        snapshot = s;
+    }
+
+    /** Stream prepared to play after the current one. */
+    protected static class NextStream {
+        final File file;
+        final FileSnapshot snapshot;
+        final AudioFileFormat fileFormat;
+        final AudioInputStream stream;
+        final Map<String, Object> properties;
+        final SeekIndex seekIndex;
+
+        NextStream(FileSnapshot snapshot, AudioFileFormat fileFormat, AudioInputStream stream, Map<String, Object> properties, SeekIndex seekIndex) {
+            this.file = snapshot.file;
+            this.snapshot = snapshot;
+            this.fileFormat = fileFormat;
+            this.stream = stream;
+            this.properties = properties;
+            this.seekIndex = seekIndex;
+        }
+
+        void close() {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                LOGGER.error("Cannot close stream", ex);
+            }
+            snapshot.dispose();
         }
     }
 }
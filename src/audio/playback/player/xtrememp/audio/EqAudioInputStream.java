@@ -19,10 +19,9 @@
 package audio.playback.player.xtrememp.audio;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.ShortBuffer;
+import java.util.Arrays;
 
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 
 import org.slf4j.Logger;
@@ -30,6 +29,19 @@ import org.slf4j.LoggerFactory;
 import org.tritonus.share.sampled.convert.TAsynchronousFilteredAudioInputStream;
 
 /**
+ * Ten band equalizer.
+ * <p/>
+ * Supports signed 16 and 24 bit PCM of any sample rate, byte order and channel count. Filter
+ * coefficients are derived from the sample rate of the stream and each channel is filtered
+ * independently. Processing is done in place in a preallocated buffer, so it does not allocate.
+ * Bands with 0 dB gain are skipped and if all bands have 0 dB gain, the audio data are passed
+ * through unchanged.
+ * <p/>
+ * Not used by {@link AudioPlayer} yet. The application has no equalizer setting to drive the gains,
+ * so the filter would always be bypassed, and wrapping the decoded stream would hide the
+ * {@link javazoom.spi.PropertiesContainer} of the decoder, which provides the instant bitrate and
+ * byte position the player reads during playback.
+ * <p/>
  * Based on original work of Martin Holtzer, licensed under the GPL.
  *
  * @author alexs
@@ -38,19 +50,24 @@ import org.tritonus.share.sampled.convert.TAsynchronousFilteredAudioInputStream;
 public class EqAudioInputStream extends TAsynchronousFilteredAudioInputStream {
 
     private final Logger logger = LoggerFactory.getLogger(EqAudioInputStream.class);
-    //protected static final int BLOCKSIZE = 128;
-
-    //protected static final int BLOCKSIZE = 10*1024;
-    protected static final int BLOCKSIZE = 17640;
+    /**
+     * Number of frames processed at once.
+     */
+    protected static final int BLOCK_FRAMES = 4096;
     /**
      * The maximum upper frequency. The highest band would have an even higher
-     * upper edge frequency, but it gets reduced to this value.
+     * upper edge frequency, but it gets reduced to this value or to a frequency
+     * close to the Nyquist frequency, whichever is lower.
      */
     private static final int MAX_UPPER_FREQ = 19000;
     /**
      * Number of frequency bands.
      */
-    private static final int BAND_COUNT = 10;
+    public static final int BAND_COUNT = 10;
+    /**
+     * Maximal gain of a band in dB.
+     */
+    public static final int MAX_GAIN = 12;
     /**
      * Number of filter stages for each band. Each stage resembles one
      * second-order stage of the low-shelving prototype, which becomes a
@@ -58,90 +75,80 @@ public class EqAudioInputStream extends TAsynchronousFilteredAudioInputStream {
      * per band is thus 4 * STAGE_COUNT.
      */
     private static final int STAGE_COUNT = 2;
-    /**
-     * The sampling rate used to denormalize frequencies from radian/s to Hz. If
-     * the audio data uses another sampling-rate, the labels in the UI will be
-     * wrong.
-     */
-    private static final int SAMPLING_RATE = 44100;
     /**
      * Center frequency of the lowest band.
      */
     private static final double FIRST_CENTER_FREQUENCY = 30;
-    /**
-     * Logarithm of the highest normalized frequency to plot.
-     */
-    private static final float UPPER_NORM_FREQ_LOG = 0.4971f;
-    /**
-     * Logarithm of the lowest normalized frequency to plot.
-     */
-    private static final float LOWER_NORM_FREQ_LOG = -2.5452f;
     /**
      * Value of {@link #K} for unity gain.
      */
-    private double[] KBase = new double[BAND_COUNT];
+    private final double[] KBase = new double[BAND_COUNT];
     /**
      * Band-width and gain dependent filter coefficient.
      */
-    private double[] K = new double[BAND_COUNT];
+    private final double[] K = new double[BAND_COUNT];
     /**
-     * Gain dependent filter coefficient.
+     * Gain dependent filter coefficient. Zero for unity gain, in which case
+     * the band has no effect.
      */
-    private double[] V = new double[BAND_COUNT];
+    private final double[] V = new double[BAND_COUNT];
     /**
      * Auxiliary filter coefficient.
      */
-    private double[][] a0recip = new double[BAND_COUNT][STAGE_COUNT];
+    private final double[][] a0recip = new double[BAND_COUNT][STAGE_COUNT];
     /**
      * Stage dependent filter coefficient.
      */
-    private double[] c = new double[STAGE_COUNT];
+    private final double[] c = new double[STAGE_COUNT];
     /**
      * Center frequency dependent coefficient.
      */
-    private double[] c0 = new double[BAND_COUNT];
-    /**
-     * The filter states. In each stage, states 1 and 3 hold the state of delay
-     * inside the all-passes and states 0 and 2 resemble the additional delay at
-     * the all-pass input.
-     */
-    private double[][][] filterstates = new double[BAND_COUNT][STAGE_COUNT][4];
-    private AudioInputStream sourceStream;
+    private final double[] c0 = new double[BAND_COUNT];
     /**
-     * Audio input buffer.
+     * Whether band lies below the Nyquist frequency, bands above it have no effect.
      */
-    private ByteBuffer audioDataIn;
+    private final boolean[] bandAudible = new boolean[BAND_COUNT];
     /**
-     * Audio output buffer.
+     * The filter states of each channel. In each stage, states 1 and 3 hold
+     * the state of delay inside the all-passes and states 0 and 2 resemble the
+     * additional delay at the all-pass input.
      */
-    private ByteBuffer audioDataOut;
+    private final double[][][][] filterstates;
     /**
-     * The {@link #audioDataIn} buffer accessed as <code>short</code>s.
+     * Whether all bands have unity gain.
      */
-    private ShortBuffer shortDataIn;
+    private volatile boolean bypass = true;
+    private final AudioInputStream sourceStream;
     /**
-     * The {@link #audioDataOut} buffer accessed as <code>short</code>s.
+     * Audio buffer, processed in place.
      */
-    private ShortBuffer shortDataOut;
-    /**
-     * Number of input channels.
-     */
-    private int nChannels;
-//    private double skipped = 0;
-//    private double totalTime = 0;
+    private final byte[] audioData;
+    private final int nChannels;
+    private final int frameSize;
+    private final int sampleBytes;
+    private final boolean bigEndian;
+    private final float sampleRate;
+    private final double sampleScale;
 
-    /**
-     * The sliders to control the per-band gains.
-     */
-    //private JSlider[] gainSliders = new JSlider[BAND_COUNT];
-    /**
-     * The plot of the resulting magnitude transfer function.
-     */
-    //private PlotDisplay transferPlot = new PlotDisplay();
     public EqAudioInputStream(AudioInputStream sourceStream) {
         super(sourceStream.getFormat(), sourceStream.getFrameLength());
         this.sourceStream = sourceStream;
 
+        AudioFormat format = sourceStream.getFormat();
+        int ssib = format.getSampleSizeInBits();
+        if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding()) || (ssib != 16 && ssib != 24)
+                || format.getSampleRate() <= 0 || format.getChannels() <= 0) {
+            throw new IllegalArgumentException("Unsupported audio format " + format);
+        }
+        nChannels = format.getChannels();
+        sampleBytes = ssib / 8;
+        frameSize = nChannels * sampleBytes;
+        bigEndian = format.isBigEndian();
+        sampleRate = format.getSampleRate();
+        sampleScale = 1 << (ssib - 1);
+        audioData = new byte[BLOCK_FRAMES * frameSize];
+        filterstates = new double[nChannels][BAND_COUNT][STAGE_COUNT][4];
+
         init();
     }
 
@@ -151,116 +158,110 @@ public class EqAudioInputStream extends TAsynchronousFilteredAudioInputStream {
         sourceStream.close();
     }
 
-//    public static double bytesToSeconds(int bytes, AudioFormat format) {
-//        int frame = format.getSampleSizeInBits() / 8;
-//        return (double) bytes / ((double) format.getSampleRate() * (double) format.getChannels() * (double) frame);
-//    }
-
     @Override
     public long skip(long n) throws IOException {
-        //long sk = super.skip(n);
         // need to skip this out of the source
         long sk = sourceStream.skip(n);
-
-//        skipped += bytesToSeconds((int) sk, sourceStream.getFormat());
-
+        // the filter must not ring with the signal before the skip
+        resetStates();
         return sk;
     }
 
     @Override
     public void execute() {
-
-        //ALEX!!!
-        double[] inSamples = new double[nChannels * BLOCKSIZE / 2];
-        double[] outSamples = new double[nChannels * BLOCKSIZE / 2];
-
-        int sampleCount;
         int nBytesRead = 0;
         try {
-            nBytesRead = sourceStream.read(audioDataIn.array(), 0,
-                    BLOCKSIZE * nChannels);
-        } catch (Exception e) {
-            e.printStackTrace();
+            // read whole block, so frames are never split between two blocks
+            while (nBytesRead < audioData.length) {
+                int n = sourceStream.read(audioData, nBytesRead, audioData.length - nBytesRead);
+                if (n == -1) {
+                    break;
+                }
+                nBytesRead += n;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read audio data", e);
         }
 
-        if (nBytesRead == -1) {
+        if (nBytesRead <= 0) {
             getCircularBuffer().close();
             return;
         }
 
-        byte[] trimBuffer = audioDataIn.array();
-        if (nBytesRead < trimBuffer.length) {
-            trimBuffer = new byte[nBytesRead];
-            System.arraycopy(audioDataIn.array(), 0, trimBuffer, 0, nBytesRead);
+        if (!bypass) {
+            process(nBytesRead - nBytesRead % frameSize);
         }
+        getCircularBuffer().write(audioData, 0, nBytesRead);
+    }
 
-//        totalTime += bytesToSeconds(nBytesRead, sourceStream.getFormat());
-
-        if (nChannels > 1) {
-            /*
-            sampleCount = nBytesRead / 4;
-            for (int n = 0; n < nBytesRead / 2 - 1; n += 2) {
-            inSamples[n / 2] = ((double) shortDataIn.get(n) + (double) shortDataIn.get(n + 1)) / 2 / 32768;
-            }*/
-
-            sampleCount = nBytesRead / 2;
-            for (int n = 0; n < nBytesRead / 2; n++) {
-                inSamples[n] = (double) shortDataIn.get(n) / 32768;
+    // filters the specified number of bytes of whole frames in place
+    private void process(int length) {
+        for (int pos = 0; pos < length; ) {
+            for (int channel = 0; channel < nChannels; channel++, pos += sampleBytes) {
+                double sample = processSample(channel, readSample(pos) / sampleScale) * sampleScale;
+                writeSample(pos, (int) Math.max(-sampleScale, Math.min(sampleScale - 1, sample)));
             }
+        }
+    }
 
+    private int readSample(int pos) {
+        byte[] b = audioData;
+        if (sampleBytes == 2) {
+            return bigEndian
+                    ? (b[pos] << 8) | (b[pos + 1] & 0xff)
+                    : (b[pos + 1] << 8) | (b[pos] & 0xff);
         } else {
-            sampleCount = nBytesRead / 2;
-            for (int n = 0; n < nBytesRead / 2; n++) {
-                inSamples[n] = (double) shortDataIn.get(n) / 32768;
-            }
+            return bigEndian
+                    ? (b[pos] << 16) | ((b[pos + 1] & 0xff) << 8) | (b[pos + 2] & 0xff)
+                    : (b[pos + 2] << 16) | ((b[pos + 1] & 0xff) << 8) | (b[pos] & 0xff);
         }
+    }
 
-        for (int n = 0; n < sampleCount; n++) {
-            double outValue;
-
-            outSamples[n] = processSample(inSamples[n]);
-
-            outValue = outSamples[n] * 32768;
-            if (outValue > 32767) {
-                outValue = 32767;
+    private void writeSample(int pos, int value) {
+        byte[] b = audioData;
+        if (bigEndian) {
+            for (int i = sampleBytes - 1; i >= 0; i--, value >>= 8) {
+                b[pos + i] = (byte) value;
             }
-            if (outValue < -32768) {
-                outValue = -32768;
+        } else {
+            for (int i = 0; i < sampleBytes; i++, value >>= 8) {
+                b[pos + i] = (byte) value;
             }
-
-            shortDataOut.put(n, (short) outValue);
-        }
-
-        // write the processed block if samples are there
-        if (nBytesRead >= 0) {
-            getCircularBuffer().write(audioDataOut.array(), 0, sampleCount * 2);
         }
-
     }
 
     /**
      * The actual filtering algorithm.
      *
+     * @param channel The channel of the sample.
      * @param u The input sample.
      * @return The resulting output sample.
      */
-    protected double processSample(double u) {
+    protected double processSample(int channel, double u) {
         double y = u;
+        double[][][] states = filterstates[channel];
         for (int band = 0; band < BAND_COUNT; band++) {
+            double v = V[band];
+            if (v == 0) {
+                continue;
+            }
+            double k = K[band];
+            double cb = c0[band];
             for (int stage = 0; stage < STAGE_COUNT; stage++) {
-                double x4 = -c0[band] * (filterstates[band][stage][0] - filterstates[band][stage][1]);
-                double x6 = filterstates[band][stage][1] + x4;
-                filterstates[band][stage][1] = filterstates[band][stage][0] + x4;
-                double x8 = -c0[band] * (filterstates[band][stage][2] - filterstates[band][stage][3]);
-                double x7 = filterstates[band][stage][3] + x8;
-                filterstates[band][stage][3] = filterstates[band][stage][2] + x8;
+                double[] fs = states[band][stage];
+                double x4 = -cb * (fs[0] - fs[1]);
+                double x6 = fs[1] + x4;
+                fs[1] = fs[0] + x4;
+                double x8 = -cb * (fs[2] - fs[3]);
+                double x7 = fs[3] + x8;
+                fs[3] = fs[2] + x8;
                 double x3 = 2 * x6;
                 double x2 = x7 + x3;
-                double x1 = a0recip[band][stage] * (K[band] * u - (x7 - x3 + K[band] * (-2 * c[stage] * x7 + K[band] * x2)));
-                double x5 = K[band] * (x1 + x2);
-                filterstates[band][stage][0] = -x1;
-                filterstates[band][stage][2] = -x6;
-                y = V[band] * (V[band] * x5 + 2 * (x5 - c[stage] * (x7 - x1))) + u;
+                double x1 = a0recip[band][stage] * (k * u - (x7 - x3 + k * (-2 * c[stage] * x7 + k * x2)));
+                double x5 = k * (x1 + x2);
+                fs[0] = -x1;
+                fs[2] = -x6;
+                y = v * (v * x5 + 2 * (x5 - c[stage] * (x7 - x1))) + u;
                 u = y;
             }
         }
@@ -268,52 +269,47 @@ public class EqAudioInputStream extends TAsynchronousFilteredAudioInputStream {
     }
 
     /**
-     * Initializes the filter coefficients and UI components.
+     * Initializes the filter coefficients for the sample rate of the stream.
      */
-    public void init() {
-
-        nChannels = getFormat().getChannels();
-        audioDataIn = ByteBuffer.allocate(BLOCKSIZE * nChannels);
-        audioDataIn.order(ByteOrder.LITTLE_ENDIAN);
-        shortDataIn = audioDataIn.asShortBuffer();
-
-        //audioDataOut = ByteBuffer.allocate(BLOCKSIZE);
-
-        // ALEX!!!
-        audioDataOut = ByteBuffer.allocate(BLOCKSIZE * nChannels);
-
-
-        audioDataOut.order(ByteOrder.LITTLE_ENDIAN);
-        shortDataOut = audioDataOut.asShortBuffer();
-
+    private void init() {
         for (int stage = 0; stage < STAGE_COUNT; stage++) {
             c[stage] = Math.cos((.5 - (2. * stage + 1) / (4 * STAGE_COUNT)) * Math.PI);
         }
 
+        double maxUpperFreq = Math.min(MAX_UPPER_FREQ, 0.45 * sampleRate);
         for (int band = 0; band < BAND_COUNT; band++) {
             double fC = FIRST_CENTER_FREQUENCY * Math.pow(2, band);
             double fL = fC / Math.sqrt(2);
             double fU = fC * Math.sqrt(2);
-            if (fU > MAX_UPPER_FREQ) {
-                fU = MAX_UPPER_FREQ;
+            if (fU > maxUpperFreq) {
+                fU = maxUpperFreq;
+            }
+            bandAudible[band] = fL < fU;
+            if (!bandAudible[band]) {
+                continue;
             }
             double fB = fU - fL;
-            double wB = 2 * Math.PI / SAMPLING_RATE * fB;
-            double wU = 2 * Math.PI / SAMPLING_RATE * fU;
-            double wL = 2 * Math.PI / SAMPLING_RATE * fL;
+            double wB = 2 * Math.PI / sampleRate * fB;
+            double wU = 2 * Math.PI / sampleRate * fU;
+            double wL = 2 * Math.PI / sampleRate * fL;
             double wM = 2 * Math.atan(Math.sqrt(Math.tan(wU / 2) * Math.tan(wL / 2)));
             KBase[band] = Math.tan(wB / 2);
             c0[band] = Math.cos(wM);
             setGain(band, 1.0);
         }
-
     }
 
+    /**
+     * Sets the gain for the given band.
+     *
+     * @param band The band to set the gain for.
+     * @param gain The gain in dB, clipped to &lt;-{@link #MAX_GAIN}, {@link #MAX_GAIN}&gt;.
+     */
     public void setGain(int band, int gain) {
-        if (gain > 12) {
-            gain = 12;
-        } else if (gain < -12) {
-            gain = -12;
+        if (gain > MAX_GAIN) {
+            gain = MAX_GAIN;
+        } else if (gain < -MAX_GAIN) {
+            gain = -MAX_GAIN;
         }
         setGain(band, Math.pow(10, gain / 20.));
     }
@@ -325,10 +321,39 @@ public class EqAudioInputStream extends TAsynchronousFilteredAudioInputStream {
      * @param gain The multiplicative (i.e. not dB) gain.
      */
     protected void setGain(int band, double gain) {
+        if (!bandAudible[band]) {
+            return;
+        }
         K[band] = Math.pow(gain, -1. / (4 * STAGE_COUNT)) * KBase[band];
-        V[band] = Math.sqrt(gain) - 1;
         for (int stage = 0; stage < STAGE_COUNT; stage++) {
             a0recip[band][stage] = 1 / (1 + 2 * K[band] * c[stage] + K[band] * K[band]);
         }
+        // each stage contributes (1 + v)^2, so all stages together give the gain
+        double v = Math.pow(gain, 1. / (2 * STAGE_COUNT)) - 1;
+        if (V[band] == 0 && v != 0) {
+            // band was skipped, start from silence
+            for (double[][][] states : filterstates) {
+                for (double[] fs : states[band]) {
+                    Arrays.fill(fs, 0);
+                }
+            }
+        }
+        V[band] = v;
+
+        boolean b = true;
+        for (double x : V) {
+            b &= x == 0;
+        }
+        bypass = b;
+    }
+
+    private void resetStates() {
+        for (double[][][] states : filterstates) {
+            for (double[][] band : states) {
+                for (double[] fs : band) {
+                    Arrays.fill(fs, 0);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,188 @@
+package audio.playback.player.xtrememp.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded ring buffer of decoded audio data, which a decoder thread fills ahead of the playback.
+ * <p/>
+ * The decoder reads the source stream on its own thread, so hiccups of the decoding (slow disk,
+ * network share, garbage collection) are absorbed by the buffered data instead of causing an
+ * underrun of the audio line, which is written from the data in the buffer.
+ * <p/>
+ * Decoding can be stopped and started again, e.g., when playback pauses, without losing the
+ * buffered data.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+public class ReadAheadBuffer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadAheadBuffer.class);
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    /** Decoded stream the data is read from. */
+    public final InputStream source;
+    private final ExecutorService decoder;
+    private final byte[] buffer;
+    private int head = 0;   // index of the first buffered byte
+    private int size = 0;   // number of buffered bytes
+    private boolean end = false;
+    private IOException error;
+    private volatile boolean stopped = true;
+    private Future<?> decoding;
+    private long decodedBytes = 0;
+    private long decodingTime = 0;
+    private int starved = 0;
+
+    /**
+     * @param source decoded stream to read from
+     * @param capacity size of the buffer in bytes
+     * @param decoder executor running the decoding, should be single threaded and not shared with
+     * other tasks that could delay the decoding
+     */
+    public ReadAheadBuffer(InputStream source, int capacity, ExecutorService decoder) {
+        this.source = source;
+        // whole chunks, so the decoder never reads less than a chunk, see decode()
+        this.buffer = new byte[Math.max(1, (capacity + CHUNK_SIZE - 1) / CHUNK_SIZE) * CHUNK_SIZE];
+        this.decoder = decoder;
+    }
+
+    /** Starts decoding, if not running. */
+    public synchronized void start() {
+        if (!stopped) return;
+        stopped = false;
+        decoding = decoder.submit(this::decode);
+    }
+
+    /** Stops decoding and waits until it stops. Buffered data are kept. */
+    public void stop() {
+        Future<?> d;
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+            d = decoding;
+            decoding = null;
+        }
+        if (d != null) {
+            try {
+                d.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                LOGGER.error("Decoding failed", ex);
+            }
+        }
+    }
+
+    private void decode() {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        while (!stopped) {
+            synchronized (this) {
+                while (!stopped && buffer.length - size < chunk.length) {
+                    waitUninterruptibly();
+                }
+                if (stopped) return;
+            }
+
+            long start = System.nanoTime();
+            int read;
+            try {
+                read = source.read(chunk, 0, chunk.length);
+            } catch (IOException ex) {
+                synchronized (this) {
+                    error = ex;
+                    end = true;
+                    notifyAll();
+                }
+                return;
+            }
+            long time = System.nanoTime() - start;
+
+            synchronized (this) {
+                if (read == -1) {
+                    end = true;
+                    notifyAll();
+                    return;
+                }
+                int tail = (head + size) % buffer.length;
+                int first = Math.min(read, buffer.length - tail);
+                System.arraycopy(chunk, 0, buffer, tail, first);
+                System.arraycopy(chunk, first, buffer, 0, read - first);
+                size += read;
+                decodedBytes += read;
+                decodingTime += time;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads buffered data. Blocks until some data are available, the end of the stream is reached
+     * or decoding stops.
+     *
+     * @return number of bytes read or -1 if end of the stream has been reached or decoding has
+     * been stopped with no buffered data left
+     * @throws IOException if decoding failed
+     */
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (size == 0 && !end && !stopped) starved++;
+        while (size == 0 && !end && !stopped) {
+            waitUninterruptibly();
+        }
+        if (size == 0) {
+            if (error != null) throw error;
+            return -1;
+        }
+        int n = Math.min(len, size);
+        int first = Math.min(n, buffer.length - head);
+        System.arraycopy(buffer, head, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, n - first);
+        head = (head + n) % buffer.length;
+        size -= n;
+        notifyAll();
+        return n;
+    }
+
+    /** @return true if the whole source has been read and no buffered data are left */
+    public synchronized boolean isEnd() {
+        return end && size == 0;
+    }
+
+    /** @return fill level of the buffer in <0-1> */
+    public synchronized double getFill() {
+        return size / (double) buffer.length;
+    }
+
+    /** @return capacity of the buffer in bytes */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /** @return number of times data were read while the buffer was empty */
+    public synchronized int getStarvedCount() {
+        return starved;
+    }
+
+    /**
+     * @param bytesPerSecond byte rate of the decoded data
+     * @return speed of decoding as multiple of realtime or -1 if nothing was decoded yet
+     */
+    public synchronized double getDecodeSpeed(double bytesPerSecond) {
+        if (decodingTime == 0 || bytesPerSecond <= 0) return -1;
+        return decodedBytes / bytesPerSecond / (decodingTime / 1000000000d);
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException ex) {
+            // ignore, the waiting ends by stop() or data
+        }
+    }
+}
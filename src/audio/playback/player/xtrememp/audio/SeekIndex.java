@@ -0,0 +1,204 @@
+package audio.playback.player.xtrememp.audio;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.sound.sampled.AudioFileFormat;
+
+import org.kc7bfi.jflac.FLACDecoder;
+import org.kc7bfi.jflac.metadata.Metadata;
+import org.kc7bfi.jflac.metadata.SeekPoint;
+import org.kc7bfi.jflac.metadata.SeekTable;
+import org.kc7bfi.jflac.metadata.StreamInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static util.async.Async.newSingleDaemonThreadExecutor;
+
+/**
+ * Index of seek points of an audio file. Maps position in time to position in encoded audio
+ * stream. Seeking uses the nearest point before the requested position, so only the remainder
+ * needs to be decoded.
+ * <p/>
+ * Index is built lazily in background using information in the file that does not require
+ * decoding: FLAC SEEKTABLE or Ogg page granule positions. For other formats (and in addition to
+ * the above) points are added as the file is being played.
+ * <p/>
+ * Indexes of recently played files are cached, see {@link #of(java.io.File, javax.sound.sampled.AudioFileFormat)}.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+public class SeekIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeekIndex.class);
+    /** Minimal distance of two points in microseconds. */
+    private static final long POINT_DISTANCE = 1000000;
+    /** Number of cached indexes. */
+    private static final int CACHE_SIZE = 20;
+    private static final ExecutorService BUILDER = newSingleDaemonThreadExecutor();
+    private static final Map<String,SeekIndex> CACHE = new LinkedHashMap<String,SeekIndex>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,SeekIndex> eldest) {
+            return size()>CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Returns index of the file. If not cached, empty index is returned and is built in the background.
+     *
+     * @param file audio file
+     * @param format format of the file, used to determine how to build the index
+     * @return index, never null
+     */
+    public static SeekIndex of(File file, AudioFileFormat format) {
+        String key = file.getAbsolutePath() + "|" + file.lastModified();
+        synchronized (CACHE) {
+            SeekIndex i = CACHE.get(key);
+            if (i==null) {
+                SeekIndex index = new SeekIndex();
+                CACHE.put(key, index);
+                String type = format==null || format.getType()==null ? "" : format.getType().toString().toLowerCase();
+                float sampleRate = format==null ? -1 : format.getFormat().getSampleRate();
+                BUILDER.execute(() -> index.build(file, type, sampleRate));
+                i = index;
+            }
+            return i;
+        }
+    }
+
+    // points, sorted by time
+    private long[] times = new long[64];
+    private long[] bytes = new long[64];
+    private int size = 0;
+    private volatile long headerLength = -1;
+
+    private SeekIndex() {}
+
+    /**
+     * Adds point to the index. Points closer than {@link #POINT_DISTANCE} to existing points
+     * are ignored.
+     *
+     * @param time position in microseconds
+     * @param bytePosition position in encoded stream in bytes
+     */
+    public synchronized void add(long time, long bytePosition) {
+        if (time<0 || bytePosition<0) return;
+        int i = Arrays.binarySearch(times, 0, size, time);
+        if (i>=0) return;
+        i = -i-1;
+        if (i>0 && time-times[i-1]<POINT_DISTANCE) return;
+        if (i<size && times[i]-time<POINT_DISTANCE) return;
+        if (size==times.length) {
+            times = Arrays.copyOf(times, 2*size);
+            bytes = Arrays.copyOf(bytes, 2*size);
+        }
+        System.arraycopy(times, i, times, i+1, size-i);
+        System.arraycopy(bytes, i, bytes, i+1, size-i);
+        times[i] = time;
+        bytes[i] = bytePosition;
+        size++;
+    }
+
+    /**
+     * Returns length of the data at the start of the file, which the decoder needs to read before
+     * it can decode audio frames at any of the points (e.g. FLAC stream header and metadata blocks).
+     * Points of such index are positions of frames in the file and decoding can start directly at
+     * them, given the decoder reads the header first.
+     *
+     * @return length of the header in bytes or -1 if the decoder does not need it or it is not known
+     */
+    public long getHeaderLength() {
+        return headerLength;
+    }
+
+    /** @return number of points in the index */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the nearest point at or before the specified position.
+     *
+     * @param time position in microseconds
+     * @return array of position in microseconds and position in bytes, or null if no such point
+     */
+    public synchronized long[] floor(long time) {
+        int i = Arrays.binarySearch(times, 0, size, time);
+        if (i<0) i = -i-2;
+        return i<0 ? null : new long[]{ times[i], bytes[i] };
+    }
+
+    private void build(File file, String type, float sampleRate) {
+        try {
+            long start = System.currentTimeMillis();
+            if (type.contains("flac")) buildFlac(file);
+            else if (type.contains("ogg") || type.contains("vorbis")) buildOgg(file, sampleRate);
+            LOGGER.info("Seek index for {} built with {} points in {}ms", file, size(), System.currentTimeMillis()-start);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to build seek index for {}", file, e);
+        }
+    }
+
+    // uses SEEKTABLE metadata block, offsets are relative to the first frame
+    private void buildFlac(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            FLACDecoder decoder = new FLACDecoder(in);
+            Metadata[] metadata = decoder.readMetadata();
+            // all bytes up to the first frame, i.e. also stream marker (and ID3v2 tag, if any),
+            // unlike the metadata length
+            long firstFrame = decoder.getTotalBytesRead();
+            StreamInfo info = null;
+            SeekTable table = null;
+            for (Metadata m : metadata) {
+                if (m instanceof StreamInfo) info = (StreamInfo) m;
+                if (m instanceof SeekTable) table = (SeekTable) m;
+            }
+            if (info==null || table==null || info.getSampleRate()<=0) return;
+            for (int i=0; i<table.numberOfPoints(); i++) {
+                SeekPoint p = table.getSeekPoint(i);
+                // placeholder points have sample number 0xFFFFFFFFFFFFFFFF
+                if (p.getSampleNumber()<0) continue;
+                add(p.getSampleNumber()*1000000/info.getSampleRate(), firstFrame+p.getStreamOffset());
+            }
+            headerLength = firstFrame;
+        }
+    }
+
+    // reads page headers only, the page payloads are skipped
+    private void buildOgg(File file, float sampleRate) throws IOException {
+        if (sampleRate<=0) return;
+        byte[] header = new byte[27];
+        byte[] segments = new byte[255];
+        try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+            long pos = 0;
+            long length = f.length();
+            long granulePrevious = -1;
+            while (pos+header.length<=length) {
+                f.seek(pos);
+                f.readFully(header);
+                if (header[0]!='O' || header[1]!='g' || header[2]!='g' || header[3]!='S') return;
+                long granule = 0;
+                for (int i=13; i>=6; i--) granule = (granule<<8) | (header[i] & 0xff);
+                int n = header[26] & 0xff;
+                f.readFully(segments, 0, n);
+                int payload = 0;
+                for (int i=0; i<n; i++) payload += segments[i] & 0xff;
+                // granule is position at the end of the page, -1 if no packet ends on the page,
+                // so the page starts at the position of the last page with granule
+                if (granulePrevious>0) add((long) (granulePrevious*1000000/sampleRate), pos);
+                if (granule>0) granulePrevious = granule;
+                pos += header.length + n + payload;
+            }
+        }
+    }
+}
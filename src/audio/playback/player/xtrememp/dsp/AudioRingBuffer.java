@@ -0,0 +1,94 @@
+/**
+ * Xtreme Media Player a cross-platform media player. 
+ * Copyright (C) 2005-2014 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package audio.playback.player.xtrememp.dsp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single producer single consumer ring buffer of audio data.
+ * <p/>
+ * The producer (audio thread) never blocks - when the buffer is full, the oldest data are
+ * overwritten. The consumer (DSS thread) reads data by their position in the stream of all
+ * data ever written, see {@link #getWritten()} and {@link #indexOf(long)}. The position is
+ * published only after the data are copied, so data before it are always complete, although
+ * the oldest of them may be overwritten by the producer while being read, which is acceptable
+ * for visualization purposes.
+ *
+ * @author Martin Polakovic
+ */
+public class AudioRingBuffer {
+
+    private final byte[] data;
+    private final int capacity;
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * @param capacity minimal capacity in bytes
+     * @param frameSize size of audio frame in bytes, capacity is rounded up to its multiple so
+     * frames never wrap around the end of the buffer
+     */
+    public AudioRingBuffer(int capacity, int frameSize) {
+        frameSize = Math.max(1, frameSize);
+        this.capacity = ((Math.max(capacity, frameSize) + frameSize - 1) / frameSize) * frameSize;
+        this.data = new byte[this.capacity];
+    }
+
+    /**
+     * Writes the data into the buffer. Must only be called from single thread.
+     *
+     * @param src data
+     * @param offset offset of data to write
+     * @param length length of data to write
+     */
+    public void write(byte[] src, int offset, int length) {
+        long w = written.get();
+        long wNew = w + length;
+        // only the last capacity bytes can fit
+        if (length > capacity) {
+            offset += length - capacity;
+            length = capacity;
+            w = wNew - capacity;
+        }
+        int i = indexOf(w);
+        int n = Math.min(length, capacity - i);
+        System.arraycopy(src, offset, data, i, n);
+        System.arraycopy(src, offset + n, data, 0, length - n);
+        written.lazySet(wNew);
+    }
+
+    /** @return total number of bytes ever written */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /** @return index of byte at the specified stream position */
+    public int indexOf(long position) {
+        return (int) (position % capacity);
+    }
+
+    /** @return byte at the specified index, see {@link #indexOf(long)} */
+    public byte get(int index) {
+        return data[index];
+    }
+
+    /** @return size of the buffer in bytes */
+    public int getCapacity() {
+        return capacity;
+    }
+}
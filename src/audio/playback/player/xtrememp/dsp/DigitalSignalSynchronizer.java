@@ -18,7 +18,6 @@
  */
 package audio.playback.player.xtrememp.dsp;
 
-import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
@@ -27,8 +26,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sound.sampled.LineEvent;
 import javax.sound.sampled.LineListener;
@@ -41,6 +39,9 @@ import org.slf4j.LoggerFactory;
  * This class provides synchronization between a digital signal processor and
  * speaker output.
  *
+ * Audio data are passed from the audio thread to the DSS thread through a lock-free
+ * {@link AudioRingBuffer}, so writing audio data never blocks.
+ *
  * Based on the KJ-DSS project by Kris Fudalewski at http://fudcom.com/main/libs/kjdss/.
  *
  * @author Besmir Beqiri
@@ -52,15 +53,13 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
     public static final double DEFAULT_BLOCK_RATE = 44100.0 / 1024.0; // 44100/1024 = 43 bps
     private final List<DigitalSignalProcessor> dspList;
     private final ExecutorService execService;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock rLock = lock.readLock();
-    private final Lock wLock = lock.writeLock();
+    private final Lock wLock = new ReentrantLock();
     private final Condition writeCondition = wLock.newCondition();
     private Future future;
     private int blockLength = DEFAULT_BLOCK_LENGTH;
-    private double blockRate = DEFAULT_BLOCK_RATE;  // 43 blocks per second
+    private volatile double blockRate = DEFAULT_BLOCK_RATE;  // 43 blocks per second
     private SourceDataLine sourceDataLine;
-    private ByteBuffer audioDataBuffer;
+    private volatile AudioRingBuffer audioDataBuffer;
     private DssContext dssContext;
 
     // The following variables are used for "active rendering":
@@ -72,14 +71,13 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
     private long actualSleepTime = 0L;  // nanoseconds
     private long overSleepTime = 0L;    // nanoseconds
 
-    // The following variables are used for performance monitoring and reporting:
-    private float measuredLinePeriod = (float) 0.0;
-    private float cumulativeLinePeriod = (float) 0.0;
-    private float cumulativeComputationTime = (float) 0.0;
-    private float cumulativeActualSleepTime = (float) 0.0;
+    // The following variables are used for performance monitoring and reporting,
+    // written only by the DSS thread:
     private final int numLinesToAverage = 100;
-    private int lineCount = 0;
-    private int numMissedCycles = 0;
+    private volatile long cycleCount = 0L;
+    private volatile long missedCycleCount = 0L;
+    private volatile long cumulativeComputationTime = 0L; // nanoseconds
+    private volatile long maxComputationTime = 0L;        // nanoseconds
 
     /**
      * Default constructor.
@@ -159,7 +157,9 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
 
         sourceDataLine = sdl;
         dssContext = new DssContext(sourceDataLine, blockLength);
-        audioDataBuffer = ByteBuffer.allocate(sdl.getBufferSize());
+        // must hold the data queued in the line and the block being extracted
+        int frameSize = sdl.getFormat().getFrameSize();
+        audioDataBuffer = new AudioRingBuffer(sdl.getBufferSize() + blockLength * frameSize, frameSize);
 
         //Initialize DSP registered with this DSS.
         for (DigitalSignalProcessor dsp : dspList) {
@@ -167,6 +167,27 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
         }
     }
 
+    /**
+     * Sets the refresh rate of registered DSP's. Takes effect on next start.
+     *
+     * @param framesPerSecond The desired refresh rate per second.
+     */
+    public void setBlockRate(double framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.blockRate = framesPerSecond;
+    }
+
+    /**
+     * Returns the refresh rate of registered DSP's.
+     *
+     * @return The refresh rate per second.
+     */
+    public double getBlockRate() {
+        return blockRate;
+    }
+
     protected void start() {
         blockPeriod = Math.round(1000000000.0 / blockRate); // 23,219,955 nanoseconds
         future = execService.submit(this);
@@ -192,42 +213,62 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
         if (future != null) {
             future.cancel(true);
         }
-        if (audioDataBuffer != null) {
-            audioDataBuffer.clear();
-        }
+        audioDataBuffer = null;
     }
 
     /**
      * Writes part of specified buffer to the monitored source data line an any
-     * registered DSPs.
+     * registered DSPs. Never blocks.
      *
      * @param audioData Data to write.
      * @param offset Offset to start reading from the buffer.
      * @param length The length from the specified offset to read.
      */
     public void writeAudioData(byte[] audioData, int offset, int length) {
-        if (audioDataBuffer == null) {
-            return;
+        AudioRingBuffer buffer = audioDataBuffer;
+        if (buffer != null) {
+            buffer.write(audioData, offset, length);
         }
+    }
 
-        wLock.lock();
-        try {
-            if (audioDataBuffer.remaining() < length) {
-                removeBytesFromStart(audioDataBuffer, length - audioDataBuffer.remaining());
-            }
-            audioDataBuffer.put(audioData, offset, length);
-        } finally {
-            wLock.unlock();
-        }
+    /**
+     * Returns number of processing cycles since creation.
+     *
+     * @return The number of cycles.
+     */
+    public long getCycleCount() {
+        return cycleCount;
     }
 
-    private void removeBytesFromStart(ByteBuffer byteBuffer, int n) {
-        int index = 0;
-        for (int i = n; i < byteBuffer.position(); i++) {
-            byteBuffer.put(index++, byteBuffer.get(i));
-            byteBuffer.put(i, (byte) 0);
-        }
-        byteBuffer.position(index);
+    /**
+     * Returns number of processing cycles that took longer than the block
+     * period, i.e., the DSPs were not updated at the desired rate.
+     *
+     * @return The number of missed cycles.
+     */
+    public long getMissedCycleCount() {
+        return missedCycleCount;
+    }
+
+    /**
+     * Returns average time the data extraction and processing by all DSPs took
+     * in one cycle.
+     *
+     * @return The average computation time in nanoseconds.
+     */
+    public long getAverageComputationTime() {
+        long c = cycleCount;
+        return c == 0 ? 0L : cumulativeComputationTime / c;
+    }
+
+    /**
+     * Returns maximal time the data extraction and processing by all DSPs took
+     * in one cycle.
+     *
+     * @return The maximal computation time in nanoseconds.
+     */
+    public long getMaxComputationTime() {
+        return maxComputationTime;
     }
 
     @Override
@@ -235,13 +276,9 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
         while (isRunning()) {
             beforeTime = System.nanoTime();  // nanoseconds
 
-            if (!dspList.isEmpty()) {
-                rLock.lock();
-                try {
-                    dssContext.extractData(audioDataBuffer);
-                } finally {
-                    rLock.unlock();
-                }
+            AudioRingBuffer buffer = audioDataBuffer;
+            if (!dspList.isEmpty() && buffer != null) {
+                dssContext.extractData(buffer);
                 //Dispatch sample data to digital signal processors
                 for (DigitalSignalProcessor dsp : dspList) {
                     dsp.process(dssContext);
@@ -249,10 +286,13 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
             } else {
                 wLock.lock();
                 try {
-                    writeCondition.awaitUninterruptibly();
+                    writeCondition.await();
+                } catch (InterruptedException ex) {
+                    return;
                 } finally {
                     wLock.unlock();
                 }
+                continue;
             }
 
             afterTime = System.nanoTime();      // nanoseconds
@@ -272,33 +312,23 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
                 }
                 actualSleepTime = System.nanoTime() - afterTime; // nanoseconds
                 overSleepTime = actualSleepTime - desiredSleepTime; // corrects for sleep inaccuracies
-                // logger.info("actualSleepTime      = "  + actualSleepTime );
-                // logger.info("overSleepTime        = " + overSleepTime);
             } else {
                 // sleepTime <= 0; The computation took longer than the blockPeriod. This is bad.
                 overSleepTime = 0;
-                numMissedCycles++;
+                missedCycleCount++;
             }
-            /*
+
             // This section computes some performance statics and reports them:
-            measuredLinePeriod = timeDiff + desiredSleepTime + overSleepTime;
-            cumulativeLinePeriod += measuredLinePeriod;
+            cycleCount++;
             cumulativeComputationTime += timeDiff;
-            cumulativeActualSleepTime += actualSleepTime;
-
-            if (lineCount == numLinesToAverage - 1) {
-                logger.info("Average Line Period      = " + cumulativeLinePeriod / numLinesToAverage);
-                logger.info("Average Computation Time =  " + cumulativeComputationTime / numLinesToAverage);
-                logger.info("Average Actual Sleep Time= " + cumulativeActualSleepTime / numLinesToAverage);
-                logger.info("Total Missed Cycles      =  " + numMissedCycles);
-                lineCount = 0;
-                cumulativeLinePeriod = 0;
-                cumulativeComputationTime = 0;
-                cumulativeActualSleepTime = 0;
-                numMissedCycles = 0;
+            if (timeDiff > maxComputationTime) {
+                maxComputationTime = timeDiff;
+            }
+            if (cycleCount % numLinesToAverage == 0 && logger.isDebugEnabled()) {
+                logger.debug("Average Computation Time = " + getAverageComputationTime());
+                logger.debug("Max Computation Time     = " + maxComputationTime);
+                logger.debug("Total Missed Cycles      = " + missedCycleCount);
             }
-            lineCount++;
-            */
         }
     }
 
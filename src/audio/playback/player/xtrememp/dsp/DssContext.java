@@ -18,7 +18,6 @@
  */
 package audio.playback.player.xtrememp.dsp;
 
-import java.nio.ByteBuffer;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.SourceDataLine;
 
@@ -60,15 +59,23 @@ public class DssContext {
 
     /**
      * The method extractData() extracts the desired audio data from the
-     * audioDataBuffer provided by the DigitalSignalSynchronizer, performs some
+     * ring buffer provided by the DigitalSignalSynchronizer, performs some
      * necessary reformatting on it, and outputs the audio samples data into a
      * two-dimensional array called audioChannels[][].
+     * <p/>
+     * The extracted block starts at the data currently being played, i.e., the
+     * data written to the buffer minus the data still queued in the source data
+     * line, which remains correct after the line is flushed.
      * 
      * @param audioDataBuffer 
      */
-    public void extractData(ByteBuffer audioDataBuffer) {
-        long lfp = sourceDataLine.getLongFramePosition();  // long frame position
-        offset = (int) ((long) (lfp * frameSize) % (long) (audioDataBuffer.capacity()));
+    public void extractData(AudioRingBuffer audioDataBuffer) {
+        long written = audioDataBuffer.getWritten();
+        long queued = sourceDataLine.getBufferSize() - sourceDataLine.available();
+        long start = Math.max(0, Math.min(written - queued, written - (long) blockLength * frameSize));
+        start -= start % frameSize;
+        int capacity = audioDataBuffer.getCapacity();
+        offset = audioDataBuffer.indexOf(start);
         int channelNum  = 0;    // audio channel number
         int sampleNum   = 0;    // audio sample number
         int cdp         = 0;    // channel data position
@@ -79,7 +86,7 @@ public class DssContext {
         
         // -- Loop through audio data.
         for (sampleNum = 0, position = offset; sampleNum < blockLength; sampleNum++, position += frameSize) {
-            if (position >= audioDataBuffer.capacity()) {
+            if (position >= capacity) {
                 position = 0;
             }
 
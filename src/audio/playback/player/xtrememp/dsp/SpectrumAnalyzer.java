@@ -0,0 +1,226 @@
+/**
+ * Xtreme Media Player a cross-platform media player. 
+ * Copyright (C) 2005-2014 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package audio.playback.player.xtrememp.dsp;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.scene.media.AudioSpectrumListener;
+
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Digital signal processor computing audio spectrum, compatible with {@link AudioSpectrumListener},
+ * i.e., magnitudes are in decibels clamped at {@link #THRESHOLD} and the bands split the frequency
+ * range from 0 to the Nyquist frequency linearly.
+ * <p/>
+ * Uses windowed (Hann) real FFT over the samples about to be played, with both channels mixed.
+ * All buffers are allocated in {@link #init(int, javax.sound.sampled.SourceDataLine)}, processing
+ * does not allocate.
+ * <p/>
+ * The listener is invoked using the provided executor. If the previous invocation has not yet
+ * completed, the current spectrum is dropped, so the listener never falls behind.
+ *
+ * @author Martin Polakovic
+ */
+public class SpectrumAnalyzer implements DigitalSignalProcessor {
+
+    /** Minimal magnitude in dB, same as default of {@link javafx.scene.media.MediaPlayer#getAudioSpectrumThreshold()}. */
+    public static final int THRESHOLD = -60;
+    /** Minimal FFT size. Bigger size increases frequency resolution, but reduces time resolution. */
+    private static final int FFT_SIZE_MIN = 1024;
+
+    private final int bands;
+    private final AudioSpectrumListener listener;
+    private final Executor listenerExecutor;
+    private final AtomicBoolean dispatching = new AtomicBoolean(false);
+    private final Runnable dispatch = this::dispatch;
+    private SourceDataLine sourceDataLine;
+
+    private int fftSize;
+    private float[] window;
+    private float windowSum;
+    private float[] re, im;         // fftSize/2 complex points
+    private float[] cos, sin;       // twiddles, fftSize/2
+    private int[] reversed;         // bit reversal permutation of fftSize/2
+    private float[] magnitudes, phases;                 // computed
+    private float[] magnitudesOut, phasesOut;           // dispatched
+    private double timestampOut;
+    private volatile double duration;
+
+    /**
+     * @param bands number of bands
+     * @param listener spectrum listener
+     * @param listenerExecutor executor the listener will be invoked with, e.g. javafx thread
+     */
+    public SpectrumAnalyzer(int bands, AudioSpectrumListener listener, Executor listenerExecutor) {
+        if (bands < 2 || listener == null || listenerExecutor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.bands = bands;
+        this.listener = listener;
+        this.listenerExecutor = listenerExecutor;
+        this.magnitudes = new float[bands];
+        this.phases = new float[bands];
+        this.magnitudesOut = new float[bands];
+        this.phasesOut = new float[bands];
+    }
+
+    /** @return number of bands */
+    public int getBands() {
+        return bands;
+    }
+
+    @Override
+    public void init(int blockLength, SourceDataLine sourceDataLine) {
+        this.sourceDataLine = sourceDataLine;
+
+        int size = Integer.highestOneBit(Math.max(FFT_SIZE_MIN, 2 * bands) - 1) << 1;
+        if (fftSize == size) {
+            return;
+        }
+        fftSize = size;
+        int n = fftSize / 2;
+        re = new float[n];
+        im = new float[n];
+        window = new float[fftSize];
+        windowSum = 0;
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (fftSize - 1)));
+            windowSum += window[i];
+        }
+        cos = new float[n];
+        sin = new float[n];
+        for (int i = 0; i < n; i++) {
+            cos[i] = (float) Math.cos(2 * Math.PI * i / fftSize);
+            sin[i] = (float) Math.sin(2 * Math.PI * i / fftSize);
+        }
+        reversed = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for (int i = 0; i < n; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    @Override
+    public void process(DssContext dssContext) {
+        if (fftSize == 0) {
+            return;
+        }
+        float[][] audioChannels = dssContext.getAudioData();
+        float[] left = audioChannels[0];
+        float[] right = audioChannels[1];
+        int samples = Math.min(fftSize, dssContext.getSampleSize());
+
+        // pack real input into complex array of half size: z[k] = x[2k] + i*x[2k+1]
+        int n = fftSize / 2;
+        for (int k = 0; k < n; k++) {
+            int i = reversed[k];
+            int s = 2 * i;
+            re[k] = s < samples ? 0.5f * (left[s] + right[s]) * window[s] : 0;
+            im[k] = s + 1 < samples ? 0.5f * (left[s + 1] + right[s + 1]) * window[s + 1] : 0;
+        }
+        fft(n);
+        spectrum(n);
+
+        if (!dispatching.getAndSet(true)) {
+            timestampOut = sourceDataLine.getMicrosecondPosition() / 1000000.0;
+            System.arraycopy(magnitudes, 0, magnitudesOut, 0, bands);
+            System.arraycopy(phases, 0, phasesOut, 0, bands);
+            listenerExecutor.execute(dispatch);
+        }
+    }
+
+    /**
+     * Sets time between two spectrum updates, only used to inform the listener.
+     *
+     * @param duration duration in seconds
+     */
+    public void setInterval(double duration) {
+        this.duration = duration;
+    }
+
+    private void dispatch() {
+        try {
+            listener.spectrumDataUpdate(timestampOut, duration, magnitudesOut, phasesOut);
+        } finally {
+            dispatching.set(false);
+        }
+    }
+
+    // in-place iterative radix-2 complex fft of bit-reversed input of size n
+    private void fft(int n) {
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = fftSize / size;  // twiddle table is for fftSize, so it is 2*n/size
+            for (int start = 0; start < n; start += size) {
+                for (int j = 0, t = 0; j < half; j++, t += step) {
+                    float wr = cos[t];
+                    float wi = -sin[t];
+                    int a = start + j;
+                    int b = a + half;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    // unpacks spectrum of real input from the half size complex fft and aggregates bins into bands
+    private void spectrum(int n) {
+        float norm = 2 / windowSum;
+        int band = 0;
+        int bandEnd = n / bands;
+        int bandBins = 0;
+        float bandPower = 0;
+        for (int k = 0; k < n; k++) {
+            int m = k == 0 ? 0 : n - k;
+            float zr = re[k], zi = im[k];
+            float cr = re[m], ci = -im[m];
+            float er = 0.5f * (zr + cr), ei = 0.5f * (zi + ci);
+            float or = 0.5f * (zi - ci), oi = -0.5f * (zr - cr);
+            float wr = cos[k], wi = -sin[k];
+            float xr = er + wr * or - wi * oi;
+            float xi = ei + wr * oi + wi * or;
+
+            float amplitude = norm * (float) Math.sqrt(xr * xr + xi * xi);
+            if (bandBins == 0) {
+                phases[band] = (float) Math.atan2(xi, xr);
+            }
+            bandPower += amplitude * amplitude;
+            bandBins++;
+
+            if (k + 1 >= bandEnd) {
+                float db = bandPower <= 0 ? THRESHOLD : (float) (10 * Math.log10(bandPower / bandBins));
+                magnitudes[band] = Math.max(THRESHOLD, db);
+                band++;
+                if (band == bands) {
+                    break;
+                }
+                bandEnd = (int) ((long) (band + 1) * n / bands);
+                bandBins = 0;
+                bandPower = 0;
+            }
+        }
+    }
+}
@@ -5,10 +5,7 @@
  */
 package audio.playlist;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.io.ObjectStreamException;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -38,14 +35,14 @@ import org.slf4j.LoggerFactory;
 import com.sun.javafx.collections.ObservableListWrapper;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
-import com.thoughtworks.xstream.io.StreamException;
-import com.thoughtworks.xstream.io.xml.DomDriver;
 
 import audio.Item;
 import audio.Player;
 import audio.playback.PLAYBACK;
 import gui.objects.popover.PopOver;
 import gui.objects.icon.Icon;
+import main.AppSerializer;
+import main.AppSerializer.SerializationException;
 import unused.SimpleConfigurator;
 import util.collections.mapset.MapSet;
 import util.conf.ValueConfig;
@@ -55,6 +52,7 @@ import util.file.Environment;
 import util.serialize.xstream.PlaylistItemConverter;
 
 import static de.jensd.fx.glyphs.fontawesome.FontAwesomeIcon.INFO;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
 import static javafx.util.Duration.millis;
 import static main.App.APP;
@@ -350,7 +348,7 @@ public class Playlist extends ObservableListWrapper<PlaylistItem> {
     public void updateItems(Collection<PlaylistItem> items) {
         if (items.isEmpty()) return;
         List<PlaylistItem> l = new ArrayList(items);
-        Player.IO_THREAD.execute(() -> {
+        Player.REFRESH_THREAD.execute(() -> {
             for (PlaylistItem i: l) {
                 if (Thread.interrupted()) return;
                 if(!i.isUpdated()) i.update();
@@ -409,7 +407,7 @@ public class Playlist extends ObservableListWrapper<PlaylistItem> {
      */
     public void playItem(PlaylistItem item, UnaryOperator<PlaylistItem> alt_supplier) {
         if (item != null && transform().contains(item)) {
-            Player.IO_THREAD.execute(() -> {
+            Player.PLAYBACK_THREAD.execute(() -> {
                 boolean unplayable = item.isNotPlayable(); // potentially blocking
                 // we cant play item, we try to play next one and eventually get
                 // here again, we must defend against situation where no item
@@ -792,19 +790,11 @@ public class Playlist extends ObservableListWrapper<PlaylistItem> {
 
     /** Serializes the playlist into file. */
     public void serializeToFile(File f) {
-        try (
-            FileWriter fw = new FileWriter(f);
-            BufferedWriter bw = new BufferedWriter(fw);
-        ){
+        try {
             LOGGER.info("Saving playlist into file {}", f);
-            XStream x = new XStream(new DomDriver());
-                    x.registerConverter(new PlaylistItemConverter());
-                    x.omitField(ObservableListBase.class, "listenerHelper");
-                    x.omitField(ObservableListBase.class, "changeBuilder");
-                    x.omitField(ObservableListWrapper.class, "elementObserver");
-                    x.toXML(this, bw);
-        } catch (IOException ex) {
-            LOGGER.error("Save playlist failed");
+            Serializer.INSTANCE.toXML(this, f);
+        } catch (SerializationException ex) {
+            LOGGER.error("Save playlist failed", ex);
         }
     }
 
@@ -817,18 +807,30 @@ public class Playlist extends ObservableListWrapper<PlaylistItem> {
     public static Playlist deserialize(File f) {
         try {
             LOGGER.info("Loading playlist from file {}", f);
-            XStream x = new XStream(new DomDriver());
-                    x.registerConverter(new PlaylistItemConverter());
-                    x.omitField(ObservableListBase.class, "listenerHelper");
-                    x.omitField(ObservableListBase.class, "changeBuilder");
-                    x.omitField(ObservableListWrapper.class, "elementObserver");
-            return (Playlist) x.fromXML(f);
-        } catch (ClassCastException | StreamException ex) {
-            LOGGER.error("Loading playlist failed");
+            return Serializer.INSTANCE.fromXML(Playlist.class, f);
+        } catch (SerializationException ex) {
+            LOGGER.error("Loading playlist failed", ex);
             return null;
         }
     }
 
+    /**
+     * Serializer of playlist files. Configured as the playlist files always were, not as the
+     * application serializer, whose property converters and aliases change the format, so files
+     * of all versions can be read and written ones can be read by older versions.
+     */
+    private static class Serializer {
+        static final AppSerializer INSTANCE = new AppSerializer(UTF_8);
+
+        static {
+            XStream x = INSTANCE.x;
+            x.registerConverter(new PlaylistItemConverter());
+            x.omitField(ObservableListBase.class, "listenerHelper");
+            x.omitField(ObservableListBase.class, "changeBuilder");
+            x.omitField(ObservableListWrapper.class, "elementObserver");
+        }
+    }
+
     /**
      * Invoked just after deserialization.
      *
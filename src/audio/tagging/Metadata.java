@@ -3,6 +3,8 @@ package audio.tagging;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
@@ -68,6 +70,7 @@ import util.units.NofX;
 import static audio.tagging.Metadata.Field.COVER_INFO;
 import static audio.tagging.Metadata.Field.FULLTEXT;
 import static java.lang.Integer.parseInt;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.joining;
 import static util.file.Util.EMPTY_URI;
 import static util.Util.emptyOr;
@@ -561,6 +564,109 @@ public final class Metadata extends MetaItem<Metadata> {
         if(category.isEmpty()) category = emptyOr(tag.getFirst("CATEGORY"));
     }
 
+/******************************************************************************/
+
+    /**
+     * Writes all tag and header fields in binary form. Counterpart of {@link #read(java.io.DataInput)}.
+     * Used by {@link TagCache}.
+     */
+    void write(DataOutput out) throws IOException {
+        writeS(out, uri);
+        out.writeLong(filesize);
+        writeS(out, encoding);
+        out.writeInt(bitrate);
+        writeS(out, encoder);
+        writeS(out, channels);
+        writeS(out, sample_rate);
+        out.writeDouble(duration);
+        writeS(out, title);
+        writeS(out, album);
+        writeS(out, artist);
+        writeS(out, album_artist);
+        writeS(out, composer);
+        writeS(out, publisher);
+        out.writeInt(track);
+        out.writeInt(tracks_total);
+        out.writeInt(disc);
+        out.writeInt(discs_total);
+        writeS(out, genre);
+        out.writeInt(year);
+        out.writeInt(rating);
+        out.writeInt(playcount);
+        writeS(out, category);
+        writeS(out, comment);
+        writeS(out, lyrics);
+        writeS(out, mood);
+        writeS(out, custom1);
+        writeS(out, custom2);
+        writeS(out, custom3);
+        writeS(out, custom4);
+        writeS(out, custom5);
+        writeS(out, playedFirst);
+        writeS(out, playedLast);
+        writeS(out, libraryAdded);
+        writeS(out, color);
+        writeS(out, tags);
+    }
+
+    /**
+     * Reads metadata written by {@link #write(java.io.DataOutput)}.
+     * Used by {@link TagCache}.
+     */
+    static Metadata read(DataInput in) throws IOException {
+        Metadata m = new Metadata();
+        m.uri = readS(in);
+        m.filesize = in.readLong();
+        m.encoding = readS(in);
+        m.bitrate = in.readInt();
+        m.encoder = readS(in);
+        m.channels = readS(in);
+        m.sample_rate = readS(in);
+        m.duration = in.readDouble();
+        m.title = readS(in);
+        m.album = readS(in);
+        m.artist = readS(in);
+        m.album_artist = readS(in);
+        m.composer = readS(in);
+        m.publisher = readS(in);
+        m.track = in.readInt();
+        m.tracks_total = in.readInt();
+        m.disc = in.readInt();
+        m.discs_total = in.readInt();
+        m.genre = readS(in);
+        m.year = in.readInt();
+        m.rating = in.readInt();
+        m.playcount = in.readInt();
+        m.category = readS(in);
+        m.comment = readS(in);
+        m.lyrics = readS(in);
+        m.mood = readS(in);
+        m.custom1 = readS(in);
+        m.custom2 = readS(in);
+        m.custom3 = readS(in);
+        m.custom4 = readS(in);
+        m.custom5 = readS(in);
+        m.playedFirst = readS(in);
+        m.playedLast = readS(in);
+        m.libraryAdded = readS(in);
+        m.color = readS(in);
+        m.tags = readS(in);
+        return m;
+    }
+
+    // DataOutput.writeUTF is limited to 64kB, which lyrics may exceed
+    private static void writeS(DataOutput out, String s) throws IOException {
+        byte[] bs = s.getBytes(UTF_8);
+        out.writeInt(bs.length);
+        out.write(bs);
+    }
+
+    private static String readS(DataInput in) throws IOException {
+        byte[] bs = new byte[in.readInt()];
+        in.readFully(bs);
+        return new String(bs, UTF_8);
+    }
+
 /******************************************************************************/
 
     @Override
@@ -1279,6 +1385,11 @@ public final class Metadata extends MetaItem<Metadata> {
             return isTypeStringRepresentable() && !NOT_AUTO_COMPLETABLE.contains(this);
         }
 
+        /** @return true if this is {@link #FULLTEXT} or the value of this field is part of it */
+        public boolean isInFulltext() {
+            return this==FULLTEXT || stream(STRING_FIELDS).anyMatch(f -> f==this);
+        }
+
         @Override
         public String toS(Object o, String empty_val) {
             if(o==null || "".equals(o)) return empty_val;
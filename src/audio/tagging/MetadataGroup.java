@@ -10,7 +10,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import audio.Player;
@@ -53,9 +55,11 @@ public final class MetadataGroup {
     private final double avg_rating;
     private final double weigh_rating;
     private final RangeYear years;
-    private final List<Metadata> metadatas;
+    private volatile List<Metadata> metadatas;
+    private Supplier<List<Metadata>> metadatasLazy;
     private final boolean all_flag;
 
+    /** Use {@link MetadataGroupIndex} to maintain groups of changing items. */
     public static MetadataGroup groupOf(Metadata.Field f, Collection<Metadata> ms) {
         return new MetadataGroup(f, true, getAllValue(f), ms);
     }
@@ -100,8 +104,44 @@ public final class MetadataGroup {
         weigh_rating = avg_rating*items;
     }
 
+    // for precomputed aggregates, takes ownership of the list
+    MetadataGroup(Metadata.Field f, boolean isAll, Object value, List<Metadata> ms, long albumCount,
+                  double lengthSum, long sizeSum, double ratingSum, int yearMin, int yearMax, boolean hasYearUnspecified) {
+        this(f, isAll, value, ms.size(), null, albumCount, lengthSum, sizeSum, ratingSum, yearMin, yearMax, hasYearUnspecified);
+        metadatas = ms;
+    }
+
+    // for precomputed aggregates, the list of the items is obtained from the supplier on first use
+    MetadataGroup(Metadata.Field f, boolean isAll, Object value, long itemCount, Supplier<List<Metadata>> ms, long albumCount,
+                  double lengthSum, long sizeSum, double ratingSum, int yearMin, int yearMax, boolean hasYearUnspecified) {
+        metadatasLazy = ms;
+        field = f;
+        items = itemCount;
+        val = value;
+        all_flag = isAll;
+        years = new RangeYear();
+        if(yearMin!=-1) years.accumulate(yearMin);
+        if(yearMax!=-1) years.accumulate(yearMax);
+        if(hasYearUnspecified) years.accumulate(-1);
+        albums = albumCount;
+        length = lengthSum;
+        size = sizeSum;
+        avg_rating = ratingSum/items;
+        weigh_rating = avg_rating*items;
+    }
+
     public List<Metadata> getGrouped() {
-        return metadatas;
+        List<Metadata> ms = metadatas;
+        if(ms==null) {
+            synchronized(this) {
+                ms = metadatas;
+                if(ms==null) {
+                    metadatas = ms = metadatasLazy.get();
+                    metadatasLazy = null;
+                }
+            }
+        }
+        return ms;
     }
 
     public Metadata.Field getField() {
@@ -166,6 +206,20 @@ public final class MetadataGroup {
         return Field.VALUE;
     }
 
+    /** Groups are equal if they group the same items, i.e., have the same field, value and all flag. */
+    @Override
+    public boolean equals(Object o) {
+        if(this==o) return true;
+        if(!(o instanceof MetadataGroup)) return false;
+        MetadataGroup g = (MetadataGroup) o;
+        return field==g.field && all_flag==g.all_flag && Objects.equals(val, g.val);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31*(31*field.hashCode() + Objects.hashCode(val)) + (all_flag ? 1 : 0);
+    }
+
     @Override
     public String toString() {
         return getField() + ": " + getValue() + ", items: " + getItemCount() +
@@ -275,7 +329,7 @@ public final class MetadataGroup {
     }
 
     @util.dev.TODO(note = "this may need some work")
-    private static Object getAllValue(Metadata.Field f) {
+    static Object getAllValue(Metadata.Field f) {
         return f.isTypeString() ? "" : null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package audio.tagging;
+
+import java.util.*;
+
+/**
+ * Aggregates of {@link MetadataGroup}s of items grouped by a field, maintained incrementally.
+ * <p/>
+ * Every group keeps its item count, sums of length, size and rating, album and year counters. When
+ * items change, only the groups of the affected items are updated and produce new
+ * {@link MetadataGroup}s, so the cost of a change does not depend on the number of all items. The
+ * group of all items only joins the items of the other groups when its items are requested.
+ * <p/>
+ * Not thread safe.
+ *
+ * @author Martin Polakovic
+ */
+public class MetadataGroupIndex {
+
+    private static final Object ALL = new Object();
+
+    /** Field the items are grouped by. */
+    public final Metadata.Field field;
+    private final Map<String,Metadata> items = new HashMap<>();    // item id -> item
+    private final Map<Object,Aggregate> aggregates = new HashMap<>(); // group value -> aggregate
+    private final Aggregate aggregateAll = new Aggregate(ALL);
+
+    public MetadataGroupIndex(Metadata.Field field) {
+        this.field = field;
+    }
+
+    /** Replaces all items. */
+    public void setAll(Collection<? extends Metadata> ms) {
+        items.clear();
+        aggregates.clear();
+        aggregateAll.clear();
+        ms.forEach(this::add);
+    }
+
+    /**
+     * Applies change of the items. Items are identified by {@link Metadata#getId()}.
+     *
+     * @return change of the groups
+     */
+    public Change update(Collection<? extends Metadata> added, Collection<? extends Metadata> removed, Collection<? extends Metadata> updated) {
+        // aggregates rather than their values, as null is a value of a group like any other
+        Set<Aggregate> changed = new HashSet<>();
+        removed.forEach(m -> changed.add(remove(m)));
+        updated.forEach(m -> changed.add(remove(m)));
+        added.forEach(m -> changed.add(add(m)));
+        updated.forEach(m -> changed.add(add(m)));
+        changed.remove(null);
+
+        Change c = new Change();
+        for(Aggregate a : changed) {
+            if(a.items.isEmpty()) {
+                if(a.group!=null) c.removed.add(a.group);
+                aggregates.remove(a.value);
+            } else {
+                (a.group==null ? c.added : c.updated).add(a.toGroup());
+            }
+        }
+        if(!changed.isEmpty()) (aggregateAll.group==null ? c.added : c.updated).add(aggregateAll.toGroup());
+        return c;
+    }
+
+    /** @return group of all items followed by groups of items with the same value of the field */
+    public List<MetadataGroup> getGroups() {
+        List<MetadataGroup> l = new ArrayList<>(aggregates.size()+1);
+        l.add(aggregateAll.getGroup());
+        aggregates.values().forEach(a -> l.add(a.getGroup()));
+        return l;
+    }
+
+    // returns the affected aggregate
+    private Aggregate add(Metadata m) {
+        remove(m);
+        items.put(m.getId(), m);
+        Aggregate a = aggregates.computeIfAbsent(field.getGroupedOf(m), Aggregate::new);
+        a.add(m);
+        aggregateAll.add(m);
+        return a;
+    }
+
+    // returns the affected aggregate or null if the item is not indexed
+    private Aggregate remove(Metadata m) {
+        Metadata old = items.remove(m.getId());
+        if(old==null) return null;
+        Aggregate a = aggregates.get(field.getGroupedOf(old));
+        a.remove(old);
+        aggregateAll.remove(old);
+        return a;
+    }
+
+    /** Change of the groups. Updated groups are equal to the groups they replace. */
+    public static class Change {
+        public final List<MetadataGroup> added = new ArrayList<>();
+        public final List<MetadataGroup> removed = new ArrayList<>();
+        public final List<MetadataGroup> updated = new ArrayList<>();
+    }
+
+    private class Aggregate {
+        final Object value;
+        final Map<String,Metadata> items = new LinkedHashMap<>();
+        final Map<String,Integer> albums = new HashMap<>();
+        final TreeMap<Integer,Integer> years = new TreeMap<>();
+        int yearsUnspecified = 0;
+        double length = 0;
+        long size = 0;
+        double rating = 0;
+        MetadataGroup group; // last produced group, null if not produced yet
+        boolean changed = true; // since the last produced group
+
+        Aggregate(Object value) {
+            this.value = value;
+        }
+
+        void add(Metadata m) {
+            items.put(m.getId(), m);
+            albums.merge(m.getAlbum(), 1, Integer::sum);
+            int year = m.getYearAsInt();
+            if(year==-1) yearsUnspecified++;
+            else years.merge(year, 1, Integer::sum);
+            length += m.getLengthInMs();
+            size += m.getFilesizeInB();
+            rating += m.getRatingPercent();
+            changed = true;
+        }
+
+        void remove(Metadata m) {
+            items.remove(m.getId());
+            albums.computeIfPresent(m.getAlbum(), (album,count) -> count==1 ? null : count-1);
+            int year = m.getYearAsInt();
+            if(year==-1) yearsUnspecified--;
+            else years.computeIfPresent(year, (y,count) -> count==1 ? null : count-1);
+            length -= m.getLengthInMs();
+            size -= m.getFilesizeInB();
+            rating -= m.getRatingPercent();
+            // sums of no items are exactly 0, rather than accumulated rounding errors
+            if(items.isEmpty()) length = rating = 0;
+            changed = true;
+        }
+
+        void clear() {
+            items.clear();
+            albums.clear();
+            years.clear();
+            yearsUnspecified = 0;
+            length = size = 0;
+            rating = 0;
+            group = null;
+            changed = true;
+        }
+
+        MetadataGroup getGroup() {
+            return changed ? toGroup() : group;
+        }
+
+        MetadataGroup toGroup() {
+            int yearMin = years.isEmpty() ? -1 : years.firstKey();
+            int yearMax = years.isEmpty() ? -1 : years.lastKey();
+            if(value==ALL) {
+                // copying all items on every change would not be incremental, instead the list is
+                // joined from the (immutable) groups of the values when requested
+                MetadataGroup[] parts = aggregates.values().stream().map(Aggregate::getGroup).toArray(MetadataGroup[]::new);
+                int count = items.size();
+                group = new MetadataGroup(
+                    field, true, MetadataGroup.getAllValue(field), count, () -> {
+                        List<Metadata> l = new ArrayList<>(count);
+                        for(MetadataGroup g : parts) l.addAll(g.getGrouped());
+                        return l;
+                    },
+                    albums.size(), length, size, rating, yearMin, yearMax, yearsUnspecified>0
+                );
+            } else {
+                group = new MetadataGroup(
+                    field, false, value, new ArrayList<>(items.values()),
+                    albums.size(), length, size, rating, yearMin, yearMax, yearsUnspecified>0
+                );
+            }
+            changed = false;
+            return group;
+        }
+    }
+}
@@ -1,11 +1,17 @@
 
 package audio.tagging;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 
 import javax.persistence.EntityManager;
@@ -21,10 +27,15 @@ import audio.playlist.PlaylistItem;
 import services.database.Db;
 import util.file.AudioFileFormat.Use;
 
-import static util.async.Async.runFX;
+import static java.lang.Math.max;
+import static java.lang.Runtime.getRuntime;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static util.async.Async.runNew;
+import static util.async.Async.threadFactory;
 import static util.dev.Util.log;
 import static util.dev.Util.noØ;
+import static util.functional.Util.listRO;
 
 /**
  * This class plays the role of static factory for Metadata. It can read files
@@ -134,7 +145,8 @@ public class MetadataReader{
      * When error occurs during reading {@link Metadata#EMPTY()} will be
      * returned.
      * <p/>
-     * Incurs costly I/O.
+     * Incurs costly I/O, unless the file did not change since it was last read, in which case
+     * the metadata are served from {@link TagCache}.
      * Avoid using this method in loops or in chains on main application thread.
      *
      * @param item
@@ -152,13 +164,18 @@ public class MetadataReader{
         }
         // handle normal item
         else {
-            afile = MetaItem.readAudioFile(item.getFile());
-            return (afile == null) ? item.toMeta() : new Metadata(afile);
+            File file = item.getFile();
+            Metadata cached = TagCache.get(file);
+            if (cached != null) return cached;
+
+            AudioFile afile = MetaItem.readAudioFile(file);
+            if (afile == null) return item.toMeta();
+            Metadata m = new Metadata(afile);
+            TagCache.put(file, m);
+            return m;
         }
     }
 
-    private static AudioFile afile;
-
     /**
      * Reads {@link Metadata} for specified item. Runs on background thread.
      * Calling this method will immediately start the execution. The procedures
@@ -235,6 +252,11 @@ public class MetadataReader{
      * <li> The task returns list of all provided items that are in the database after
      * the task succeeds.
      * </ul>
+     * <p/>
+     * Items already in the in memory library are skipped without any I/O. Tags of the remaining
+     * items are read in parallel on a bounded pool of worker threads and the results are persisted
+     * from the task's thread in batches, each in its own transaction. Cancelling the task persists
+     * items read so far.
      *
      * @param items
      * @param onEnd
@@ -252,51 +274,81 @@ public class MetadataReader{
             @Override
             protected List<Metadata> call() throws Exception {
                 List<Metadata> out = new ArrayList<>();
-                Metadata m;
-
-                EntityManager em = Db.em;
-                              em.getTransaction().begin();
+                List<Metadata> added = new ArrayList<>();
+                List<Item> unknown = new ArrayList<>();
 
+                // stage 1: skip items already in library, no I/O involved
                 for (Item item : items){
-                    completed++;
-                    if (isCancelled()) {
-                        log(MetadataReader.class).info("Metadata reading was canceled.");
-                        break;
+                    Metadata l = Db.items_byId.get(Metadata.metadataID(item.getURI()));
+                    if(l == null) {
+                        unknown.add(item);
+                    } else {
+                        completed++;
+                        skipped++;
+                        if(all_i) out.add(l);
                     }
+                }
+                updateMessage(all,completed,skipped);
+                updateProgress(completed, all);
 
-                    boolean succeeded = false;
-                    Metadata l = null;
-                    try {
-                        succeeded = false;
-                        l = null;
-                        l = em.find(Metadata.class, Metadata.metadataID(item.getURI()));
-                        if(l == null) {
-                            MetadataWriter.useNoRefresh(item, MetadataWriter::setLibraryAddedNowIfEmpty);
-                            m = create(item);
-
-                            if (m.isEmpty()) skipped++;
-                            else {
-                                em.persist(m);
-                                out.add(m);
-                                succeeded = true;
-                            }
+                // stage 2: read tags on worker pool
+                // stage 3: persist results in batches on this thread (entity manager is not thread safe)
+                ExecutorService workers = newFixedThreadPool(SCAN_THREADS, threadFactory("library-scan-thread", true));
+                CompletionService<Metadata> parsed = new ExecutorCompletionService<>(workers);
+                EntityManager em = Db.em;
+                List<Metadata> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+                Iterator<Item> toParse = unknown.iterator();
+                int inFlight = 0;
+                try {
+                    while (toParse.hasNext() || inFlight>0){
+                        if (isCancelled()) {
+                            log(MetadataReader.class).info("Metadata reading was canceled.");
+                            break;
                         }
-                    } catch (Exception e) {
-                        log(MetadataReader.class).warn("Problem during reading tag of {}", item);
-                    }
 
-                    if(!succeeded) skipped++;
-                    if(!succeeded && all_i && l!=null) {
-                        out.add(l);
-                    }
+                        // keep the workers busy, but do not let parsed results pile up
+                        while (toParse.hasNext() && inFlight<SCAN_IN_FLIGHT_MAX){
+                            Item item = toParse.next();
+                            parsed.submit(() -> {
+                                MetadataWriter.useNoRefresh(item, MetadataWriter::setLibraryAddedNowIfEmpty);
+                                return create(item);
+                            });
+                            inFlight++;
+                        }
 
-                    // update
-                    updateMessage(all,completed,skipped);
-                    updateProgress(completed, all);
+                        Future<Metadata> f = parsed.take();
+                        inFlight--;
+                        completed++;
+                        Metadata m = null;
+                        try {
+                            m = f.get();
+                        } catch (ExecutionException e) {
+                            log(MetadataReader.class).warn("Problem during reading tag", e.getCause());
+                        }
+
+                        if (m == null || m.isEmpty()) skipped++;
+                        else batch.add(m);
+
+                        if (batch.size()>=SCAN_BATCH_SIZE) persist(em, batch, out, added);
+
+                        // update
+                        updateMessage(all,completed,skipped);
+                        updateProgress(completed, all);
+                    }
+                } finally {
+                    // let submitted reads finish, interrupting them could leave tag write half done
+                    workers.shutdown();
+                    try {
+                        if (!workers.awaitTermination(SCAN_TERMINATION_TIMEOUT_S, SECONDS))
+                            log(MetadataReader.class).warn("Reading tags did not finish in {}s", SCAN_TERMINATION_TIMEOUT_S);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    persist(em, batch, out, added);
                 }
-                em.getTransaction().commit();
+
                 // update library model
-                runFX(Db::updateInMemoryDBfromPersisted);
+                Db.updateInMemoryDB(added, listRO(), listRO());
 
                 // update state
                 updateMessage(all,completed,skipped);
@@ -304,11 +356,81 @@ public class MetadataReader{
 
                 return out;
             }
+
+            // persists the batch in single transaction and clears it
+            // if the transaction fails, it is rolled back and items are persisted one by one, so
+            // a single bad item only skips itself
+            private void persist(EntityManager em, List<Metadata> batch, List<Metadata> out, List<Metadata> added) {
+                if (batch.isEmpty()) return;
+                List<Metadata> batchOut = new ArrayList<>(), batchAdded = new ArrayList<>();
+                int batchSkipped = 0;
+                try {
+                    em.getTransaction().begin();
+                    for (Metadata m : batch)
+                        if (!persist(em, m, batchOut, batchAdded)) batchSkipped++;
+                    em.getTransaction().commit();
+                } catch (Exception e) {
+                    rollback(em);
+                    log(MetadataReader.class).warn("Persisting batch of {} items failed, persisting them one by one", batch.size(), e);
+                    batchOut.clear();
+                    batchAdded.clear();
+                    batchSkipped = 0;
+                    for (Metadata m : batch) {
+                        try {
+                            em.getTransaction().begin();
+                            if (!persist(em, m, batchOut, batchAdded)) batchSkipped++;
+                            em.getTransaction().commit();
+                        } catch (Exception ex) {
+                            rollback(em);
+                            batchOut.remove(m);
+                            batchAdded.remove(m);
+                            batchSkipped++;
+                            log(MetadataReader.class).warn("Problem during persisting {}", m.getURI(), ex);
+                        }
+                    }
+                }
+                out.addAll(batchOut);
+                added.addAll(batchAdded);
+                skipped += batchSkipped;
+                batch.clear();
+            }
+
+            // persists the item, unless it is already in the database, returns true if persisted
+            private boolean persist(EntityManager em, Metadata m, List<Metadata> out, List<Metadata> added) {
+                // the in memory library may be behind the database, check to be sure
+                Metadata l = em.find(Metadata.class, m.getId());
+                if (l == null) {
+                    em.persist(m);
+                    out.add(m);
+                    added.add(m);
+                    return true;
+                } else {
+                    if (all_i) out.add(l);
+                    return false;
+                }
+            }
+
+            private void rollback(EntityManager em) {
+                try {
+                    if (em.getTransaction().isActive()) em.getTransaction().rollback();
+                } catch (Exception e) {
+                    log(MetadataReader.class).error("Rolling back transaction failed", e);
+                }
+            }
         };
 
         return task;
     }
 
+    /** Number of threads reading tags when adding items to library. */
+    private static final int SCAN_THREADS = max(1, getRuntime().availableProcessors()-1);
+    /** Maximum number of read, but not yet persisted items when adding items to library. */
+    private static final int SCAN_IN_FLIGHT_MAX = 8*SCAN_THREADS;
+    /** Number of items persisted in single transaction when adding items to library. */
+    private static final int SCAN_BATCH_SIZE = 500;
+    /** Maximum time in s to wait for submitted reads to finish, when adding items to library ends. */
+    private static final long SCAN_TERMINATION_TIMEOUT_S = 60;
+
     public static Task<Void> removeMissingFromLibrary(BiConsumer<Boolean,Void> onEnd){
         // create task
         final Task<Void> task = new SuccessTask<>("Removing missing items from library",onEnd){
@@ -319,6 +441,7 @@ public class MetadataReader{
             @Override
             protected Void call() throws Exception {                    //long timeStart = System.currentTimeMillis();
                 List<Metadata> library_items = Db.getAllItems();
+                List<Metadata> removed_items = new ArrayList<>();
                 all = library_items.size();
                 Db.em.getTransaction().begin();
 
@@ -328,6 +451,7 @@ public class MetadataReader{
 
                     if(!m.getFile().exists()) {
                         Db.em.remove(m);
+                        removed_items.add(m);
                         removed++;
                     }
                     updateMessage(all,completed,removed);
@@ -336,7 +460,7 @@ public class MetadataReader{
 
                 Db.em.getTransaction().commit();
                 // update library model
-                runFX(Db::updateInMemoryDBfromPersisted);
+                Db.updateInMemoryDB(listRO(), removed_items, listRO());
 
                 // update state
                 updateMessage(all,completed,removed);
@@ -6,17 +6,22 @@ import java.io.IOException;
 import java.net.URI;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.scene.paint.Color;
 
 import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.exceptions.CannotWriteException;
 import org.jaudiotagger.audio.mp3.MP3File;
 import org.jaudiotagger.tag.FieldDataInvalidException;
 import org.jaudiotagger.tag.FieldKey;
@@ -37,11 +42,12 @@ import org.slf4j.LoggerFactory;
 
 import audio.Item;
 import audio.Player;
-import audio.playback.PLAYBACK;
+import audio.playback.player.FileSnapshot;
 import services.notif.Notifier;
 import audio.tagging.chapter.Chapter;
 import util.file.AudioFileFormat;
 import util.SwitchException;
+import util.async.executor.MonitoredExecutor;
 import util.dev.TODO;
 import util.parsing.Parser;
 import util.units.NofX;
@@ -53,6 +59,7 @@ import static audio.tagging.Metadata.TAGID_PLAYED_FIRST;
 import static audio.tagging.Metadata.TAGID_PLAYED_LAST;
 import static audio.tagging.Metadata.TAGID_TAGS;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.joining;
 import static main.App.APP;
@@ -78,6 +85,19 @@ import static util.functional.Util.split;
 public class MetadataWriter extends MetaItem {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataWriter.class);
+    // serializes reading and writing the tag of the same file from different threads, striped by file
+    private static final Object[] WRITE_LOCKS = new Object[64];
+    static {
+        for(int i=0; i<WRITE_LOCKS.length; i++) WRITE_LOCKS[i] = new Object();
+    }
+    // writers of tags, each file is always written by the same one, so its changes are applied in
+    // the order they were submitted even when batches are written in parallel
+    private static final MonitoredExecutor[] WRITERS = new MonitoredExecutor[max(2, min(4, Runtime.getRuntime().availableProcessors()))];
+    static {
+        for(int i=0; i<WRITERS.length; i++) WRITERS[i] = new MonitoredExecutor("tag-writer-" + (i+1), 1, Thread.NORM_PRIORITY, -1);
+    }
+    // minimal time in ms between reporting progress of a batch
+    private static final long PROGRESS_PERIOD = 100;
 
     /**
      * Constructs metadata writer for given item.
@@ -109,6 +129,7 @@ public class MetadataWriter extends MetaItem {
     private Tag tag;
     private int fields_changed;
     private boolean hasCorruptedTag;
+    private boolean writeFailed;
     // properties
     private final ReadOnlyBooleanWrapper isWriting = new ReadOnlyBooleanWrapper(false);
     public final ReadOnlyBooleanProperty writing = isWriting.getReadOnlyProperty();
@@ -586,6 +607,11 @@ public class MetadataWriter extends MetaItem {
         setCustomField(TAGID_PLAYED_FIRST,String.valueOf(epochmillis));
     }
 
+    public void setPlayedFirstIfEmpty(LocalDateTime at) {
+        if(hasCustomField(TAGID_PLAYED_FIRST)) return;
+        setPlayedFirst(at);
+    }
+
     public void setPlayedLast(LocalDateTime at) {
         long epochmillis = at.atZone(ZONE_ID).toInstant().toEpochMilli();
         setCustomField(TAGID_PLAYED_LAST,String.valueOf(epochmillis));
@@ -780,8 +806,7 @@ public class MetadataWriter extends MetaItem {
     /**
      * Writes all changes to tag.
      * <p/>
-     * Must never execute on main thread. This method is blocking due to I/O
-     * and possibly sleeping the thread.
+     * Must never execute on main thread. This method is blocking due to I/O.
      *
      * @return true if data were written to tag or false if tag didnt change,
      * either because there was nothing to change or writing failed.
@@ -796,38 +821,21 @@ public class MetadataWriter extends MetaItem {
         try {
 //            System.out.println("WRITING_PRE");
 //            audioFile.getTag().getFields().forEachRemaining(f->System.out.println(f.getId()+" "+f));
-            audioFile.commit();
+            // the snapshots the file plays from must not see the change
+            FileSnapshot.write(file, audioFile::commit);
 //            System.out.println("WRITING_POST");
 //            audioFile.getTag().getFields().forEachRemaining(f->System.out.println(f.getId()+" "+f));
 //            System.out.println("WRITING_POST_2");
 //            MetaItem.readAudioFile(getFile()).getTag().getFields().forEachRemaining(f->System.out.println(f.getId()+" "+f));
         } catch (Exception ex) {
-            if (isPlayingSame()) {
-                LOGGER.debug("File being played, will attempt to suspend playback");
-                PLAYBACK.suspend(); // asynchronous, we dont know how long it will take
-                // so we sleep the thread and try tagging again, twice once quickly, once longer
-                for(int i=1; i<=3; i+=2) {
-                    int tosleep = i*i*250;
-                    LOGGER.debug("Attempt {}, sleeping for {}",1+i/2,tosleep);
-                    try {
-                        Thread.sleep(tosleep);
-                        audioFile.commit();
-                        break;
-                    } catch (CannotWriteException | InterruptedException e) {
-                        if(i>=3) {
-                            LOGGER.info("Can not write file tag (attempt {}): {} {}",1+i/2,audioFile.getFile().getPath(),e);
-                            PLAYBACK.activate();
-                            return false;
-                        }
-                    }
-                }
-                PLAYBACK.activate();
-            } else {
-                LOGGER.debug("Can not write file tag: {}",audioFile.getFile().getPath(),ex);
-                return false;
-            }
+            // playback plays from a snapshot of the file, so it does not prevent the writing
+            LOGGER.debug("Can not write file tag: {}",audioFile.getFile().getPath(),ex);
+            writeFailed = true;
+            return false;
         }
 
+        // the file may change without its size and last modified time changing (time resolution)
+        TagCache.remove(file);
         return true;
     }
 
@@ -858,6 +866,7 @@ public class MetadataWriter extends MetaItem {
         tag = null;
         fields_changed = 0;
         hasCorruptedTag = false;
+        writeFailed = false;
         isWriting.set(false);
     }
 
@@ -874,9 +883,34 @@ public class MetadataWriter extends MetaItem {
             LOGGER.warn("Couldnt initialize MetadataWriter, writing to tag will be ignored", e);
         }
         fields_changed = 0;
+        writeFailed = false;
         isWriting.set(false);
     }
 
+    /**
+     * Returns metadata of the item as they are after the last {@link #write()}. They are built from
+     * the tag in memory, which is what has just been written, so the file does not need to be read
+     * again. Only if the tag could not be read or written, the file is read.
+     * <p/>
+     * Must be called under the lock of the file, or the file may change in the meantime.
+     */
+    private Metadata getWritten(Item i) {
+        if (audioFile==null || hasCorruptedTag || writeFailed) return MetadataReader.create(i);
+        Metadata m = new Metadata(audioFile);
+        TagCache.put(file, m);
+        return m;
+    }
+
+    /**
+     * Returns playcount in the tag, as read from the file by {@link #reset(audio.Item)}, including
+     * changes made since. 0 if the tag could not be read.
+     * <p/>
+     * Must be called under the lock of the file, i.e., from within a setter passed to a use method.
+     */
+    int getPlaycount() {
+        return audioFile==null || hasCorruptedTag ? 0 : new Metadata(audioFile).getPlaycount();
+    }
+
 /******************************************************************************/
 
     public static <I extends Item> void use(I item, Consumer<MetadataWriter> setter) {
@@ -888,15 +922,34 @@ public class MetadataWriter extends MetaItem {
     }
 
     public static <I extends Item> void use(Collection<I> items, Consumer<MetadataWriter> setter, Consumer<List<Metadata>> action) {
+        use(items, setter, null, action);
+    }
+
+    /**
+     * Writes the tags of the items in background and refreshes the items in the application.
+     * Files are written in parallel, see {@link #submitBatch(java.util.List, java.util.function.IntFunction, java.util.function.BiConsumer)}.
+     *
+     * @param setter change of the tag, applied to every item
+     * @param progress receives number of processed items and number of all items while writing,
+     * executes on fx thread, can be null
+     * @param action receives metadata of the written items after all are written, executes on fx
+     * thread, can be null
+     */
+    public static <I extends Item> void use(Collection<I> items, Consumer<MetadataWriter> setter, BiConsumer<Integer,Integer> progress, Consumer<List<Metadata>> action) {
+        useEach(new ArrayList<>(items), i -> setter, progress, action);
+    }
+
+    /**
+     * Same as {@link #use(java.util.Collection, java.util.function.Consumer, java.util.function.BiConsumer, java.util.function.Consumer)},
+     * but with different change of the tag for every item.
+     *
+     * @param setters returns change of the tag for the item at the index
+     */
+    public static <I extends Item> void useEach(List<I> items, IntFunction<Consumer<MetadataWriter>> setters, BiConsumer<Integer,Integer> progress, Consumer<List<Metadata>> action) {
+        // submitted on this thread, so batches are written in the order of the calls
+        Batch batch = submitBatch(items, setters, progress);
         Player.IO_THREAD.execute(()-> {
-            MetadataWriter w = new MetadataWriter();
-            for(I i : items)
-                if (i.isFileBased()) {
-                    w.reset(i);
-                    setter.accept(w);
-                    w.write();
-                }
-            List<Metadata> fresh = MetadataReader.readMetadata(items);
+            List<Metadata> fresh = batch.await();
             Player.refreshItemsWith(fresh);
             if(action!=null) runFX(() -> action.accept(fresh));
         });
@@ -904,35 +957,157 @@ public class MetadataWriter extends MetaItem {
 
     public static <I extends Item> void use(I item, Consumer<MetadataWriter> setter, Consumer<Boolean> action) {
         if(item.isFileBased()) {
-            Player.IO_THREAD.execute(()-> {
+            writerOf(item).execute(()-> {
                 MetadataWriter w = new MetadataWriter();
-                w.reset(item);
-                setter.accept(w);
-                boolean b = w.write();
-
-                Metadata m = MetadataReader.create(item);
+                boolean b;
+                Metadata m;
+                synchronized (lockOf(item)) {
+                    b = write(w, item, setter);
+                    m = w.getWritten(item);
+                }
                 if(!m.isEmpty()) Player.refreshItemWith(m);
                 if(action!=null) runFX(() -> action.accept(b));
             });
         }
     }
 
+    /**
+     * Writes the tags of the items and blocks until all are written.
+     * Equivalent to {@code submitBatch(items, setters, progress).await()}.
+     * <p/>
+     * Must not be called from the writer threads.
+     */
+    static List<Metadata> writeBatch(List<? extends Item> items, IntFunction<Consumer<MetadataWriter>> setters, BiConsumer<Integer,Integer> progress) {
+        return submitBatch(items, setters, progress).await();
+    }
+
+    /**
+     * Schedules writing the tags of the items and returns immediately. Files are distributed among
+     * a bounded number of writer threads. Every file is always written by the same thread and the
+     * writes are queued before this method returns, so changes of the same file are applied in the
+     * order of the calls of this method (and {@link #use(audio.Item, java.util.function.Consumer, java.util.function.Consumer)}),
+     * provided the calls do not race with each other.
+     *
+     * @param items items to write, items that are not file based are not written, but their
+     * metadata are still returned
+     * @param setters returns change of the tag for the item at the index
+     * @param progress receives number of processed items and number of all items while writing,
+     * executes on fx thread, can be null
+     * @return batch to wait for
+     */
+    static Batch submitBatch(List<? extends Item> items, IntFunction<Consumer<MetadataWriter>> setters, BiConsumer<Integer,Integer> progress) {
+        Batch batch = new Batch(items, progress);
+        for(int at=0; at<items.size(); at++) {
+            int index = at;
+            Item i = items.get(at);
+            if (!i.isFileBased()) continue; // read in await()
+            writerOf(i).execute(() -> {
+                try {
+                    MetadataWriter w = new MetadataWriter();
+                    synchronized (lockOf(i)) {
+                        write(w, i, setters.apply(index));
+                        batch.fresh[index] = w.getWritten(i);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("Writing tag of {} failed", i.getURI(), e);
+                } finally {
+                    batch.processed();
+                }
+            });
+        }
+        return batch;
+    }
+
+    /** Tag writes scheduled by {@link #submitBatch(java.util.List, java.util.function.IntFunction, java.util.function.BiConsumer)}. */
+    static class Batch {
+        private final long start = System.currentTimeMillis();
+        private final List<? extends Item> items;
+        private final BiConsumer<Integer,Integer> progress;
+        private final Metadata[] fresh;
+        private final CountDownLatch done;
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicLong lastReport = new AtomicLong();
+
+        private Batch(List<? extends Item> items, BiConsumer<Integer,Integer> progress) {
+            this.items = items;
+            this.progress = progress;
+            this.fresh = new Metadata[items.size()];
+            this.done = new CountDownLatch(items.size());
+        }
+
+        private void processed() {
+            int total = items.size();
+            int n = processed.incrementAndGet();
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (progress!=null && (n==total || (now-last>=PROGRESS_PERIOD && lastReport.compareAndSet(last, now))))
+                runFX(() -> progress.accept(n, total));
+            done.countDown();
+        }
+
+        /**
+         * Blocks until all items are written. Must not be called from the writer threads.
+         *
+         * @return metadata of the items, in the order of the items, built from the written tags
+         * without reading the files again, items for which this fails are ignored
+         */
+        List<Metadata> await() {
+            int total = items.size();
+            for(int index=0; index<total; index++) {
+                Item i = items.get(index);
+                if (i.isFileBased()) continue;
+                try {
+                    fresh[index] = MetadataReader.create(i);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Reading metadata of {} failed", i.getURI(), e);
+                } finally {
+                    processed();
+                }
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                LOGGER.error("Interrupted while writing tags of {} files", total, e);
+            }
+
+            long time = max(1, System.currentTimeMillis()-start);
+            LOGGER.info("Written tags of {} files in {}ms ({} files/s)", total, time, String.format("%.1f", total*1000d/time));
+            List<Metadata> ms = new ArrayList<>(total);
+            for(Metadata m : fresh)
+                if (m!=null && !m.isEmpty()) ms.add(m);
+            return ms;
+        }
+    }
+
     public static <I extends Item> void useNoRefresh(I item, Consumer<MetadataWriter> setter) {
         if(item.isFileBased()) {
             MetadataWriter w = new MetadataWriter();
-            w.reset(item);
+            write(w, item, setter);
+        }
+    }
+
+    // reads, modifies and writes the tag of the item atomically with respect to other writers
+    private static boolean write(MetadataWriter w, Item i, Consumer<MetadataWriter> setter) {
+        synchronized (lockOf(i)) {
+            w.reset(i);
             setter.accept(w);
-            w.write();
+            return w.write();
         }
     }
 
+    private static Object lockOf(Item i) {
+        return WRITE_LOCKS[(i.getFile().hashCode() & 0x7fffffff) % WRITE_LOCKS.length];
+    }
+
+    private static MonitoredExecutor writerOf(Item i) {
+        return WRITERS[(i.getFile().hashCode() & 0x7fffffff) % WRITERS.length];
+    }
+
     public static <I extends Item> void useNoRefresh(Collection<I> items, Consumer<MetadataWriter> setter) {
         MetadataWriter w = new MetadataWriter();
         for(I i : items) {
             if(i.isFileBased()) {
-                w.reset(i);
-                setter.accept(w);
-                w.write();
+                write(w, i, setter);
             }
         }
     }
@@ -0,0 +1,316 @@
+package audio.tagging;
+
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static main.App.APP;
+import static util.dev.Util.log;
+
+/**
+ * Persistent cache of {@link Metadata} read from audio files, which allows avoiding reading the tag
+ * of files that did not change since they were last read.
+ * <p/>
+ * Entries are keyed by file path, last modified time and size. The cache file is memory-mapped
+ * on {@link #start()} and only the index is read, the metadata are deserialized on cache hit, so
+ * every caller gets its own instance. New entries are appended to the file and read back from it,
+ * hence the index only holds locations of the entries, never the metadata. Superseded entries are removed when the file is compacted,
+ * which happens on {@link #stop()} if they outnumber the valid ones. The compacted file replaces the
+ * original one on next {@link #start()}, because mapped file can not be replaced on all platforms.
+ * <p/>
+ * Thread safe. Until started, the cache is empty and ignores new entries.
+ *
+ * @author Martin Polakovic
+ */
+public class TagCache {
+
+    private static final int MAGIC = 0x54414743;
+    private static final int VERSION = 1;
+    private static final byte ENTRY = 1;
+    private static final byte TOMBSTONE = 0;
+
+    private static final File CACHE_FILE = new File(APP.DIR_LIBRARY, "tag_cache.bin");
+    private static final File CACHE_FILE_COMPACTED = new File(APP.DIR_LIBRARY, "tag_cache.bin.new");
+
+    private static final Map<String,Entry> index = new ConcurrentHashMap<>();
+    private static volatile boolean running = false;
+    private static volatile ByteBuffer mapped;
+    private static FileChannel channel;
+    // reads entries appended since the file was mapped, not interruptible unlike the channel
+    private static volatile RandomAccessFile reader;
+    private static DataOutputStream appender;
+    private static long end;
+    private static int stale = 0;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    public static synchronized void start() {
+        if(running) return;
+        try {
+            if(CACHE_FILE_COMPACTED.exists())
+                Files.move(CACHE_FILE_COMPACTED.toPath(), CACHE_FILE.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+
+            CACHE_FILE.getParentFile().mkdirs();
+            channel = new RandomAccessFile(CACHE_FILE, "rw").getChannel();
+            boolean isNew = channel.size()==0;
+            mapped = isNew ? ByteBuffer.allocate(0) : channel.map(READ_ONLY, 0, channel.size());
+            if(isNew || readIndex()) {
+                channel.position(channel.size());
+                appender = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                if(isNew) {
+                    appender.writeInt(MAGIC);
+                    appender.writeInt(VERSION);
+                    appender.flush();
+                }
+                end = channel.size();
+                reader = new RandomAccessFile(CACHE_FILE, "r");
+            } else {
+                // the valid entries are kept, but the file will be rewritten on stop
+                log(TagCache.class).warn("Tag cache file {} is incompatible or corrupt", CACHE_FILE);
+                appender = null;
+            }
+            running = true;
+            log(TagCache.class).info("Tag cache loaded with {} entries", index.size());
+        } catch(IOException e) {
+            log(TagCache.class).error("Failed to load tag cache {}", CACHE_FILE, e);
+            index.clear();
+        }
+    }
+
+    public static synchronized void stop() {
+        if(!running) return;
+        running = false;
+        log(TagCache.class).info("Tag cache hits: {}, misses: {}", hits.get(), misses.get());
+        try {
+            if(appender!=null) appender.close();
+            if(appender==null || stale>index.size()) compact();
+            channel.close();
+            if(reader!=null) reader.close();
+        } catch(IOException e) {
+            log(TagCache.class).error("Failed to store tag cache {}", CACHE_FILE, e);
+        }
+        index.clear();
+        mapped = null;
+        reader = null;
+    }
+
+    /**
+     * Returns cached metadata of the file, if the file did not change since they were cached.
+     *
+     * @return cached metadata or null if none or the file changed
+     */
+    public static Metadata get(File file) {
+        if(!running) return null;
+        Entry e = index.get(file.getAbsolutePath());
+        Metadata m = e==null || !e.isFor(file) ? null : e.read();
+        (m==null ? misses : hits).incrementAndGet();
+        return m;
+    }
+
+    /**
+     * Caches the metadata read from the specified file. Empty metadata are ignored. The metadata
+     * are serialized immediately, later changes to the instance do not affect the cache.
+     */
+    public static void put(File file, Metadata m) {
+        if(!running || m.isEmpty()) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try {
+            m.write(new DataOutputStream(bytes));
+        } catch(IOException e) {
+            log(TagCache.class).warn("Failed to serialize metadata of {}", file, e);
+            return;
+        }
+        append(file.getAbsolutePath(), file.lastModified(), file.length(), bytes.toByteArray());
+    }
+
+    /** Removes cached metadata of the file. Use when the file changed in a way that may not be detected. */
+    public static void remove(File file) {
+        if(!running) return;
+        append(file.getAbsolutePath(), 0, 0, null);
+    }
+
+    /** @return number of requests served from the cache */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /** @return number of requests not served from the cache */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    // appends entry with the serialized metadata or tombstone if data is null
+    private static synchronized void append(String path, long modified, long size, byte[] data) {
+        if(!running) return;
+        if(appender==null) {
+            // the file is not appendable, keep the data in memory, but let them be reclaimed
+            Entry old = data==null ? index.remove(path) : index.put(path, new Entry(modified, size, data));
+            if(old!=null) stale++;
+            return;
+        }
+        try {
+            byte[] p = path.getBytes(UTF_8);
+            long headerLength = 1 + 4 + p.length + (data==null ? 0 : 8+8+4);
+            appender.writeByte(data==null ? TOMBSTONE : ENTRY);
+            appender.writeInt(p.length);
+            appender.write(p);
+            if(data!=null) {
+                appender.writeLong(modified);
+                appender.writeLong(size);
+                appender.writeInt(data.length);
+                appender.write(data);
+            } else {
+                stale++;
+            }
+            appender.flush();
+
+            Entry e = data==null ? null : new Entry(modified, size, end+headerLength, data.length);
+            end += headerLength + (data==null ? 0 : data.length);
+            Entry old = e==null ? index.remove(path) : index.put(path, e);
+            if(old!=null) stale++;
+        } catch(IOException ex) {
+            index.remove(path);
+            log(TagCache.class).error("Failed to write to tag cache {}", CACHE_FILE, ex);
+        }
+    }
+
+    // reads index from mapped file, returns false if the file is not valid
+    private static boolean readIndex() {
+        ByteBuffer b = mapped.duplicate();
+        if(b.remaining()<8 || b.getInt()!=MAGIC || b.getInt()!=VERSION) return false;
+        try {
+            while(b.hasRemaining()) {
+                byte type = b.get();
+                int pathLength = b.getInt();
+                if(pathLength<0 || pathLength>b.remaining()) return false;
+                byte[] p = new byte[pathLength];
+                b.get(p);
+                String path = new String(p, UTF_8);
+                Entry e = null;
+                if(type==ENTRY) {
+                    long modified = b.getLong();
+                    long size = b.getLong();
+                    int length = b.getInt();
+                    if(length<0 || length>b.remaining()) return false;
+                    e = new Entry(modified, size, b.position(), length);
+                    b.position(b.position()+length);
+                } else {
+                    stale++;
+                }
+                Entry old = e==null ? index.remove(path) : index.put(path, e);
+                if(old!=null) stale++;
+            }
+            return true;
+        } catch(RuntimeException e) {
+            // truncated entry at the end, e.g. application crashed during write
+            return false;
+        }
+    }
+
+    private static void compact() throws IOException {
+        log(TagCache.class).info("Compacting tag cache, {} valid and {} superseded entries", index.size(), stale);
+        File tmp = new File(APP.DIR_LIBRARY, "tag_cache.bin.tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for(Map.Entry<String,Entry> pe : index.entrySet()) {
+                Entry e = pe.getValue();
+                byte[] data = e.data();
+                if(data==null) continue;
+                out.writeByte(ENTRY);
+                writeS(out, pe.getKey());
+                out.writeLong(e.modified);
+                out.writeLong(e.size);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        }
+        Files.move(tmp.toPath(), CACHE_FILE_COMPACTED.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private static void writeS(DataOutput out, String s) throws IOException {
+        byte[] bs = s.getBytes(UTF_8);
+        out.writeInt(bs.length);
+        out.write(bs);
+    }
+
+    private static class Entry {
+        final long modified;
+        final long size;
+        // location of serialized metadata in the file
+        final long offset;
+        final int length;
+        // serialized metadata not in the file, may be reclaimed
+        final SoftReference<byte[]> bytes;
+
+        Entry(long modified, long size, long offset, int length) {
+            this.modified = modified;
+            this.size = size;
+            this.offset = offset;
+            this.length = length;
+            this.bytes = null;
+        }
+
+        Entry(long modified, long size, byte[] bytes) {
+            this.modified = modified;
+            this.size = size;
+            this.offset = -1;
+            this.length = bytes.length;
+            this.bytes = new SoftReference<>(bytes);
+        }
+
+        boolean isFor(File f) {
+            return modified==f.lastModified() && size==f.length();
+        }
+
+        /** @return serialized metadata or null if not available */
+        byte[] data() {
+            if(bytes!=null) return bytes.get();
+            ByteBuffer b = mapped;
+            if(b==null) return null;
+            byte[] data = new byte[length];
+            if(offset+length<=b.capacity()) {
+                b = b.duplicate();
+                b.position((int) offset);
+                b.get(data);
+            } else {
+                // appended since the file was mapped
+                RandomAccessFile r = reader;
+                if(r==null) return null;
+                try {
+                    synchronized(r) {
+                        r.seek(offset);
+                        r.readFully(data);
+                    }
+                } catch(IOException e) {
+                    log(TagCache.class).warn("Failed to read tag cache entry", e);
+                    return null;
+                }
+            }
+            return data;
+        }
+
+        /** @return new deserialized metadata or null if not available */
+        Metadata read() {
+            byte[] data = data();
+            if(data==null) return null;
+            try {
+                return Metadata.read(new DataInputStream(new ByteArrayInputStream(data)));
+            } catch(IOException e) {
+                log(TagCache.class).warn("Failed to read tag cache entry", e);
+                return null;
+            }
+        }
+    }
+}
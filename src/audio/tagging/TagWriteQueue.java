@@ -0,0 +1,176 @@
+package audio.tagging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import audio.Item;
+import audio.Player;
+import services.database.Db;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static util.async.Async.threadFactory;
+import static util.dev.Util.log;
+
+/**
+ * Write-behind queue for frequent, non urgent tag changes, like playback statistics.
+ * <p/>
+ * Changes are not written immediately, instead they are collected per file, so multiple changes
+ * of the same file are written with a single commit. The queue is flushed when no change comes
+ * for {@link #IDLE_DELAY} ms, when changes of {@link #MAX_PENDING} files are pending or on
+ * {@link #stop()}. Written items are refreshed all at once, i.e., within single database
+ * transaction. Flushes are written in the order they happen, see
+ * {@link MetadataWriter#submitBatch(java.util.List, java.util.function.IntFunction, java.util.function.BiConsumer)}.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+public class TagWriteQueue {
+
+    /** Time in ms since the last change after which the queue is flushed. */
+    public static final long IDLE_DELAY = 5000;
+    /** Number of files with pending changes at which the queue is flushed. */
+    public static final int MAX_PENDING = 50;
+    /** Maximal time in ms {@link #stop()} waits for flushes in progress to complete. */
+    public static final long STOP_TIMEOUT = 10000;
+
+    private static final Map<File,Pending> pending = new LinkedHashMap<>();
+    private static final List<Future<?>> flushes = new ArrayList<>();      // in progress
+    private static final ScheduledExecutorService timer = newSingleThreadScheduledExecutor(threadFactory("tag-write-queue", true));
+    private static ScheduledFuture<?> idleFlush;
+
+    /**
+     * Schedules change of the tag of the item. Changes are applied in the order they were enqueued.
+     * Does nothing if the item is not file based.
+     */
+    public static void enqueue(Item item, Consumer<MetadataWriter> change) {
+        if(!item.isFileBased()) return;
+        synchronized(TagWriteQueue.class) {
+            pending.computeIfAbsent(item.getFile(), f -> new Pending(item)).changes.add(change);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Schedules incrementing playcount of the item. Unlike enqueueing setting playcount, multiple
+     * increments of the same item before it is written accumulate. The increment is applied to the
+     * playcount in the file at the time it is written.
+     *
+     * @param m item
+     * @param by increment
+     */
+    public static void enqueuePlaycountIncrement(Metadata m, int by) {
+        if(!m.isFileBased() || by<=0) return;
+        synchronized(TagWriteQueue.class) {
+            pending.computeIfAbsent(m.getFile(), f -> new Pending(m)).playcountIncrement += by;
+            scheduleFlush();
+        }
+    }
+
+    /** Writes all pending changes in background. */
+    public static void flush() {
+        // submitted under lock, so flushes are written in order
+        synchronized(TagWriteQueue.class) {
+            List<Pending> ps = drain();
+            if(ps.isEmpty()) return;
+            long start = System.currentTimeMillis();
+            MetadataWriter.Batch batch = submit(ps);
+            flushes.removeIf(Future::isDone);
+            flushes.add(Player.IO_THREAD.submit(() -> {
+                Player.refreshItemsWith(batch.await());
+                log(TagWriteQueue.class).debug("Written pending changes of {} files in {}ms", ps.size(), System.currentTimeMillis()-start);
+            }));
+        }
+    }
+
+    /**
+     * Writes all pending changes and blocks until done. Use when application is closing, before
+     * the database stops. Items are updated in database, but not refreshed in the application.
+     * <p/>
+     * Flushes in progress are waited for at most {@link #STOP_TIMEOUT} ms, including storing their
+     * items in the database.
+     */
+    public static void stop() {
+        List<Pending> ps;
+        MetadataWriter.Batch batch;
+        List<Future<?>> fs;
+        synchronized(TagWriteQueue.class) {
+            ps = drain();
+            batch = ps.isEmpty() ? null : submit(ps);
+            fs = new ArrayList<>(flushes);
+            flushes.clear();
+        }
+
+        long deadline = System.currentTimeMillis()+STOP_TIMEOUT;
+        try {
+            for(Future<?> f : fs) {
+                try {
+                    f.get(max(0, deadline-System.currentTimeMillis()), MILLISECONDS);
+                } catch(ExecutionException e) {
+                    log(TagWriteQueue.class).error("Writing pending changes failed", e.getCause());
+                }
+            }
+            // flushed items are stored in database by a refresh, which executes on the refresh thread
+            if(!fs.isEmpty()) Player.REFRESH_THREAD.submit(() -> {}).get(max(0, deadline-System.currentTimeMillis()), MILLISECONDS);
+        } catch(TimeoutException e) {
+            log(TagWriteQueue.class).warn("Pending changes not written within {}ms, some may not be stored in database", STOP_TIMEOUT);
+        } catch(ExecutionException e) {
+            log(TagWriteQueue.class).error("Waiting for refresh failed", e.getCause());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log(TagWriteQueue.class).warn("Interrupted while waiting for pending changes to be written");
+        }
+
+        if(batch!=null) {
+            Db.updatePer(batch.await());
+            log(TagWriteQueue.class).debug("Written pending changes of {} files", ps.size());
+        }
+    }
+
+    private static synchronized List<Pending> drain() {
+        if(idleFlush!=null) idleFlush.cancel(false);
+        idleFlush = null;
+        List<Pending> ps = new ArrayList<>(pending.values());
+        pending.clear();
+        return ps;
+    }
+
+    // must be called under lock
+    private static void scheduleFlush() {
+        if(idleFlush!=null) idleFlush.cancel(false);
+        idleFlush = pending.size()>=MAX_PENDING
+            ? timer.schedule(TagWriteQueue::flush, 0, MILLISECONDS)
+            : timer.schedule(TagWriteQueue::flush, IDLE_DELAY, MILLISECONDS);
+    }
+
+    private static MetadataWriter.Batch submit(List<Pending> ps) {
+        List<Item> items = new ArrayList<>(ps.size());
+        for(Pending p : ps) items.add(p.item);
+        return MetadataWriter.submitBatch(items, i -> w -> {
+            Pending p = ps.get(i);
+            p.changes.forEach(change -> change.accept(w));
+            if(p.playcountIncrement>0) w.setPlaycount(w.getPlaycount()+p.playcountIncrement);
+        }, null);
+    }
+
+    private static class Pending {
+        final Item item;
+        final List<Consumer<MetadataWriter>> changes = new ArrayList<>();
+        int playcountIncrement = 0;
+
+        Pending(Item item) {
+            this.item = item;
+        }
+    }
+}
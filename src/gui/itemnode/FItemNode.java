@@ -81,6 +81,16 @@ public class FItemNode<IN,OUT> extends ValueNode<Ƒ1<IN,OUT>> {
         changeValue(f.toƑ1(configs.stream().map(ConfigField::getValue).toArray()));
     }
 
+    /** @return selected function or null if none */
+    public PƑ<IN,OUT> getFunction() {
+        return fCB.getValue();
+    }
+
+    /** @return current values of the parameters of the selected function */
+    public Object[] getParameterValues() {
+        return configs.stream().map(ConfigField::getValue).toArray();
+    }
+
     public Class getTypeIn() {
         PƑ<IN,OUT> f = fCB.getValue();
         return f==null ? Void.class : f.in;
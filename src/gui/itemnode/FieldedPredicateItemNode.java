@@ -85,6 +85,7 @@ public class FieldedPredicateItemNode<V,F extends ObjectField<V>> extends ValueN
     private final Callback<Class,PƑ<Object,Boolean>> ppPool;
     private final Callback<Class,PrefList<PƑ<Object,Boolean>>> pPool;
     private Supplier<Tuple3<String,Class,F>> prefTypeSupplier;
+    private PredicateIndex<V,F> predicateIndex;
     private boolean inconsistentState = false;
 
     public FieldedPredicateItemNode(Callback<Class,PrefList<PƑ<Object,Boolean>>> predicatePool, Callback<Class,PƑ<Object,Boolean>> prefPredicatePool) {
@@ -109,6 +110,14 @@ public class FieldedPredicateItemNode<V,F extends ObjectField<V>> extends ValueN
         prefTypeSupplier = supplier;
     }
 
+    /**
+     * Sets index that may provide faster equivalents of the generated predicates. Takes effect
+     * next time the predicate is generated.
+     */
+    public void setPredicateIndex(PredicateIndex<V,F> index) {
+        predicateIndex = index;
+    }
+
     /**
      * Sets chosable data specifying what filter can be generated in form of list
      * of tri-tuples : displayed name, class, passed object.
@@ -161,7 +170,9 @@ public class FieldedPredicateItemNode<V,F extends ObjectField<V>> extends ValueN
         Function<Object,Boolean> p = config.getValue();
         F o = typeCB.getValue()==null ? null : typeCB.getValue()._3;
         if(p!=null && o!=null) {
-            Predicate<V> pr = predicate(o, p);
+            Predicate<V> pr = predicateIndex==null || config.getFunction()==null ? null
+                : predicateIndex.predicate(o, config.getFunction().name, config.getParameterValues(), p);
+            if(pr==null) pr = predicate(o, p);
             if(negB.selected.getValue()) pr = pr.negate();
             changeValue(pr);
         }
@@ -172,4 +183,19 @@ public class FieldedPredicateItemNode<V,F extends ObjectField<V>> extends ValueN
         return root;
     }
 
+    /**
+     * Provider of predicates equivalent to the ones generated by this node, but faster, e.g.,
+     * using an index of the filtered elements.
+     */
+    public interface PredicateIndex<V,F> {
+        /**
+         * @param field filtered field
+         * @param function name of the filter function
+         * @param parameters parameters of the filter function
+         * @param filter filter function, testing value of the field
+         * @return predicate equivalent to the filter applied on the field or null if not supported
+         */
+        Predicate<V> predicate(F field, String function, Object[] parameters, Function<Object,Boolean> filter);
+    }
+
 }
\ No newline at end of file
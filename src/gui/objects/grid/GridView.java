@@ -49,6 +49,7 @@ import javafx.scene.input.ScrollEvent;
 import javafx.util.Callback;
 
 import util.access.V;
+import util.collections.list.FilterSorter;
 import util.functional.Functors.Ƒ1;
 
 import static gui.objects.grid.GridView.SelectionOn.KEY_PRESSED;
@@ -90,6 +91,7 @@ public class GridView<T,F> extends Control {
     final ObservableList<T> itemsAll;
     final FilteredList<T> itemsFiltered;
     final SortedList<T> itemsSorted;
+    private final FilterSorter<T> itemsFilterSorter;
     final Ƒ1<T,F> filterByMapper;
 
     /*
@@ -100,9 +102,12 @@ public class GridView<T,F> extends Control {
      * react on the change, its effect will merely be overridden and when
      * search box predicate changes, it will in turn override effect of a
      * custom predicate.
+     * <p/>
+     * Large lists are filtered in background, see {@link FilterSorter}.
      */
-    public final ObjectProperty<Predicate<? super T>> itemsPredicate;
-    public final ObjectProperty<Comparator<? super T>> itemsComparator;
+    public final ObjectProperty<Predicate<? super T>> itemsPredicate = new SimpleObjectProperty<>();
+    /** Comparator that sorts the items. Null leaves the items in original order. */
+    public final ObjectProperty<Comparator<? super T>> itemsComparator = new SimpleObjectProperty<>();
 
     public final V<T> selectedItem = new V<>(null);
     public final V<T> selectedRow = new V<>(null);
@@ -138,8 +143,9 @@ public class GridView<T,F> extends Control {
         itemsFiltered = new FilteredList<>(itemsAll);
         itemsSorted = new SortedList<>(itemsFiltered);
 
-        itemsPredicate = itemsFiltered.predicateProperty();
-        itemsComparator = itemsSorted.comparatorProperty();
+        itemsFilterSorter = new FilterSorter<>(itemsAll, itemsFiltered, itemsSorted);
+        itemsPredicate.addListener((o,ov,nv) -> itemsFilterSorter.setPredicate(nv));
+        itemsComparator.addListener((o,ov,nv) -> itemsFilterSorter.setComparator(nv));
 
         getStyleClass().add(DEFAULT_STYLE_CLASS);
 
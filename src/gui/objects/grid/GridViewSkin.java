@@ -349,7 +349,7 @@ public class GridViewSkin<T,F> implements Skin<GridView> {
             setPrefTypeSupplier(() -> tuple(prefField.toString(), prefField.getType(), prefField));
 //            setPrefTypeSupplier(() -> tuple(prefFilterType.toString(), prefFilterType.getType(), prefFilterType));
 //            onItemChange = getSkinnable().itemsFiltered::setPredicate;
-            onItemChange = predicate -> filterList.setPredicate(item -> predicate.test(getSkinnable().filterByMapper.apply(item)));
+            onItemChange = predicate -> getSkinnable().itemsPredicate.set(item -> predicate.test(getSkinnable().filterByMapper.apply(item)));
             setData(attributes.get());
 
 
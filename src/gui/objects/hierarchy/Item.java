@@ -9,7 +9,6 @@ import java.util.stream.Stream;
 
 import javafx.scene.image.Image;
 
-import gui.objects.image.Thumbnail;
 import util.Hierarchical;
 import util.graphics.IconExtractor;
 import unused.TriConsumer;
@@ -166,8 +165,7 @@ public abstract class Item implements Hierarchical<Item> {
 	        } else {
 	            boolean was_loaded = cover_loadedThumb;
 	            if(!cover_loadedThumb) {
-	                Image imgc = Thumbnail.getCached(file, width, height);
-	                cover = imgc!=null ? imgc : loadImageThumb(file, width, height);
+	                cover = loadImageThumb(file, width, height);
 	                cover_loadedThumb = true;
 	            }
 	            action.accept(was_loaded,file,cover);
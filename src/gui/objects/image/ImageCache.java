@@ -0,0 +1,282 @@
+package gui.objects.image;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.image.Image;
+
+import util.conf.IsConfig;
+import util.conf.IsConfigurable;
+
+import static util.dev.Util.log;
+
+/**
+ * Shared cache of loaded images with memory budget.
+ * <p/>
+ * Images are keyed by url and size bucket (size rounded up to power of two), so multiple sizes of
+ * the same image can be cached and a request is served by the smallest cached image at least as big
+ * as requested. Images in their original size, i.e., loaded in full size or loaded smaller than
+ * requested because the original is smaller, serve requests of any size. Size of an image is
+ * estimated as width*height*4 bytes. When the budget is exceeded,
+ * least recently used images are evicted into soft reference overflow, from where they can still be
+ * retrieved until garbage collected.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+@IsConfigurable("Images")
+public class ImageCache {
+
+    @IsConfig(name="Image cache size", info = "Memory in MB used to keep loaded images, so they do not "
+       + "need to be loaded again. Images over the limit are kept only until memory is needed. "
+       + "Use 0 to disable caching.", min = 0, max = 4096)
+    public static int cacheSizeMB = 128;
+
+    /** Smallest size bucket. Thumbnails smaller than this share one bucket. */
+    private static final int BUCKET_MIN = 64;
+    /** Largest size bucket. Bigger images share bucket with images loaded in full size. */
+    private static final int BUCKET_MAX = 16384;
+    /** Bucket of images in their original size. */
+    private static final int BUCKET_FULL = Integer.MAX_VALUE;
+
+    private static final LinkedHashMap<Key,Image> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private static final Map<Key,SoftReference<Image>> overflow = new HashMap<>();
+    private static long size = 0;
+    private static long hits = 0, hitsOverflow = 0, misses = 0, evictions = 0;
+
+    /**
+     * Returns cached image of the file at least as big as requested. See {@link #get(String, double, double)}.
+     */
+    public static Image get(File file, double width, double height) {
+        return file==null ? null : get(file.toURI().toString(), width, height);
+    }
+
+    /**
+     * Returns cached image at least as big as requested, i.e., its width or height is at least as
+     * big as requested, since images are loaded with preserved aspect ratio, or the image in its
+     * original size, which is the biggest there is.
+     *
+     * @param url url of the image
+     * @param width requested width, 0 or less for full size
+     * @param height requested height, 0 or less for full size
+     * @return cached image or null if none
+     */
+    public static synchronized Image get(String url, double width, double height) {
+        if(url==null) return null;
+        boolean full = width<=0 && height<=0;
+        for(int b = full ? BUCKET_FULL : bucketOf(Math.max(width, height)); ; b = nextBucket(b)) {
+            Key k = new Key(url, b);
+            Image i = cache.get(k);
+            boolean isOverflow = false;
+            if(i==null) {
+                SoftReference<Image> r = overflow.get(k);
+                i = r==null ? null : r.get();
+                isOverflow = i!=null;
+            }
+            if(i!=null && (full || b==BUCKET_FULL || i.getWidth()>=width || i.getHeight()>=height)) {
+                if(isOverflow) {
+                    hitsOverflow++;
+                    putImpl(k, i);
+                } else {
+                    hits++;
+                }
+                return i;
+            }
+            if(b==BUCKET_FULL) break;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches the image of the file. See {@link #put(String, javafx.scene.image.Image, double, double)}.
+     */
+    public static void put(File file, Image image, double width, double height) {
+        if(file!=null) put(file.toURI().toString(), image, width, height);
+    }
+
+    /**
+     * Caches the image of the file. See {@link #put(String, javafx.scene.image.Image)}.
+     */
+    public static void put(File file, Image image) {
+        if(file!=null) put(file.toURI().toString(), image);
+    }
+
+    /**
+     * Caches the image, loaded with the size it was requested in from the image (see
+     * {@link Image#getRequestedWidth()}). Use {@link #put(String, javafx.scene.image.Image, double, double)}
+     * if the request was clipped to the original size of the image before loading it.
+     */
+    public static void put(String url, Image image) {
+        if(image==null) return;
+        // images loaded from url in full size have no requested size
+        boolean full = image.getUrl()!=null && image.getRequestedWidth()<=0 && image.getRequestedHeight()<=0;
+        put(url, image, full, image.getRequestedWidth(), image.getRequestedHeight());
+    }
+
+    /**
+     * Caches the image. Images that are still loading are cached once they load. Null or
+     * erroneous images are ignored.
+     *
+     * @param url url of the image, must be the same url used to retrieve the image
+     * @param image image
+     * @param width width the image was requested in when loaded, 0 or less for full size
+     * @param height height the image was requested in when loaded, 0 or less for full size
+     */
+    public static void put(String url, Image image, double width, double height) {
+        put(url, image, width<=0 && height<=0, width, height);
+    }
+
+    private static void put(String url, Image image, boolean full, double width, double height) {
+        if(url==null || image==null || image.isError() || cacheSizeMB<=0) return;
+        if(image.getProgress()<1) {
+            image.progressProperty().addListener(new ChangeListener<Number>() {
+                @Override
+                public void changed(ObservableValue<? extends Number> o, Number ov, Number nv) {
+                    if(nv.doubleValue()>=1) {
+                        image.progressProperty().removeListener(this);
+                        put(url, image, full, width, height);
+                    }
+                }
+            });
+            return;
+        }
+        // image smaller than requested was not scaled down, it is in original size and serves
+        // requests of any size, otherwise it would never be at least as big as requested
+        boolean original = full || isSmallerThan(image, width, height);
+        int bucket = original ? BUCKET_FULL : bucketOf(Math.max(image.getWidth(), image.getHeight()));
+        synchronized(ImageCache.class) {
+            putImpl(new Key(url, bucket), image);
+        }
+    }
+
+    /** Removes all images of the url, e.g., when the image file changed. */
+    public static synchronized void remove(String url) {
+        for(Iterator<Map.Entry<Key,Image>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key,Image> e = it.next();
+            if(e.getKey().url.equals(url)) {
+                size -= sizeOf(e.getValue());
+                it.remove();
+            }
+        }
+        overflow.keySet().removeIf(k -> k.url.equals(url));
+    }
+
+    /** Removes all images. */
+    public static synchronized void clear() {
+        cache.clear();
+        overflow.clear();
+        size = 0;
+    }
+
+    /** @return estimated memory used by strongly cached images in bytes */
+    public static synchronized long getSize() {
+        return size;
+    }
+
+    /** @return number of requests served from cache, including from the overflow */
+    public static synchronized long getHits() {
+        return hits + hitsOverflow;
+    }
+
+    /** @return number of requests served from the soft reference overflow */
+    public static synchronized long getHitsOverflow() {
+        return hitsOverflow;
+    }
+
+    /** @return number of requests not served from cache */
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /** @return number of images evicted into overflow because of memory budget */
+    public static synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** @return human readable statistics */
+    public static synchronized String getStats() {
+        return String.format("images: %d, size: %dMB, hits: %d (%d from overflow), misses: %d, evictions: %d",
+                cache.size(), size/1024/1024, hits+hitsOverflow, hitsOverflow, misses, evictions);
+    }
+
+    private static void putImpl(Key k, Image i) {
+        long s = sizeOf(i);
+        long budget = cacheSizeMB*1024L*1024L;
+        if(s>budget) return;
+
+        Image old = cache.put(k, i);
+        if(old!=null) size -= sizeOf(old);
+        size += s;
+        overflow.remove(k);
+
+        // evict least recently used
+        for(Iterator<Map.Entry<Key,Image>> it = cache.entrySet().iterator(); size>budget && it.hasNext(); ) {
+            Map.Entry<Key,Image> e = it.next();
+            if(e.getKey().equals(k)) continue;
+            it.remove();
+            size -= sizeOf(e.getValue());
+            overflow.put(e.getKey(), new SoftReference<>(e.getValue()));
+            evictions++;
+        }
+        if(evictions>0 && evictions%100==0) log(ImageCache.class).debug("Image cache {}", getStats());
+
+        // forget collected overflow entries
+        if(overflow.size()>4*cache.size()+64)
+            overflow.values().removeIf(r -> r.get()==null);
+    }
+
+    // images are loaded with preserved aspect ratio, so a scaled down image reaches the requested
+    // width or height
+    private static boolean isSmallerThan(Image i, double width, double height) {
+        return (width>0 || height>0)
+            && (width<=0 || i.getWidth()<Math.floor(width))
+            && (height<=0 || i.getHeight()<Math.floor(height));
+    }
+
+    private static long sizeOf(Image i) {
+        return (long) i.getWidth()*(long) i.getHeight()*4;
+    }
+
+    private static int bucketOf(double size) {
+        int s = (int) Math.ceil(size);
+        if(s<=BUCKET_MIN) return BUCKET_MIN;
+        if(s>BUCKET_MAX) return BUCKET_FULL;
+        return Integer.highestOneBit(s-1)<<1;
+    }
+
+    private static int nextBucket(int bucket) {
+        return bucket>=BUCKET_MAX ? BUCKET_FULL : bucket<<1;
+    }
+
+    private static final class Key {
+        final String url;
+        final int bucket;
+
+        Key(String url, int bucket) {
+            this.url = url;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this==o) return true;
+            if(!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return bucket==k.bucket && url.equals(k.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, bucket);
+        }
+    }
+}
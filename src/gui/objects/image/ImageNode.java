@@ -23,13 +23,6 @@ import util.conf.IsConfigurable;
 @IsConfigurable("Images")
 public abstract class ImageNode {
 
-    @IsConfig(name="Image caching", info = "Will keep every loaded image in "
-       + "memory. Reduces image loading (except for the first time) but "
-       + "increases memory. For large images (around 5000px) the effect "
-       + "is very noticable. Not worth it if you dont browse large images "
-       + "or want to minimize RAM usage.")
-    static boolean cache_images = false;
-
     /**
      * To spare memory, images are only loaded up to requested size.
      * This defines how many times should images load bigger than requested.
@@ -10,8 +10,6 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javafx.animation.Timeline;
 import javafx.beans.property.*;
@@ -269,8 +267,7 @@ public class Thumbnail extends ImageNode {
     public void loadImage(File img) {
         imagefile = img;
         Point2D size = calculateImageLoadSize(root);
-        Image c = getCached(img, size.getX(), size.getY());
-        Image i = c!=null ? c : util.Util.loadImage(img, size.getX(), size.getY());
+        Image i = util.Util.loadImage(img, size.getX(), size.getY());
         setImgA(i);
     }
 
@@ -286,21 +283,15 @@ public class Thumbnail extends ImageNode {
     }
 
     private long loadId = 0;    // prevents wasteful set image operations
-    private static Map<String,Image> IMG_CACHE = new ConcurrentHashMap<>();   // caches images
 
+    /** Equivalent to {@link ImageCache#get(String, double, double)}. */
     public static Image getCached(String url, double w, double h) {
-        Image ci = url==null ? null : IMG_CACHE.get(url);
-        return ci!=null && (ci.getWidth()>=w || ci.getHeight()>=h) ? ci : null;
+        return ImageCache.get(url, w, h);
     }
 
+    /** Equivalent to {@link ImageCache#get(java.io.File, double, double)}. */
     public static Image getCached(File file, double w, double h) {
-        String url;
-        try {
-            url = file.toURI().toURL().toString();
-        } catch (Exception e) {
-            url = null;
-        }
-        return getCached(url, w, h);
+        return ImageCache.get(file, w, h);
     }
 
     // set asynchronously
@@ -324,11 +315,7 @@ public class Thumbnail extends ImageNode {
     // set synchronously
     private void setImg(Image i, long id) {
         // cache
-        if(i!=null && cache_images) {
-            Image ci = IMG_CACHE.get(i.getUrl());
-            if(ci==null || ci.getHeight()*ci.getWidth()<i.getHeight()*i.getWidth())
-                IMG_CACHE.put(i.getUrl(), i);
-        }
+        if(i!=null) ImageCache.put(i.getUrl(), i);
 
         // ignore outdated loadings
         if(id!=loadId) return;
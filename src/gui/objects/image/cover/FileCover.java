@@ -11,7 +11,6 @@ import java.util.Objects;
 
 import javafx.scene.image.Image;
 
-import gui.objects.image.Thumbnail;
 import jdk.nashorn.internal.ir.annotations.Immutable;
 import util.Util;
 
@@ -45,8 +44,6 @@ public class FileCover implements Cover {
     /** {@inheritDoc} */
     @Override
     public Image getImage(double width, double height) {
-        Image cached = Thumbnail.getCached(file, width, width);
-        if(cached!=null) return cached;
         return file==null ? null : Util.loadImage(file, width, height);
     }
 
@@ -7,13 +7,18 @@ package gui.objects.table;
 
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
@@ -34,12 +39,14 @@ import de.jensd.fx.glyphs.fontawesome.FontAwesomeIcon;
 import gui.infonode.InfoTable;
 import gui.itemnode.FieldedPredicateChainItemNode;
 import gui.itemnode.FieldedPredicateItemNode;
+import gui.itemnode.FieldedPredicateItemNode.PredicateIndex;
 import gui.objects.icon.Icon;
 import util.Util;
 import util.access.V;
 import util.access.fieldvalue.ObjectField;
 import util.async.executor.FxTimer;
 import util.collections.Tuple3;
+import util.collections.list.FilterSorter;
 import util.conf.IsConfig;
 import util.conf.IsConfigurable;
 import util.dev.TODO;
@@ -85,6 +92,7 @@ public class FilteredTable<T, F extends ObjectField<T>> extends FieldedTable<T,F
     private final ObservableList<T> allitems;
     private final FilteredList<T> filtereditems;
     private final SortedList<T> sortedItems;
+    private final FilterSorter<T> filterSorter;
     final VBox root = new VBox(this);
 
     public FilteredTable(F main_field) {
@@ -105,10 +113,14 @@ public class FilteredTable<T, F extends ObjectField<T>> extends FieldedTable<T,F
         allitems = backing_list;
         filtereditems = new FilteredList<>(allitems);
         sortedItems = new SortedList<>(filtereditems);
-        itemsPredicate = filtereditems.predicateProperty();
+        filterSorter = new FilterSorter<>(allitems, filtereditems, sortedItems);
+        itemsPredicate.addListener((o,ov,nv) -> filterSorter.setPredicate(nv));
 
         setItems(sortedItems);
-        sortedItems.comparatorProperty().bind(comparatorProperty());
+        // the sorted list is sorted by the filter sorter, possibly in background, so its
+        // comparator differs from the table's and the default sort policy would reject it
+        comparatorProperty().addListener((o,ov,nv) -> filterSorter.setComparator(nv));
+        setSortPolicy(table -> true);
         VBox.setVgrow(this, ALWAYS);
 
         items_info.bind(this);
@@ -220,6 +232,33 @@ public class FilteredTable<T, F extends ObjectField<T>> extends FieldedTable<T,F
         allitems.setAll(items);
     }
 
+    /**
+     * Changes items of the table without replacing them. Unlike {@link #setItemsRaw(java.util.Collection)},
+     * only the affected items will be filtered and sorted. If any filter is in effect, it will be applied.
+     * <p/>
+     * Items are identified using {@link Object#equals(java.lang.Object)}.
+     *
+     * @param added items to add
+     * @param removed items to remove
+     * @param updated items to replace equal items with, items not in the table are ignored
+     */
+    public void updateItemsRaw(Collection<? extends T> added, Collection<? extends T> removed, Collection<? extends T> updated) {
+        if(!removed.isEmpty()) {
+            allitems.removeAll(removed instanceof Set ? removed : new HashSet<>(removed));
+        }
+        if(!updated.isEmpty()) {
+            Map<T,T> us = new HashMap<>();
+            updated.forEach(t -> us.put(t,t));
+            for(int i=0; i<allitems.size(); i++) {
+                T u = us.get(allitems.get(i));
+                if(u!=null) allitems.set(i,u);
+            }
+        }
+        if(!added.isEmpty()) {
+            allitems.addAll(added);
+        }
+    }
+
     /**
      * Maps the index of this list's filtered element to an index in the direct source list.
      *
@@ -242,8 +281,10 @@ public class FilteredTable<T, F extends ObjectField<T>> extends FieldedTable<T,F
      * react on the change, its effect will merely be overriden and when
      * search box predicate changes, it will in turn override effect of a
      * custom predicate.
+     * <p/>
+     * Large lists are filtered in background, see {@link FilterSorter}.
      */
-    public final ObjectProperty<Predicate<? super T>> itemsPredicate;
+    public final ObjectProperty<Predicate<? super T>> itemsPredicate = new SimpleObjectProperty<>();
     /**
      * Visibility of the filter pane.
      * Filter is displayed in the top of the table.
@@ -337,11 +378,12 @@ public class FilteredTable<T, F extends ObjectField<T>> extends FieldedTable<T,F
                     in -> Functors.pool.getPrefIO(in, Boolean.class)
                 );
                 g.setPrefTypeSupplier(() -> tuple(prefFilterType.toString(), prefFilterType.getType(), prefFilterType));
+                g.setPredicateIndex((f,fn,ps,p) -> filterIndex==null ? null : filterIndex.predicate(f,fn,ps,p));
                 g.setData(d(prefFilterType));
                 return g;
             });
             setPrefTypeSupplier(() -> tuple(prefFilterType.toString(), prefFilterType.getType(), prefFilterType));
-            onItemChange = filtereditems::setPredicate;
+            onItemChange = itemsPredicate::set;
             if(prefFilterType instanceof Enum) {
                 setData(d(prefFilterType));
             } else
@@ -350,6 +392,16 @@ public class FilteredTable<T, F extends ObjectField<T>> extends FieldedTable<T,F
 
     }
 
+    private PredicateIndex<T,F> filterIndex;
+
+    /**
+     * Sets index of the items, that may provide faster alternatives of the filter predicates
+     * generated by the filter pane. It must produce the same results.
+     */
+    public void setFilterIndex(PredicateIndex<T,F> index) {
+        filterIndex = index;
+    }
+
     private static <F extends ObjectField> List<Tuple3<String,Class,F>> d(F prefFilterType) {
         F[] es = util.type.Util.getEnumConstants(prefFilterType.getClass());
         return stream(es)
@@ -16,6 +16,7 @@ import layout.Component;
 import layout.container.Container;
 import util.access.V;
 
+import static main.App.APP;
 import static util.reactive.Util.maintain;
 
 /**
@@ -102,7 +103,15 @@ public class SwitchContainer extends Container<SwitchPane> {
             maintain(DRAG_INERTIA, ui.drag_inertia);
             maintain(ZOOM, ui.zoomScaleFactor);
         }
-        children.forEach(ui::addTab);
+
+        // During lazy startup only the viewed tab loads right away, others after the application
+        // shows. Which tab is viewed is known only once the tabs are laid out.
+        if(APP.lazyStartup.get() && !APP.isStarted())
+            ui.onLaidOut(i -> {
+                Component c = children.get(i);
+                if(c!=null) ui.addTab(i, c);
+            });
+        APP.runWhenStarted(() -> children.forEach(ui::addTab));
         return ui.getRoot();
     }
 
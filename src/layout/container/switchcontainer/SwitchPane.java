@@ -4,6 +4,7 @@ package layout.container.switchcontainer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
 
 import javafx.animation.ScaleTransition;
 import javafx.animation.TranslateTransition;
@@ -41,6 +42,7 @@ import static util.Util.clip;
 import static util.animation.interpolator.EasingMode.EASE_IN;
 import static util.animation.interpolator.EasingMode.EASE_OUT;
 import static util.graphics.Util.setAnchors;
+import static util.reactive.Util.installSingletonListener;
 import static util.reactive.Util.maintain;
 
 /**
@@ -398,6 +400,15 @@ public class SwitchPane implements ContainerNode {
         return dist < Math.max(treshold1, treshold2) ? alignTabs() : i;
     }
 
+    /**
+     * Runs the action with index of currently viewed tab once it is known, i.e., immediately if the
+     * tabs have been laid out or when they are laid out for the first time.
+     */
+    void onLaidOut(Consumer<Integer> action) {
+        if(ui.getWidth()>0) action.accept(currTab());
+        else installSingletonListener(ui.widthProperty(), w -> action.accept(currTab()));
+    }
+
     /**
      * @return index of currently viewed tab. It is the tab consuming the most
      * of the view space on the layout screen.
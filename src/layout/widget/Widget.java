@@ -451,6 +451,9 @@ public class Widget<C extends Controller<?>> extends Component implements Cached
     }
 
     private void restoreConfigs() {
+        // placeholder has no configs, keep them for the widget that replaces it
+        if(controller instanceof WidgetPlaceholder) return;
+
         @SuppressWarnings("unchecked")
         Map<String,String> deserialized_configs = (Map) properties.get("configs");
         if(deserialized_configs!=null) {
@@ -0,0 +1,174 @@
+package layout.widget;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.stream.Collectors.toList;
+import static main.App.APP;
+
+/**
+ * Compiles sources of external widgets.
+ * <p/>
+ * Remembers hash of the content of the sources of every successfully compiled widget, so a widget
+ * whose sources did not change is never compiled again, even if the modification times of its
+ * files change, e.g., after the application is upgraded or copied.
+ * <p/>
+ * Multiple widgets are compiled at once, in a single compilation task. The compiler and its file
+ * manager are reused for all compilations, so the compiler does not initialize for every widget.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+class WidgetCompiler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WidgetCompiler.class);
+
+    private final File cacheFile = new File(APP.DIR_USERDATA, "widget_compile_cache.properties");
+    private final Properties hashes = new Properties();
+    private JavaCompiler compiler;
+    private StandardJavaFileManager fileManager;
+
+    WidgetCompiler() {
+        if (cacheFile.exists()) {
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                hashes.load(in);
+            } catch (IOException e) {
+                LOGGER.warn("Could not read widget compile cache {}", cacheFile, e);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the class file of the widget is up to date with its sources, i.e., the
+     * sources were compiled into the class file and did not change since. If the widget was not
+     * compiled by this compiler, class file is up to date if it is newer than the source file.
+     *
+     * @param name name of the widget
+     * @param classfile main class file of the widget
+     * @param srcfile main source file of the widget
+     * @param srcfiles all source files of the widget
+     */
+    boolean isCompiled(String name, File classfile, File srcfile, File... srcfiles) {
+        if (!classfile.exists()) return false;
+        if (!srcfile.exists()) return true;
+        String hash = hashes.getProperty(name);
+        return hash==null
+            ? classfile.lastModified()>srcfile.lastModified()
+            : hash.equals(hash(srcfiles));
+    }
+
+    /**
+     * Compiles sources of the widgets in a single compilation task. If it fails, the widgets are
+     * compiled one by one, so a widget with errors does not prevent compilation of the others.
+     * The .class files are created next to their sources.
+     *
+     * @param widgets source files by name of the widget
+     * @return names of the successfully compiled widgets
+     */
+    synchronized List<String> compile(Map<String,File[]> widgets) {
+        if (widgets.isEmpty()) return new ArrayList<>();
+        long start = System.currentTimeMillis();
+        List<String> compiled = new ArrayList<>();
+        if (compileTask(widgets)) {
+            compiled.addAll(widgets.keySet());
+        } else if (widgets.size()>1) {
+            widgets.forEach((name,files) -> {
+                Map<String,File[]> single = new LinkedHashMap<>();
+                single.put(name, files);
+                if (compileTask(single)) compiled.add(name);
+            });
+        }
+
+        if (!compiled.isEmpty()) {
+            try (OutputStream out = new FileOutputStream(cacheFile)) {
+                hashes.store(out, "Hashes of the sources of compiled widgets");
+            } catch (IOException e) {
+                LOGGER.warn("Could not write widget compile cache {}", cacheFile, e);
+            }
+        }
+
+        LOGGER.info("Compiled {}/{} widgets in {}ms", compiled.size(), widgets.size(), System.currentTimeMillis()-start);
+        return compiled;
+    }
+
+    private boolean compileTask(Map<String,File[]> widgets) {
+        if (compiler==null) {
+            compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler==null) {
+                LOGGER.error("Can not compile widgets, java compiler is not available");
+                return false;
+            }
+            // Compiler defaults to system encoding, we need consistent encoding that does not
+            // depend on the system
+            fileManager = compiler.getStandardFileManager(null, null, APP.encoding);
+        }
+
+        List<File> files = widgets.values().stream().flatMap(Arrays::stream).collect(toList());
+        LOGGER.info("Compiling widgets {}", widgets.keySet());
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+        boolean success = compiler.getTask(null, fileManager, diagnostics, null, null, units).call();
+        // remember what was compiled immediately, the class files may be used before the rest
+        // of the widgets is compiled
+        if (success) {
+            widgets.forEach((name,srcfiles) -> {
+                String hash = hash(srcfiles);
+                if (hash.isEmpty()) hashes.remove(name);
+                else hashes.setProperty(name, hash);
+            });
+        }
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind()==Diagnostic.Kind.ERROR) LOGGER.info("Compilation error: {}", d);
+            else LOGGER.debug("Compilation {}: {}", d.getKind(), d);
+        }
+        LOGGER.info("Compilation {}", success ? "succeeded" : "failed");
+        return success;
+    }
+
+    // hash of the content of the files, independent of their order
+    private static String hash(File... files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // classes compiled by different version of java may not be usable
+            digest.update(System.getProperty("java.specification.version").getBytes(APP.encoding));
+            List<File> fs = new ArrayList<>(Arrays.asList(files));
+            fs.sort(Comparator.comparing(File::getName));
+            for (File f : fs) {
+                digest.update(f.getName().getBytes(APP.encoding));
+                digest.update(Files.readAllBytes(f.toPath()));
+            }
+            StringBuilder s = new StringBuilder();
+            for (byte b : digest.digest()) s.append(String.format("%02x", b));
+            return s.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // unknown hash never matches, so the widget will be compiled
+            LOGGER.warn("Could not compute hash of widget sources", e);
+            return "";
+        }
+    }
+}
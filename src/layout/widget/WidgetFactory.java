@@ -87,6 +87,21 @@ public class WidgetFactory<C extends Controller<?>> implements WidgetInfo {
         this(ClassName.of(type), type, location);
     }
 
+    /**
+     * Returns factory of widget of given name, whose class is not available yet. The widgets it
+     * creates are {@link WidgetPlaceholder}s. The factory is ignored on widget requests.
+     */
+    static WidgetFactory<WidgetPlaceholder> placeholder(String name, File location) {
+        WidgetFactory<WidgetPlaceholder> f = new WidgetFactory<>(name, WidgetPlaceholder.class, location);
+        f.setIgnored(true);
+        return f;
+    }
+
+    /** @return true if this is a factory of {@link WidgetPlaceholder}s */
+    public boolean isPlaceholder() {
+        return controller_class==WidgetPlaceholder.class;
+    }
+
     /**
      * Creates new widget.
      * @return new widget instance or null if creation fails.
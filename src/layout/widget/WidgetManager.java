@@ -14,9 +14,6 @@ import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import javax.tools.JavaCompiler;
-import javax.tools.ToolProvider;
-
 import javafx.scene.layout.Pane;
 
 import org.atteo.classindex.ClassIndex;
@@ -39,6 +36,7 @@ import static layout.widget.WidgetManager.WidgetSource.*;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
 import static main.App.APP;
 import static util.Util.capitalize;
@@ -46,7 +44,6 @@ import static util.async.Async.runFX;
 import static util.async.Async.runNew;
 import static util.file.Util.getName;
 import static util.functional.Util.ISNTØ;
-import static util.functional.Util.stream;
 
 /**
  * Handles operations with Widgets.
@@ -63,6 +60,7 @@ public final class WidgetManager {
      */
     public final MapSet<String,WidgetFactory<?>> factories = new MapSet<>(WidgetFactory::name);
     private final MapSet<String,WidgetDir> monitors = new MapSet<>(wd -> wd.widgetname);
+    private WidgetCompiler compiler;
     private boolean initialized = false;
     private final WindowManager windowManager; // use App instead, but that requires different App initialization
 
@@ -86,11 +84,24 @@ public final class WidgetManager {
             return;
         }
 
+        // Widgets with up to date class files are registered right away. The others are compiled
+        // all at once, in parallel with the rest of the startup. Until they are ready, they are
+        // registered as placeholders, which are replaced when their class is ready, see
+        // constructFactory().
+        compiler = new WidgetCompiler();
+        Map<String,File[]> uncompiled = new LinkedHashMap<>();
         for(File widget_dir : dir.listFiles(File::isDirectory)) {
             String name = capitalize(getName(widget_dir));
-            monitors.computeIfAbsent(name, n -> new WidgetDir(name, widget_dir))
-                    .registerExternalFactory();
+            WidgetDir wd = monitors.computeIfAbsent(name, n -> new WidgetDir(name, widget_dir));
+            if(!wd.isCompiled() && wd.srcfile.exists()) {
+                wd.registerPlaceholderFactory();
+                wd.monitorStart();
+                uncompiled.put(name, wd.getSrcFiles());
+            } else {
+                wd.registerExternalFactory();
+            }
         }
+        if(!uncompiled.isEmpty()) compile(uncompiled);
 
         FileMonitor.monitorDirsFiles(dir, File::isDirectory, (type,widget_dir) -> {
             String name = capitalize(getName(widget_dir));
@@ -150,6 +161,7 @@ public final class WidgetManager {
         FileMonitor srcMonitor;
         FileMonitor skinsMonitor;
         boolean monitorOn = false;
+        long registeredClassModified = -1;
 
         WidgetDir(String name, File dir) {
             this.widgetname = name;
@@ -167,7 +179,7 @@ public final class WidgetManager {
             classMonitor = FileMonitor.monitorDirsFiles(widgetdir, file -> file.getPath().endsWith(".java"), (type,file) -> {
                 if(type==ENTRY_CREATE || type==ENTRY_MODIFY) {
                     LOGGER.info("Widget {} source file changed {}", file,type);
-                    runNew(() -> compile(getSrcFiles()));
+                    compile(singletonMap(widgetname, getSrcFiles()));
                 }
             });
             // monitor class file (only the main class' one) & recreate factory on change
@@ -216,73 +228,60 @@ public final class WidgetManager {
         }
 
         void registerExternalFactory() {
-            File classfile = new File(widgetdir,widgetname + ".class");
-            File srcfile = new File(widgetdir,widgetname + ".java");
-
-            // Source file is available if exists
-            // Class file is available if exists and source file does not. But if both do, classfile must
-            // not be outdated, which we check by modification time. This avoids nasty class version
+            // Class file is available if exists and source file does not. But if both do, class file
+            // must not be outdated, which the compiler checks. This avoids nasty class version
             // errors as consequently we recompile the source file.
-            boolean srcfile_available = srcfile.exists();
-            boolean classfile_available = classfile.exists() && (!srcfile_available || classfile.lastModified()>srcfile.lastModified());
-
-            // If class file is available, we just create factory for it.
-            if(classfile_available) {
-                Class<?> controller_class = loadClass(getName(widgetdir), classfile);
-                constructFactory(controller_class, widgetdir);
+            if(isCompiled()) {
+                // the factory may have already been registered for this class file, e.g., when
+                // the compilation finished and the class file monitor reacted to the class file
+                WidgetFactory<?> wf = factories.get(widgetname);
+                boolean registered = wf!=null && !wf.isPlaceholder() && registeredClassModified==classfile.lastModified();
+                if(!registered) {
+                    registeredClassModified = classfile.lastModified();
+                    Class<?> controller_class = loadClass(getName(widgetdir), classfile);
+                    constructFactory(controller_class, widgetdir);
+                }
             }
 
-            // If only source file is available, compile
-            else if(srcfile_available) {
-                // If we are initialized, app is running and some widget has been added (its factory
-                // does not exist yet), so we compile in the bgr as we should.
-                // Else, we are initializing now, and we must be able to
-                // provide all factories before widgets start loading so we compile on this (ui/fx)
-                // thread. This blocks and delays startup, but that iss fine, how else are we going to
-                // load widgets if we do not have class files for them?
-                // We could in theory load he widgets lazily - provide a mock up and reload them after
-                // factories are ready (we finish compiling on bgr thread). Too much work for no real
-                // benefit - This is developer convenience feature anyway. We only need to compile
-                // once, then any subsequent app start will be compile-free.
-                if(initialized) runNew(() -> compile(getSrcFiles()));
-                else {
-                    compile(getSrcFiles());
-                    // File monitoring is not and must not be running yet (as it creates factory
-                    // asynchronously). We do it manually.
-                    registerExternalFactory();
-                }
+            // If only source file is available, compile in the background. Until then, the widget
+            // is a placeholder.
+            else if(srcfile.exists()) {
+                if(!factories.containsKey(widgetname)) registerPlaceholderFactory();
+                compile(singletonMap(widgetname, getSrcFiles()));
             }
 
             monitorStart();
         }
 
+        void registerPlaceholderFactory() {
+            factories.add(WidgetFactory.placeholder(widgetname, widgetdir));
+            LOGGER.info("Registering placeholder widget factory: {}", widgetname);
+        }
+
+        boolean isCompiled() {
+            return compiler.isCompiled(widgetname, classfile, srcfile, getSrcFiles());
+        }
+
         File[] getSrcFiles() {
             return widgetdir.listFiles(f -> f.getPath().endsWith(".java"));
         }
     }
 
     /**
-     * Compiles the .java file into .class file. All project dependencies (including the project
+     * Compiles the .java files of the widgets into .class files in the background and registers
+     * factories of successfully compiled widgets. All project dependencies (including the project
      * itself - its jar) are available because they are on the classpath.
      *
-     * @param srcfile .java file to compile
+     * @param widgets source files by widget name
      */
-    private static void compile(File... srcfiles) {
-        File[] files = srcfiles;
-        // Compiler defaults to system encoding, we:
-        // - consistent encoding that does not depend on system
-        // - need UTF-8
-        Stream<String> options = stream("-encoding",APP.encoding.name());
-        Stream<String> paths = stream(files).map(File::getPath);
-        String[] arguments = stream(options,paths).toArray(String[]::new);
-        LOGGER.info("Compiling with command: {} ", (Object[])arguments);
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        int success = compiler.run(null, null, null, arguments);
-        if(success == 0){
-            LOGGER.info("Compilation succeeded");
-        } else{
-            LOGGER.info("Compilation failed");
-        }
+    private void compile(Map<String,File[]> widgets) {
+        runNew(() -> {
+            List<String> compiled = compiler.compile(widgets);
+            runFX(() -> compiled.forEach(name -> {
+                WidgetDir wd = monitors.get(name);
+                if(wd!=null) wd.registerExternalFactory();
+            }));
+        });
     }
 
     private static Class<?> loadClass(String widgetname, File classFile) {
@@ -0,0 +1,28 @@
+package layout.widget;
+
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+
+import layout.widget.controller.ClassController;
+
+/**
+ * Controller standing in for a widget whose class is not available yet, because its sources are
+ * still being compiled. When the class becomes available, the factory of the widget is replaced
+ * and all placeholders are replaced by the real widget, which takes over their state.
+ * <p/>
+ * Has no configs, the deserialized configs of the widget are kept for the real widget.
+ *
+ * @author Martin Polakovic
+ */
+public class WidgetPlaceholder extends ClassController {
+
+    public WidgetPlaceholder() {
+        Label l = new Label("Compiling widget...");
+        l.setAlignment(Pos.CENTER);
+        getChildren().add(l);
+        setTopAnchor(l, 0d);
+        setRightAnchor(l, 0d);
+        setBottomAnchor(l, 0d);
+        setLeftAnchor(l, 0d);
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
 
+import javafx.animation.AnimationTimer;
 import javafx.animation.FadeTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -27,11 +28,13 @@ import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
+import javafx.scene.text.Font;
 import javafx.stage.*;
 import javafx.stage.FileChooser.ExtensionFilter;
 
@@ -55,6 +58,8 @@ import audio.playlist.PlaylistItem;
 import audio.tagging.Metadata;
 import audio.tagging.MetadataGroup;
 import audio.tagging.MetadataReader;
+import audio.tagging.TagCache;
+import audio.tagging.TagWriteQueue;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.joran.JoranConfigurator;
 import ch.qos.logback.core.joran.spi.JoranException;
@@ -98,6 +103,7 @@ import services.ClickEffect;
 import services.Service;
 import services.ServiceManager;
 import services.database.Db;
+import services.library.LibraryWatcher;
 import services.notif.Notifier;
 import services.playcount.PlaycountIncrementer;
 import services.tray.TrayService;
@@ -114,6 +120,8 @@ import util.animation.interpolator.ElasticInterpolator;
 import util.async.Async;
 import util.async.future.Fut;
 import util.conf.*;
+import util.dev.StartupProfiler;
+import util.dev.StartupProfiler.Phase;
 import util.dev.TODO;
 import util.file.AudioFileFormat;
 import util.file.AudioFileFormat.Use;
@@ -310,6 +318,10 @@ public class App extends Application implements Configurable {
             + "also disable ALT+TAB functionality.")
     public final V<Boolean> taskbarEnabled = new V<>(true,taskbarIcon::setVisible);
 
+    @IsConfig(name = "Lazy startup", info = "Initializes widgets that are not visible, tray and "
+            + "notifications only after the first window is shown. Makes the application show sooner.")
+    public final V<Boolean> lazyStartup = new V<>(false);
+
     @IsConfig(info = "Preferred text when no tag value for field. This value can be overridden.")
     public String TAG_NO_VALUE = "<none>";
 
@@ -317,6 +329,10 @@ public class App extends Application implements Configurable {
     public String TAG_MULTIPLE_VALUE = "<multi>";
 
 
+    // initialization deferred until the first window is shown, see runWhenStarted()
+    private final List<Runnable> deferredInit = new ArrayList<>();
+    private boolean started = false;
+
     public App() {
         if(APP==null) APP = this;
         else throw new RuntimeException("Multiple application instances disallowed");
@@ -334,6 +350,8 @@ public class App extends Application implements Configurable {
      */
     @Override
     public void init() {
+        Phase initPhase = StartupProfiler.phase("init");
+
         // configure logging
         LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
         try {
@@ -599,6 +617,8 @@ public class App extends Application implements Configurable {
 
         // custom tooltip behavior
         setupCustomTooltipBehavior(1000, 10000, 200);
+
+        initPhase.close();
     }
 
     /**
@@ -621,6 +641,7 @@ public class App extends Application implements Configurable {
             return;
         }
 
+        Phase startPhase = StartupProfiler.phase("start");
         try {
             taskbarIcon.setTitle(name);
             taskbarIcon.setIcon(getIcon());
@@ -642,29 +663,34 @@ public class App extends Application implements Configurable {
             windowOwner.show();
 
             // discover plugins
-            ClassIndex.getAnnotated(IsPluginType.class).forEach(plugins::registerPluginType);
-            ClassIndex.getAnnotated(IsPlugin.class).forEach(plugins::registerPlugin);
+            StartupProfiler.phase("plugins", () -> {
+                ClassIndex.getAnnotated(IsPluginType.class).forEach(plugins::registerPluginType);
+                ClassIndex.getAnnotated(IsPlugin.class).forEach(plugins::registerPlugin);
+            });
 
-            widgetManager.initialize();
+            StartupProfiler.phase("widgets", widgetManager::initialize);
 
             // services must be created before Configuration
             services.addService(new TrayService());
             services.addService(new Notifier());
             services.addService(new PlaycountIncrementer());
             services.addService(new ClickEffect());
+            services.addService(new LibraryWatcher());
 
             // gather configs
-            configuration.rawAdd(FILE_SETTINGS);
-            configuration.collectStatic();
-            configuration.collect(Action.getActions());
-            services.forEach(configuration::collect);
-            configuration.collect(this, windowManager, guide, actionPane);
-
-            // deserialize values (some configs need to apply it, will do when ready)
-            configuration.rawSet();
+            try (Phase p = StartupProfiler.phase("configs")) {
+                StartupProfiler.phase("read", () -> configuration.rawAdd(FILE_SETTINGS));
+                StartupProfiler.phase("collect static", configuration::collectStatic);
+                configuration.collect(Action.getActions());
+                services.forEach(configuration::collect);
+                configuration.collect(this, windowManager, guide, actionPane);
+
+                // deserialize values (some configs need to apply it, will do when ready)
+                StartupProfiler.phase("set", configuration::rawSet);
+            }
 
             // initializing, the order is important
-            Player.initialize();
+            StartupProfiler.phase("player", Player::initialize);
 
             List<String> ps = fetchParameters();
             normalLoad = ps.stream().noneMatch(s -> s.endsWith(".fxwl") || widgetManager.factories.get(s)!=null);
@@ -678,10 +704,14 @@ public class App extends Application implements Configurable {
             // we must apply skin before we load graphics, solely because if skin defines custom
             // Control Skins, it will only have effect when set before control is created
             // and yes, this means reapplying different skin will have no effect in this regard...
-            configuration.getFields(f -> f.getGroup().equals("Gui") && f.getGuiName().equals("Skin")).get(0).applyValue();
-            windowManager.deserialize(normalLoad);
+            StartupProfiler.phase("skin", () ->
+                configuration.getFields(f -> f.getGroup().equals("Gui") && f.getGuiName().equals("Skin")).get(0).applyValue()
+            );
+            StartupProfiler.phase("windows", () -> windowManager.deserialize(normalLoad));
 
-            Db.start();
+            // not deferred, library changes made before the database starts would be lost
+            StartupProfiler.phase("database", Db::start);
+            TagCache.start();
 
             initialized = true;
 
@@ -691,10 +721,17 @@ public class App extends Application implements Configurable {
         }
 
         // initialization is complete -> apply all settings
-        configuration.getFields().forEach(Config::applyValue);
+        // services not needed to show the application are enabled after it shows
+        List<Config<?>> deferredConfigs = new ArrayList<>();
+        if(lazyStartup.get())
+            stream(TrayService.class, Notifier.class).forEach(type -> services.getService(type).ifPresent(s -> deferredConfigs.addAll(s.getFields())));
+        StartupProfiler.phase("apply configs", () ->
+            configuration.getFields().stream().filter(c -> !deferredConfigs.contains(c)).forEach(Config::applyValue)
+        );
+        runWhenStarted(() -> StartupProfiler.phase("services", () -> deferredConfigs.forEach(Config::applyValue)));
 
         // initialize non critical parts
-        if(normalLoad) Player.loadLast();
+        if(normalLoad) StartupProfiler.phase("load last", Player::loadLast);
 
         // show guide
         if(guide.first_time.get()) run(3000, guide::start);
@@ -708,6 +745,49 @@ public class App extends Application implements Configurable {
 
         // process app parameters passed when app started
         parameterProcessor.process(fetchParameters());
+
+        startPhase.close();
+        onFirstFrame(() -> {
+            started = true;
+            StartupProfiler.phase("deferred", () -> deferredInit.forEach(Runnable::run));
+            deferredInit.clear();
+            LOGGER.debug("{}", StartupProfiler.dump());
+        });
+    }
+
+    /**
+     * @return true if the application has started and its windows were shown or false if it is
+     * still starting
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Runs the action when the application has started, i.e., its windows were shown. If lazy
+     * startup is disabled or the application has already started, runs it immediately.
+     * <p/>
+     * Use for initialization that is not required to show the application.
+     */
+    public void runWhenStarted(Runnable action) {
+        if(started || !lazyStartup.get()) action.run();
+        else deferredInit.add(action);
+    }
+
+    // runs the action on fx thread after the windows are rendered for the first time
+    private static void onFirstFrame(Runnable action) {
+        new AnimationTimer() {
+            int frames = 0;
+
+            @Override
+            public void handle(long now) {
+                // the first frame renders after the timers of its pulse execute
+                if(++frames==2) {
+                    stop();
+                    action.run();
+                }
+            }
+        }.start();
     }
 
     /**
@@ -726,7 +806,9 @@ public class App extends Application implements Configurable {
                     .filter(Service::isRunning)
                     .forEach(Service::stop);
         }
+        TagWriteQueue.stop();
         Db.stop();
+        TagCache.stop();
         Action.stopActionListening();
         appCommunicator.stop();
     }
@@ -935,6 +1017,16 @@ public class App extends Application implements Configurable {
         Environment.open(APP.DIR_APP);
     }
 
+    @IsAction(name = "Show startup timeline", desc = "Shows how long the phases of the application "
+            + "startup took. For developers.")
+    public static void showStartupTimeline() {
+        TextArea t = new TextArea(StartupProfiler.dump());
+        t.setEditable(false);
+        t.setFont(Font.font("Monospaced"));
+        t.setPrefSize(800, 500);
+        new PopOver(t).show(App_Center);
+    }
+
     @IsAction(name = "Open css guide", desc = "Opens css reference guide. For developers.")
     public static void openCssGuide() {
         browse(URI.create("http://docs.oracle.com/javafx/2/api/javafx/scene/doc-files/cssref.html"));
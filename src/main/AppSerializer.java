@@ -1,15 +1,25 @@
-
 package main;
 
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 
 import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static util.dev.Util.log;
 
 /**
  * Composition of serializers for the application.
@@ -18,18 +28,27 @@ import com.thoughtworks.xstream.io.xml.DomDriver;
  */
 public final class AppSerializer {
 
-    /** Xstream serializator that serializes objects into human readable XMLs. */
+    /**
+     * Xstream serializator that serializes objects into human readable XMLs. Shared, configure it
+     * once and do not create new instances.
+     */
     public final XStream x;
     private final Charset encoding;
 
     public AppSerializer(Charset xStream_encoding) {
         encoding = xStream_encoding;
-        x = new XStream(new DomDriver(encoding.name()));
+        x = new XStream(new StreamingDriver(encoding));
     }
 
+    /**
+     * Serializes the object into the file. The file is written atomically, i.e., if the
+     * serialization fails, the file is left as it was before.
+     */
     public void toXML(Object o, File file) throws SerializationException {
+        long start = System.currentTimeMillis();
+        File tmp = new File(file.getPath() + ".tmp");
         try (
-            FileOutputStream fos = new FileOutputStream(file);
+            FileOutputStream fos = new FileOutputStream(tmp);
             OutputStreamWriter ow = new OutputStreamWriter(fos,encoding);
             BufferedWriter w = new BufferedWriter(ow)
         ) {
@@ -37,14 +56,26 @@ public final class AppSerializer {
         // We need to be absolutely sure we catch everything
         // Apparently XStreamException | IOException is not enough
         } catch(Throwable e) {
+            tmp.delete();
             throw new SerializationException("Couldn't serialize to file " + file, e);
         }
+
+        try {
+            move(tmp, file);
+        } catch(IOException e) {
+            tmp.delete();
+            throw new SerializationException("Couldn't serialize to file " + file, e);
+        }
+        log(AppSerializer.class).debug("Serialized {} into {} in {}ms", o.getClass().getSimpleName(), file, System.currentTimeMillis()-start);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T fromXML(Class<T> type, File file) throws SerializationException {
         try {
-            return (T) x.fromXML(file);
+            long start = System.currentTimeMillis();
+            T t = (T) x.fromXML(file);
+            log(AppSerializer.class).debug("Deserialized {} from {} in {}ms", type.getSimpleName(), file, System.currentTimeMillis()-start);
+            return t;
         // We need to be absolutely sure we catch everything
         // Apparently ClassCastException is not enough
         } catch(Throwable e) {
@@ -52,10 +83,41 @@ public final class AppSerializer {
         }
     }
 
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), REPLACE_EXISTING);
+        }
+    }
+
     public static class SerializationException extends Exception {
         SerializationException(String message, Throwable cause) {
             super(message, cause);
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Driver reading the XML with a streaming StAX parser, rather than building DOM of the whole
+     * document first, and writing it indented, like {@link com.thoughtworks.xstream.io.xml.DomDriver}
+     * does, so the files stay human readable and their format does not change.
+     */
+    private static class StreamingDriver extends StaxDriver {
+        private final Charset encoding;
+
+        StreamingDriver(Charset encoding) {
+            this.encoding = encoding;
+        }
+
+        @Override
+        public HierarchicalStreamWriter createWriter(Writer out) {
+            return new PrettyPrintWriter(out, getNameCoder());
+        }
+
+        @Override
+        public HierarchicalStreamWriter createWriter(OutputStream out) {
+            return createWriter(new OutputStreamWriter(out, encoding));
+        }
+    }
+
+}
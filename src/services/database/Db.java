@@ -9,7 +9,9 @@ package services.database;
 import java.io.File;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
@@ -19,6 +21,8 @@ import javax.persistence.Persistence;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 
+import org.reactfx.Subscription;
+
 import audio.Item;
 import audio.tagging.Metadata;
 import audio.tagging.MetadataWriter;
@@ -152,24 +156,28 @@ public class Db {
         });
         em.getTransaction().commit();
 
-        MetadataWriter.use(l,w -> w.setLibraryAddedNowIfEmpty());
-
         // update model
-        updateInMemoryDBfromPersisted();
+        updateInMemoryDB(l, listRO(), listRO());
+
+        MetadataWriter.use(l,w -> w.setLibraryAddedNowIfEmpty());
     }
 
     public static void removeItems(Collection<? extends Item> items) {
         if(em==null) return;
 
+        List<Metadata> l = new ArrayList<>();
         // remove in db
         em.getTransaction().begin();
         items.forEach(item -> {
             Metadata in_db = em.find(Metadata.class, item.getId());
-            if(in_db != null) em.remove(in_db);
+            if(in_db != null) {
+                em.remove(in_db);
+                l.add(in_db);
+            }
         });
         em.getTransaction().commit();
         // update model
-        updateInMemoryDBfromPersisted();
+        updateInMemoryDB(listRO(), l, listRO());
     }
 
     public static void removeAllItems() {
@@ -191,16 +199,71 @@ public class Db {
     private static void setInMemoryDB(List<Metadata> l) {
         items_byId.clear();
         items_byId.addAll(l);
+        items_index.setAll(l);
+        loaded.complete(null);
         runFX(() -> items.i.setValue(l));
     }
 
     /**
+     * Reloads whole in memory database from the persisted one. Expensive, prefer
+     * {@link #updateInMemoryDB(java.util.Collection, java.util.Collection, java.util.Collection)}.
+     * <p/>
      * Thread safe.
      */
     public static void updateInMemoryDBfromPersisted() {
         setInMemoryDB(getAllItems());
     }
 
+    /**
+     * Applies the changes of the persisted database to the in memory database, without reloading it.
+     * Fires {@link LibraryChange} event and sets new value of {@link #items}.
+     * <p/>
+     * Items are classified by the in memory database, i.e., updated items not yet in it are
+     * considered added and added items already in it are considered updated.
+     * <p/>
+     * Thread safe.
+     *
+     * @param added items added to the persisted database
+     * @param removed items removed from the persisted database
+     * @param updated items updated in the persisted database
+     */
+    public static void updateInMemoryDB(Collection<? extends Metadata> added, Collection<? extends Metadata> removed, Collection<? extends Metadata> updated) {
+        LibraryChange c = new LibraryChange();
+        removed.forEach(m -> {
+            if(items_byId.removeKey(m.getId())) c.removed.add(m);
+        });
+        Consumer<Metadata> put = m -> {
+            boolean isNew = !items_byId.containsKey(m.getId());
+            items_byId.remove(m);
+            items_byId.add(m);
+            if(isNew) c.added.add(m);
+            else if(!c.added.contains(m)) c.updated.add(m);
+        };
+        added.forEach(put);
+        updated.forEach(put);
+        if(c.isEmpty()) return;
+        items_index.update(c.added, c.removed, c.updated);
+
+        runFX(() -> {
+            changeHandlers.forEach(h -> h.accept(c));
+            items.i.setValue(new ArrayList<>(items_byId));
+        });
+    }
+
+    /**
+     * Adds library change handler. Called on fx thread every time the in memory database changes
+     * as a result of {@link #updateInMemoryDB(java.util.Collection, java.util.Collection, java.util.Collection)},
+     * right before {@link #items} receives new value.
+     * <p/>
+     * Use to update only affected items, instead of processing the whole library.
+     */
+    public static Subscription onLibraryChange(Consumer<LibraryChange> handler) {
+        changeHandlers.add(handler);
+        return () -> changeHandlers.remove(handler);
+    }
+
+    private static final List<Consumer<LibraryChange>> changeHandlers = new ArrayList<>();
+
 
     /**
      * In memory item database. Use for library.
@@ -211,6 +274,13 @@ public class Db {
      * {@link ConcurrentHashMap} underneath.
      */
     public static final MapSet<String,Metadata> items_byId = new MapSet<>(new ConcurrentHashMap<>(2000,1,3),Metadata::getId);
+    /**
+     * Full text index of {@link #items_byId}, updated with it. Use to speed up string filters of
+     * library items.
+     */
+    public static final MetadataIndex items_index = new MetadataIndex();
+    /** Completes when {@link #items_byId} is loaded from the persisted database for the first time. */
+    public static final CompletableFuture<Void> loaded = new CompletableFuture<>();
     public static final InOutput<List<Metadata>> items = new InOutput<>(fromString("396d2407-7040-401e-8f85-56bc71288818"),"All library songs", List.class);
 
 
@@ -236,6 +306,19 @@ public class Db {
 
     /******************************************************************************/
 
+    /** Change of the in memory database. Items are hashed by {@link Item#getId()}. */
+    public static class LibraryChange {
+        public final MapSet<String,Metadata> added = new MapSet<>(Metadata::getId);
+        public final MapSet<String,Metadata> removed = new MapSet<>(Metadata::getId);
+        public final MapSet<String,Metadata> updated = new MapSet<>(Metadata::getId);
+
+        private LibraryChange() {}
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+        }
+    }
+
     @Entity(name = "StringStore")
     public static class StringStore {
         private HashMap<String,HashSet<String>> pool = new HashMap<>();
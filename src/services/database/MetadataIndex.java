@@ -0,0 +1,226 @@
+package services.database;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import audio.tagging.Metadata;
+
+import static audio.tagging.Metadata.Field.FULLTEXT;
+import static util.async.Async.newSingleDaemonThreadExecutor;
+import static util.dev.Util.log;
+
+/**
+ * In memory inverted index of library items, mapping words of {@link Metadata#getFulltext()} to
+ * the items containing them.
+ * <p/>
+ * Words are the maximal runs of letters and digits of the lower case full text. Because full text
+ * contains value of every string field, an item whose string field contains some text must have,
+ * for every word of the text, a word containing it. This allows the index to quickly narrow down
+ * candidates for string filters, which are then tested with the actual filter. Hence the filters
+ * produce the exact same results as without the index, see {@link #predicate(audio.tagging.Metadata.Field, String, Object[], Function)}.
+ * <p/>
+ * The index is updated incrementally in background as {@link Db#items_byId} changes. Removed items
+ * are only marked and purged once they outnumber the live ones.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+public class MetadataIndex {
+
+    /** Names of filter functions whose match implies the field contains the (first) parameter. */
+    private static final Set<String> CONTAINING_FUNCTIONS = new HashSet<>(Arrays.asList("Contains","Is","Starts with","Ends with"));
+
+    private final ExecutorService updater = newSingleDaemonThreadExecutor();
+    private volatile Index index = new Index();                         // replaced when rebuilt
+    private volatile boolean ready = false;
+    private final AtomicInteger pending = new AtomicInteger();          // scheduled, not yet applied changes
+
+    MetadataIndex() {}
+
+    /** Replaces content of the index with the specified items. Asynchronous. */
+    void setAll(Collection<? extends Metadata> items) {
+        List<Metadata> l = new ArrayList<>(items);
+        pending.incrementAndGet();
+        updater.execute(() -> {
+            long start = System.currentTimeMillis();
+            // built without lock and swapped in, so queries never wait for the build
+            Index i = new Index();
+            l.forEach(i::add);
+            index = i;
+            ready = true;
+            pending.decrementAndGet();
+            log(MetadataIndex.class).info("Library index of {} items built in {}ms", l.size(), System.currentTimeMillis()-start);
+        });
+    }
+
+    /** Applies change of the library to the index. Asynchronous. */
+    void update(Collection<? extends Metadata> added, Collection<? extends Metadata> removed, Collection<? extends Metadata> updated) {
+        List<Metadata> a = new ArrayList<>(added), r = new ArrayList<>(removed), u = new ArrayList<>(updated);
+        pending.incrementAndGet();
+        updater.execute(() -> {
+            Index i = index;
+            synchronized(i) {
+                r.forEach(i::remove);
+                u.forEach(i::remove);
+                a.forEach(i::add);
+                u.forEach(i::add);
+            }
+            if(i.docs.size() > 1000 && i.docs.size() > 2*i.docOf.size()) index = i.purged();
+            pending.decrementAndGet();
+        });
+    }
+
+    /**
+     * Returns index-backed equivalent of string filter or null if the filter can not make use of
+     * the index (or the index is not up to date), in which case the filter must be tested on
+     * every item.
+     * <p/>
+     * Supported are filters of fields contained in the full text (see
+     * {@link Metadata.Field#isInFulltext()}), including {@link Metadata.Field#FULLTEXT}, that
+     * require the value to contain the text parameter, e.g., 'Contains', 'Starts with'.
+     * The returned predicate tests the filter only on the items found by the index, which is
+     * exact. Items added to library after this method returns are always tested by the filter.
+     * <p/>
+     * Does not block while the index is being built.
+     *
+     * @param field filtered field
+     * @param function name of the filter function
+     * @param parameters parameters of the filter function
+     * @param filter filter function, testing value of the field
+     * @return predicate or null
+     */
+    public Predicate<Metadata> predicate(Metadata.Field field, String function, Object[] parameters, Function<Object,Boolean> filter) {
+        if(field==null || !field.isInFulltext() || !CONTAINING_FUNCTIONS.contains(function)) return null;
+        if(parameters==null || parameters.length==0 || !(parameters[0] instanceof String)) return null;
+        // index lagging behind the library could miss items
+        if(!ready || pending.get()>0) return null;
+
+        List<String> pieces = words(((String) parameters[0]).toLowerCase());
+        if(pieces.isEmpty()) return null;
+
+        Index i = index;
+        BitSet candidates;
+        Map<String,Integer> docsSnapshot;
+        int docCount;
+        // waits at most for an incremental update
+        synchronized(i) {
+            candidates = i.find(pieces);
+            docCount = i.docs.size();
+            // only candidates need to be resolved by id
+            docsSnapshot = new HashMap<>(2*candidates.cardinality());
+            for(int d = candidates.nextSetBit(0); d>=0; d = candidates.nextSetBit(d+1)) {
+                Metadata m = i.docs.get(d);
+                if(m!=null) docsSnapshot.put(m.getId(), d);
+            }
+        }
+        Predicate<Metadata> exact = m -> {
+            Object o = field.getOf(m);
+            return o!=null && filter.apply(o);
+        };
+        return m -> {
+            if(docsSnapshot.containsKey(m.getId())) return exact.test(m);
+            Integer d = i.docOf.get(m.getId());
+            // not indexed at the time of the query
+            return (d==null || d>=docCount || i!=index) && exact.test(m);
+        };
+    }
+
+    /** @return maximal runs of letters and digits of the text */
+    static List<String> words(String text) {
+        List<String> l = new ArrayList<>();
+        int start = -1;
+        for(int i=0; i<=text.length(); i++) {
+            boolean isWordChar = i<text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(isWordChar && start<0) start = i;
+            if(!isWordChar && start>=0) {
+                l.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Content of the index. Modified only by the updater thread, under its own lock once published,
+     * read by queries under the lock.
+     */
+    private static class Index {
+        final Map<String,Integer> docOf = new ConcurrentHashMap<>(); // item id -> doc
+        final ArrayList<Metadata> docs = new ArrayList<>();         // doc -> item, null if removed
+        final Map<String,Postings> postings = new HashMap<>();      // word -> docs
+        String[] words = new String[0];                             // sorted words, rebuilt lazily
+        boolean wordsDirty = false;
+
+        // docs having, for every piece, a word containing the piece
+        BitSet find(List<String> pieces) {
+            if(wordsDirty) {
+                words = postings.keySet().toArray(new String[postings.size()]);
+                Arrays.sort(words);
+                wordsDirty = false;
+            }
+            BitSet result = null;
+            for(String piece : pieces) {
+                BitSet b = new BitSet(docs.size());
+                // words starting with the piece are contiguous, other words need to be scanned
+                int i = Arrays.binarySearch(words, piece);
+                for(i = i<0 ? -i-1 : i; i<words.length && words[i].startsWith(piece); i++)
+                    postings.get(words[i]).addTo(b);
+                for(String w : words)
+                    if(w.length()>piece.length() && !w.startsWith(piece) && w.contains(piece))
+                        postings.get(w).addTo(b);
+                if(result==null) result = b;
+                else result.and(b);
+                if(result.isEmpty()) break;
+            }
+            return result;
+        }
+
+        void add(Metadata m) {
+            int d = docs.size();
+            docs.add(m);
+            Integer old = docOf.put(m.getId(), d);
+            if(old!=null) docs.set(old, null);
+            for(String w : new HashSet<>(words(m.getFulltext().toLowerCase()))) {
+                Postings p = postings.get(w);
+                if(p==null) {
+                    p = new Postings();
+                    postings.put(w, p);
+                    wordsDirty = true;
+                }
+                p.add(d);
+            }
+        }
+
+        void remove(Metadata m) {
+            Integer d = docOf.remove(m.getId());
+            if(d!=null) docs.set(d, null);
+        }
+
+        // new index without removed items
+        Index purged() {
+            Index i = new Index();
+            for(Metadata m : docs) if(m!=null) i.add(m);
+            return i;
+        }
+    }
+
+    /** Growable sorted list of docs. */
+    private static class Postings {
+        private int[] docs = new int[2];
+        private int size = 0;
+
+        void add(int doc) {
+            if(size==docs.length) docs = Arrays.copyOf(docs, 2*size);
+            docs[size++] = doc;
+        }
+
+        void addTo(BitSet b) {
+            for(int i=0; i<size; i++) b.set(docs[i]);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package services.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent.Kind;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Stream;
+
+import org.reactfx.Subscription;
+
+import audio.Item;
+import audio.Player;
+import audio.SimpleItem;
+import audio.tagging.Metadata;
+import audio.tagging.MetadataReader;
+import services.Service.ServiceBase;
+import services.database.Db;
+import util.conf.Config.VarList;
+import util.conf.IsConfig;
+import util.conf.IsConfigurable;
+import util.conf.ListConfigurable;
+import util.conf.ValueConfig;
+import util.file.AudioFileFormat;
+import util.file.AudioFileFormat.Use;
+import util.file.FileMonitor;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static main.App.APP;
+import static util.async.Async.runFX;
+import static util.async.Async.threadFactory;
+import static util.dev.Util.log;
+import static util.file.Util.getFilesAudio;
+import static util.file.Util.readFileLines;
+import static util.file.Util.writeFile;
+import static util.functional.Util.listRO;
+
+/**
+ * Keeps library in sync with the content of library folders.
+ * <p/>
+ * The folders are watched recursively and created, deleted, renamed and modified audio files are
+ * applied to the library. Events are collected and applied in batches, after no event comes for
+ * {@link #QUIET_DELAY} ms, but at least every {@link #MAX_DELAY} ms, so event storms (e.g.,
+ * copying an album) result in few library changes.
+ * <p/>
+ * When the service starts, changes made while it was not running are discovered by comparing
+ * modification times of the folders with those stored when it ran last time. Only folders, whose
+ * content (files) changed, are listed. Changes of files that do not change the folder (e.g., tag
+ * edited by other application) are not discovered this way.
+ *
+ * @author Martin Polakovic
+ */
+@IsConfigurable("Library Watching")
+public class LibraryWatcher extends ServiceBase {
+
+    private static final File SNAPSHOT_FILE = new File(APP.DIR_LIBRARY, "library_dirs.cfg");
+    /** Time in ms without file events after which the collected changes are applied. */
+    public static final long QUIET_DELAY = 2000;
+    /** Maximal time in ms the changes are collected before they are applied. */
+    public static final long MAX_DELAY = 10000;
+
+    @IsConfig(name = "Library folders", info = "Folders watched for added, removed and changed "
+            + "audio files, including subfolders. The changes are applied to the library.")
+    public final VarList<File> dirs = new VarList<>(() -> new File(System.getProperty("user.home")), f -> new ListConfigurable<>(new ValueConfig<>(File.class, "Folder", f)));
+
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor(threadFactory("library-watcher", true));
+    private final Map<File,FileMonitor> monitors = new HashMap<>();    // fx thread only
+    private final Set<File> changedFiles = new HashSet<>();             // guarded by this
+    private final Set<File> changedDirs = new HashSet<>();              // guarded by this
+    private final Set<File> removed = new HashSet<>();                  // guarded by this
+    private ScheduledFuture<?> flush;                                   // guarded by this
+    private long collectingSince = -1;                                  // guarded by this
+    private Map<String,Long> snapshot;                                  // executor thread only
+    private boolean running = false;
+    private Subscription dirsMonitoring;
+
+    public LibraryWatcher() {
+        super(false);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        dirsMonitoring = dirs.onListInvalid(l -> {
+            if(running) {
+                unwatchAll();
+                watchAll();
+            }
+        });
+        watchAll();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if(dirsMonitoring!=null) dirsMonitoring.unsubscribe();
+        unwatchAll();
+        executor.execute(this::applyChanges);
+    }
+
+    private void watchAll() {
+        List<File> roots = new ArrayList<>(dirs.list);
+        executor.execute(() -> {
+            roots.forEach(this::watchTree);
+            reconcile(roots);
+        });
+    }
+
+    private void unwatchAll() {
+        monitors.values().forEach(FileMonitor::stop);
+        monitors.clear();
+    }
+
+    // runs on executor, directory listing requires I/O
+    private void watchTree(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            List<File> ds = paths.filter(Files::isDirectory).map(Path::toFile).collect(toList());
+            runFX(() -> {
+                if(running) ds.forEach(this::watch);
+            });
+        } catch(IOException|UncheckedIOException e) {
+            log(LibraryWatcher.class).error("Can not watch library folder {}", dir, e);
+        }
+    }
+
+    private void watch(File dir) {
+        monitors.computeIfAbsent(dir, d -> FileMonitor.monitorDirsFiles(d, f -> true, this::onEvent));
+    }
+
+    // runs on fx thread
+    private void onEvent(Kind<Path> type, File f) {
+        if(!running) return;
+        if(type==ENTRY_DELETE) {
+            // the file may have been directory, stop watching it and its subdirectories
+            String path = f.getPath() + File.separator;
+            monitors.entrySet().removeIf(e -> {
+                boolean isRemoved = e.getKey().equals(f) || e.getKey().getPath().startsWith(path);
+                if(isRemoved) e.getValue().stop();
+                return isRemoved;
+            });
+            collect(removed, f);
+        } else if(f.isDirectory()) {
+            if(type==ENTRY_CREATE) {
+                executor.execute(() -> watchTree(f));
+                collect(changedDirs, f);
+            }
+        } else if(AudioFileFormat.isSupported(f, Use.APP)) {
+            collect(changedFiles, f);
+        }
+    }
+
+    private synchronized void collect(Set<File> files, File f) {
+        files.add(f);
+        long now = System.currentTimeMillis();
+        if(collectingSince==-1) collectingSince = now;
+        if(flush!=null) flush.cancel(false);
+        long delay = Math.min(QUIET_DELAY, Math.max(0, collectingSince+MAX_DELAY-now));
+        flush = executor.schedule(this::applyChanges, delay, MILLISECONDS);
+    }
+
+    // runs on executor
+    private void applyChanges() {
+        List<File> fs, ds, rs;
+        synchronized(this) {
+            fs = new ArrayList<>(changedFiles);
+            ds = new ArrayList<>(changedDirs);
+            rs = new ArrayList<>(removed);
+            changedFiles.clear();
+            changedDirs.clear();
+            removed.clear();
+            if(flush!=null) flush.cancel(false);
+            flush = null;
+            collectingSince = -1;
+        }
+        if(fs.isEmpty() && ds.isEmpty() && rs.isEmpty()) return;
+        long start = System.currentTimeMillis();
+
+        // removed files and directories, unless they were created again since
+        Set<String> rsPaths = new HashSet<>();
+        rs.stream().filter(f -> !f.exists()).forEach(f -> rsPaths.add(f.getPath()));
+        List<Metadata> toRemove = Db.items_byId.stream()
+            .filter(m -> m.isFileBased() && isUnder(m.getFile(), rsPaths))
+            .collect(toList());
+
+        // created and modified files
+        Set<File> files = new HashSet<>();
+        fs.stream().filter(File::isFile).forEach(files::add);
+        ds.forEach(d -> getFilesAudio(d, Use.APP, Integer.MAX_VALUE).forEach(files::add));
+        List<Item> toAdd = new ArrayList<>();
+        List<Item> toRefresh = new ArrayList<>();
+        for(File f : files) {
+            Item i = new SimpleItem(f);
+            (Db.items_byId.containsKey(Metadata.metadataID(i.getURI())) ? toRefresh : toAdd).add(i);
+        }
+
+        Db.removeItems(toRemove);
+        Db.addItems(MetadataReader.readMetadata(toAdd));
+        List<Metadata> refreshed = MetadataReader.readMetadata(toRefresh);
+        if(!refreshed.isEmpty()) Player.refreshItemsWith(refreshed);
+
+        // update snapshot
+        if(snapshot!=null) {
+            snapshot.keySet().removeIf(p -> isUnder(new File(p), rsPaths));
+            for(File f : files) snapshot.put(f.getParent(), f.getParentFile().lastModified());
+            for(File f : rs) if(f.getParentFile()!=null) snapshot.put(f.getParent(), f.getParentFile().lastModified());
+            saveSnapshot();
+        }
+        log(LibraryWatcher.class).info("Library synchronized: {} added, {} removed, {} refreshed in {}ms",
+            toAdd.size(), toRemove.size(), refreshed.size(), System.currentTimeMillis()-start);
+    }
+
+    /**
+     * Discovers changes of the library folders since the service ran last time. Lists only the
+     * folders, whose modification time changed, and folders not seen before.
+     */
+    // runs on executor
+    private void reconcile(List<File> roots) {
+        Db.loaded.join();   // the library must be loaded to find out what changed
+        long start = System.currentTimeMillis();
+        Map<String,Long> old = readSnapshot();
+        Map<String,List<String>> oldChildren = new HashMap<>();
+        old.keySet().forEach(p -> {
+            String parent = new File(p).getParent();
+            if(parent!=null) oldChildren.computeIfAbsent(parent, k -> new ArrayList<>()).add(p);
+        });
+        Map<File,List<Metadata>> itemsByDir = new HashMap<>();
+        Db.items_byId.stream().filter(Metadata::isFileBased)
+            .forEach(m -> itemsByDir.computeIfAbsent(m.getFile().getParentFile(), k -> new ArrayList<>()).add(m));
+
+        Map<String,Long> now = new HashMap<>();
+        List<File> added = new ArrayList<>();
+        List<File> missing = new ArrayList<>();
+        Deque<File> toVisit = new ArrayDeque<>(roots);
+        while(!toVisit.isEmpty()) {
+            File dir = toVisit.pop();
+            if(!running || now.containsKey(dir.getPath()) || !dir.isDirectory()) continue;
+            long modified = dir.lastModified();
+            now.put(dir.getPath(), modified);
+
+            Long modifiedOld = old.get(dir.getPath());
+            if(modifiedOld!=null && modifiedOld==modified) {
+                // files did not change, subdirectories still may have
+                oldChildren.getOrDefault(dir.getPath(), listRO()).forEach(p -> toVisit.push(new File(p)));
+            } else {
+                File[] children = dir.listFiles();
+                if(children==null) continue;
+                Set<File> present = new HashSet<>();
+                for(File f : children) {
+                    if(f.isDirectory()) toVisit.push(f);
+                    else if(AudioFileFormat.isSupported(f, Use.APP)) {
+                        present.add(f);
+                        if(!Db.items_byId.containsKey(Metadata.metadataID(f.toURI()))) added.add(f);
+                    }
+                }
+                itemsByDir.getOrDefault(dir, listRO()).stream()
+                    .map(Metadata::getFile)
+                    .filter(f -> !present.contains(f))
+                    .forEach(missing::add);
+            }
+        }
+        if(!running) return;
+
+        // items in folders, which no longer exist
+        Set<String> rootPaths = roots.stream().map(File::getPath).collect(toSet());
+        itemsByDir.forEach((dir,ms) -> {
+            if(!now.containsKey(dir.getPath()) && isUnder(dir, rootPaths))
+                ms.forEach(m -> missing.add(m.getFile()));
+        });
+
+        snapshot = now;
+        log(LibraryWatcher.class).info("Library folders checked in {}ms: {} folders, {} listed", System.currentTimeMillis()-start,
+            now.size(), now.entrySet().stream().filter(e -> !e.getValue().equals(old.get(e.getKey()))).count());
+        synchronized(this) {
+            changedFiles.addAll(added);
+            removed.addAll(missing);
+        }
+        applyChanges();
+        saveSnapshot();
+    }
+
+    // returns true if the file or any of its parents is in the paths
+    private static boolean isUnder(File f, Set<String> paths) {
+        for(File p = f; p!=null; p = p.getParentFile())
+            if(paths.contains(p.getPath())) return true;
+        return false;
+    }
+
+    private static Map<String,Long> readSnapshot() {
+        Map<String,Long> s = new HashMap<>();
+        if(SNAPSHOT_FILE.exists()) {
+            readFileLines(SNAPSHOT_FILE).forEach(line -> {
+                int i = line.indexOf(' ');
+                if(i>0) {
+                    try {
+                        s.put(line.substring(i+1), Long.parseLong(line.substring(0,i)));
+                    } catch(NumberFormatException e) {
+                        log(LibraryWatcher.class).warn("Invalid library folder snapshot entry: {}", line);
+                    }
+                }
+            });
+        }
+        return s;
+    }
+
+    private void saveSnapshot() {
+        if(snapshot==null) return;
+        writeFile(SNAPSHOT_FILE, snapshot.entrySet().stream().map(e -> e.getValue() + " " + e.getKey()).collect(joining("\n")));
+    }
+}
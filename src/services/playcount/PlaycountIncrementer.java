@@ -14,8 +14,8 @@ import services.Service.ServiceBase;
 import services.notif.Notifier;
 import services.tray.TrayService;
 import audio.tagging.Metadata;
-import audio.tagging.MetadataReader;
 import audio.tagging.MetadataWriter;
+import audio.tagging.TagWriteQueue;
 import util.conf.IsConfig;
 import util.conf.IsConfigurable;
 import util.access.V;
@@ -73,16 +73,8 @@ public class PlaycountIncrementer extends ServiceBase {
         running = false;
         apply();
         d.unsubscribe();
-        // note that we are potentially losing queued playcounts here. If the service never starts
-        // again, all queued playcounts will never get written to tag
-        // we could just write them all to tag right here, but that may cause problems such as
-        // unwanted application close delay.
-        // This should not be a big problem, unless user listened to single song lot of the times
-        // in a loop and then disabled this service and closed the app. We really do not care about
-        // such scenario. Plus, few lost playcounts are no big deal.
-        //
-        // fix below:
-        // queue.stream().distinct().forEach(this::incrementQueued);
+        // hand queued playcounts over to the tag write queue, which is flushed on application close
+        new ArrayList<>(queue).forEach(this::incrementQueued);
     }
 
     @Override
@@ -153,11 +145,7 @@ public class PlaycountIncrementer extends ServiceBase {
         int δ = (int) queue.stream().filter(i -> i.same(m)).count();
         if(δ>0) {
             queue.removeIf(i -> i.same(m));
-            int p = δ + m.getPlaycount();
-            Player.IO_THREAD.execute(() -> {
-                MetadataWriter.useNoRefresh(m, w -> w.setPlaycount(p));
-                Player.refreshItemWith(MetadataReader.create(m), true);
-            });
+            TagWriteQueue.enqueuePlaycountIncrement(m, δ);
         }
     }
 
@@ -24,6 +24,7 @@ import org.jaudiotagger.tag.images.Artwork;
 import gui.itemnode.StringSplitParser;
 import gui.itemnode.StringSplitParser.Split;
 import gui.itemnode.StringSplitParser.SplitData;
+import gui.objects.image.ImageCache;
 import net.coobird.thumbnailator.Thumbnails;
 import net.coobird.thumbnailator.resizers.configurations.Rendering;
 import util.dev.TODO;
@@ -348,6 +349,8 @@ public interface Util {
      * @param width target width.
      * @param height target height. Use 0 or negative to use original image size.
      * The size will be clipped to original if it is greater.
+     * <p/>
+     * Image is returned from and put into {@link ImageCache}.
      * @throws IllegalArgumentException when on fx thread
      * @return loaded image or null if file null or not a valid image source.
      */
@@ -358,18 +361,31 @@ public interface Util {
             util.dev.Util.log(Util.class).warn("Loading image on FX thread!");
 
         if(file.getPath().endsWith("psd")) {
-           return loadImageFull(file, width, height, false);
+            Image cached = ImageCache.get(file, width, height);
+            if(cached!=null) return cached;
+            Image i = loadImageFull(file, width, height, false);
+            ImageCache.put(file, i, width, height);
+            return i;
         } else {
             return loadImageThumb(file, width, height);
         }
     }
 
+    /** Loads image file with requested size, trading quality for speed. Uses {@link ImageCache}. */
     static Image loadImageThumb(File file, double width, double height) {
         if (file == null) return null;
 
         if(Platform.isFxApplicationThread())
             util.dev.Util.log(Util.class).warn("Loading image on FX thread!");
 
+        Image cached = ImageCache.get(file, width, height);
+        if(cached!=null) return cached;
+        Image i = loadImageThumbImpl(file, width, height);
+        ImageCache.put(file, i, width, height);
+        return i;
+    }
+
+    private static Image loadImageThumbImpl(File file, double width, double height) {
         // negative values have same effect as 0, 0 loads image at its size
         int W = max(0,(int)width);
         int H = max(0,(int)height);
@@ -417,8 +433,14 @@ public interface Util {
         }
     }
 
+    /**
+     * Loads image file with requested size in high quality. Result is put into {@link ImageCache},
+     * but never taken from it, as the cached image may be of lower quality.
+     */
     static Image loadImageFull(File file, double width, double height) {
-        return loadImageFull(file, width, height, true);
+        Image i = loadImageFull(file, width, height, true);
+        ImageCache.put(file, i, width, height);
+        return i;
     }
 
     private static Image loadImageFull(File file, double width, double height, boolean thumbLoadedBefore) {
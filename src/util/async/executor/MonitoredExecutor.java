@@ -0,0 +1,89 @@
+package util.async.executor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static util.dev.Util.log;
+
+/**
+ * Executor with fixed number of named daemon threads and an unbounded queue, which measures how
+ * long tasks wait in the queue.
+ * <p/>
+ * Tasks that wait longer than specified threshold are logged as a warning, which makes it
+ * possible to verify latency sensitive tasks are not queued behind long running ones.
+ *
+ * @author Martin Polakovic
+ */
+public class MonitoredExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+    private final long waitWarnThreshold;
+    private final AtomicLong waitTotal = new AtomicLong();
+    private final AtomicLong waitMax = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+
+    /**
+     * @param name name of the executor, used for its threads and in logs
+     * @param threads number of threads
+     * @param priority priority of the threads
+     * @param waitWarnThreshold time in ms a task may wait before warning is logged, -1 for never
+     */
+    public MonitoredExecutor(String name, int threads, int priority, long waitWarnThreshold) {
+        super(threads, threads, 30, SECONDS, new LinkedBlockingQueue<>());
+        this.name = name;
+        this.waitWarnThreshold = waitWarnThreshold;
+        AtomicInteger threadCount = new AtomicInteger();
+        setThreadFactory(r -> {
+            Thread t = new Thread(r);
+            t.setName(threads==1 ? name : name + "-" + threadCount.incrementAndGet());
+            t.setPriority(priority);
+            t.setDaemon(true); // do not prevent application closing
+            return t;
+        });
+        allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable r) {
+        long queued = System.currentTimeMillis();
+        super.execute(() -> {
+            long wait = System.currentTimeMillis()-queued;
+            started.incrementAndGet();
+            waitTotal.addAndGet(wait);
+            waitMax.accumulateAndGet(wait, Math::max);
+            if(waitWarnThreshold>=0 && wait>waitWarnThreshold)
+                log(MonitoredExecutor.class).warn("Task in {} waited {}ms, {} tasks queued", name, wait, getQueue().size());
+            r.run();
+        });
+    }
+
+    /** @return name of the executor */
+    public String getName() {
+        return name;
+    }
+
+    /** @return number of tasks waiting for execution */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /** @return average time in ms tasks waited before their execution started */
+    public double getAverageWait() {
+        long n = started.get();
+        return n==0 ? 0 : waitTotal.get()/(double) n;
+    }
+
+    /** @return maximal time in ms a task waited before its execution started */
+    public long getMaxWait() {
+        return waitMax.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": queued=" + getQueueDepth() + ", active=" + getActiveCount() + ", started=" + started.get() +
+               ", wait avg=" + String.format("%.1f", getAverageWait()) + "ms, wait max=" + getMaxWait() + "ms";
+    }
+}
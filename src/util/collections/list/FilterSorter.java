@@ -0,0 +1,118 @@
+package util.collections.list;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+
+import static util.async.Async.runFX;
+import static util.dev.Util.log;
+
+/**
+ * Applies predicate and comparator to a {@link FilteredList} and {@link SortedList} chain in
+ * background, so the application thread does not block while filtering or sorting large lists.
+ * <p/>
+ * For lists with at least {@link #PARALLEL_THRESHOLD} items, the predicate is tested (and the
+ * comparator sorts) in parallel over a snapshot of the source list. The result is then published
+ * in a single change: the lists receive predicate/comparator that look up the precomputed result,
+ * falling back to the original predicate/comparator for items that are not in the snapshot (e.g.,
+ * added since). A run is cancelled when a newer predicate/comparator is set before it completes.
+ * Smaller lists are filtered and sorted synchronously.
+ * <p/>
+ * The predicate and comparator must be safe to use from any thread.
+ * <p/>
+ * All methods must be called on the application thread.
+ *
+ * @author Martin Polakovic
+ */
+public class FilterSorter<T> {
+
+    /** Minimal size of the source list to filter/sort in background. */
+    public static final int PARALLEL_THRESHOLD = 5000;
+
+    private final ObservableList<T> source;
+    private final FilteredList<T> filtered;
+    private final SortedList<T> sorted;
+    private volatile long filterRun = 0;
+    private volatile long sortRun = 0;
+
+    public FilterSorter(ObservableList<T> source, FilteredList<T> filtered, SortedList<T> sorted) {
+        this.source = source;
+        this.filtered = filtered;
+        this.sorted = sorted;
+    }
+
+    /** Filters the items by the predicate. Null predicate matches all items. */
+    public void setPredicate(Predicate<? super T> predicate) {
+        long run = ++filterRun;
+        if(predicate==null || source.size()<PARALLEL_THRESHOLD) {
+            filtered.setPredicate(predicate);
+            return;
+        }
+
+        List<T> snapshot = new ArrayList<>(source);
+        ForkJoinPool.commonPool().execute(() -> {
+            long start = System.currentTimeMillis();
+            boolean[] matches = new boolean[snapshot.size()];
+            IntStream.range(0, snapshot.size()).parallel().forEach(i -> {
+                if(run==filterRun) matches[i] = predicate.test(snapshot.get(i));
+            });
+            if(run!=filterRun) return;
+
+            Map<T,Boolean> results = new IdentityHashMap<>(snapshot.size());
+            for(int i=0; i<matches.length; i++) results.put(snapshot.get(i), matches[i]);
+            log(FilterSorter.class).debug("Filtered {} items in {}ms", snapshot.size(), System.currentTimeMillis()-start);
+            runFX(() -> {
+                if(run!=filterRun) return;
+                filtered.setPredicate(t -> {
+                    Boolean matched = results.get(t);
+                    return matched==null ? predicate.test(t) : matched;
+                });
+            });
+        });
+    }
+
+    /** Sorts the items by the comparator. Null comparator leaves the items in source order. */
+    public void setComparator(Comparator<? super T> comparator) {
+        long run = ++sortRun;
+        if(comparator==null || source.size()<PARALLEL_THRESHOLD) {
+            sorted.setComparator(comparator);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        T[] snapshot = (T[]) source.toArray();
+        ForkJoinPool.commonPool().execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                // stable, so equal items keep source order just like when sorted by the comparator
+                Arrays.parallelSort(snapshot, (a,b) -> {
+                    if(run!=sortRun) throw new CancellationException();
+                    return comparator.compare(a,b);
+                });
+            } catch(CancellationException e) {
+                return;
+            }
+
+            Map<T,Integer> ranks = new IdentityHashMap<>(snapshot.length);
+            for(int i=0; i<snapshot.length; i++) ranks.putIfAbsent(snapshot[i], i);
+            log(FilterSorter.class).debug("Sorted {} items in {}ms", snapshot.length, System.currentTimeMillis()-start);
+            runFX(() -> {
+                if(run!=sortRun) return;
+                // the ranks order by the comparator and then by source order, so when an item
+                // has no rank, comparator ties are broken by rank, with unranked items last
+                sorted.setComparator((a,b) -> {
+                    Integer ra = ranks.get(a), rb = ranks.get(b);
+                    if(ra!=null && rb!=null) return Integer.compare(ra,rb);
+                    int c = comparator.compare(a,b);
+                    return c!=0 ? c : Integer.compare(ra==null ? Integer.MAX_VALUE : ra, rb==null ? Integer.MAX_VALUE : rb);
+                });
+            });
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package util.demo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measuring harness of the benchmarks in this package.
+ * <p/>
+ * A measurement runs the task once to warm up and then several times, keeping the fastest run,
+ * which is the one least disturbed by compilation, garbage collection or other processes.
+ *
+ * @author Martin Polakovic
+ */
+final class Benchmark {
+
+    /** Default number of measured runs. */
+    static final int RUNS = 5;
+
+    private Benchmark() {}
+
+    /** Equivalent to {@code best(RUNS, task)}. */
+    static Run best(Task task) throws Exception {
+        return best(RUNS, task);
+    }
+
+    /**
+     * @param runs number of measured runs, not counting the warm up run
+     * @param task measured task
+     * @return the fastest run
+     */
+    static Run best(int runs, Task task) throws Exception {
+        task.run();
+        Run best = null;
+        for (int i=0; i<runs; i++) {
+            long allocStart = allocatedBytes();
+            long start = System.nanoTime();
+            task.run();
+            long time = System.nanoTime()-start;
+            long alloc = allocStart<0 ? -1 : allocatedBytes()-allocStart;
+            if (best==null || time<best.nanos) best = new Run(time, alloc);
+        }
+        return best;
+    }
+
+    // bytes allocated so far by all live threads or -1 if not supported
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+        if (!t.isThreadAllocatedMemorySupported() || !t.isThreadAllocatedMemoryEnabled()) return -1;
+        long sum = 0;
+        for (long a : t.getThreadAllocatedBytes(t.getAllThreadIds()))
+            if (a>0) sum += a;
+        return sum;
+    }
+
+    /** Measured run. */
+    static final class Run {
+        /** Duration of the run in ns. */
+        final long nanos;
+        /** Bytes allocated by all threads during the run or -1 if not supported. */
+        final long allocated;
+
+        private Run(long nanos, long allocated) {
+            this.nanos = nanos;
+            this.allocated = allocated;
+        }
+
+        /** @return duration of the run in s */
+        double seconds() {
+            return nanos/1e9;
+        }
+
+        /** @return duration of the run in ms */
+        long millis() {
+            return nanos/1000000;
+        }
+    }
+
+    /** Measured task. */
+    interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,204 @@
+package util.demo;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+
+import audio.playback.player.xtrememp.audio.AudioPlayer;
+import audio.playback.player.xtrememp.audio.Playback;
+import audio.playback.player.xtrememp.audio.PlaybackEvent;
+import audio.playback.player.xtrememp.audio.PlaybackListener;
+import audio.playback.player.xtrememp.audio.ReadAheadBuffer;
+import javazoom.spi.PropertiesContainer;
+import util.demo.Benchmark.Run;
+
+import static util.demo.Benchmark.best;
+
+/**
+ * Measures throughput and allocation rate of the decode/write loop of {@link AudioPlayer#call()}
+ * and compares them with the loop as it was before, i.e., copying the last short read into a new
+ * array and creating a new progress event for every listener and every buffer.
+ * <p/>
+ * The current loop is the actual {@link AudioPlayer#call()}. The loop before is reproduced, but
+ * reads through the same {@link ReadAheadBuffer} as the current one, so the comparison only shows
+ * the difference of the loops, not of the read-ahead.
+ * <p/>
+ * The decoder is simulated by a stream of generated pcm data returning mp3-frame sized reads and
+ * the audio line by a sink consuming the data, so only the overhead of the loop itself is measured.
+ * Allocation is measured over all threads, including the read-ahead decoding thread.
+ *
+ * @author Martin Polakovic
+ */
+public class DecodeLoopBenchmark {
+
+    private static final long STREAM_BYTES = 256L*1024*1024;  // ~25 min of 44.1kHz 16bit stereo
+    private static final int DECODER_READ = 1152*4;           // one mp3 frame of 16bit stereo
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkPlayer p = new BenchmarkPlayer();
+        Run now = best(p::playNow), before = best(p::playBefore);
+        System.out.printf("decode/write loop %8.1f MB/s %8.1f KB alloc/s (before %8.1f MB/s %8.1f KB alloc/s)%n",
+            STREAM_BYTES/1e6/now.seconds(), now.allocated/1e3/now.seconds(),
+            STREAM_BYTES/1e6/before.seconds(), before.allocated/1e3/before.seconds());
+    }
+
+    /** Player playing the simulated decoder into the simulated line. */
+    private static class BenchmarkPlayer extends AudioPlayer {
+
+        BenchmarkPlayer() {
+            addPlaybackListener(new Listener());
+            addPlaybackListener(new Listener());
+        }
+
+        /** Plays the stream to the end by the decode/write loop of {@link #call()}. */
+        void playNow() throws Exception {
+            audioInputStream = new DecodedStream();
+            sourceDataLine = new SinkLine();
+            state = PLAY;
+            call();
+        }
+
+        /** Plays the stream to the end by the decode/write loop as it was before. */
+        void playBefore() throws Exception {
+            audioInputStream = new DecodedStream();
+            sourceDataLine = new SinkLine();
+            int capacity = (int) (FORMAT.getFrameRate()*getReadAheadTime()/1000000)*FORMAT.getFrameSize();
+            ReadAheadBuffer readAhead = new ReadAheadBuffer(audioInputStream, capacity, decodeService);
+            byte[] audioData = new byte[READ_BUFFER_SIZE];
+            int nBytesRead = 0;
+            readAhead.start();
+            while (nBytesRead != -1) {
+                int toRead = READ_BUFFER_SIZE;
+                int totalRead = 0;
+                while (toRead > 0 && (nBytesRead = readAhead.read(audioData, totalRead, toRead)) != -1) {
+                    totalRead += nBytesRead;
+                    toRead -= nBytesRead;
+                }
+                if (totalRead > 0) {
+                    byte[] trimBuffer = audioData;
+                    if (totalRead < trimBuffer.length) {
+                        trimBuffer = new byte[totalRead];
+                        System.arraycopy(audioData, 0, trimBuffer, 0, totalRead);
+                    }
+                    sourceDataLine.write(trimBuffer, 0, totalRead);
+                    dss.writeAudioData(trimBuffer, 0, totalRead);
+                    for (PlaybackListener pl : listeners) {
+                        PlaybackEvent pe = new PlaybackEvent(this, Playback.PLAYING, getPosition() - oldPosition, emptyMap);
+                        pe.setProperties(((PropertiesContainer) audioInputStream).properties());
+                        pl.playbackProgress(pe);
+                    }
+                }
+            }
+            readAhead.stop();
+            closeStream();
+        }
+    }
+
+    /** Decoded pcm stream, returning at most one decoded frame per read, like the mp3 decoder. */
+    private static class DecodedStream extends AudioInputStream implements PropertiesContainer {
+        private final Decoder decoder;
+
+        DecodedStream() {
+            this(new Decoder());
+        }
+
+        private DecodedStream(Decoder decoder) {
+            super(decoder, FORMAT, STREAM_BYTES/FORMAT.getFrameSize());
+            this.decoder = decoder;
+        }
+
+        @Override
+        public Map properties() {
+            return decoder.properties;
+        }
+    }
+
+    /** Decoder producing the pcm data. */
+    private static class Decoder extends InputStream {
+        final Map<String,Object> properties = new HashMap<>();
+        long position = 0;
+
+        Decoder() {
+            properties.put("mp3.bitrate.nominal.bps", 320000);
+        }
+
+        @Override
+        public int read() {
+            if (position>=STREAM_BYTES) return -1;
+            return (int) (position++ & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position>=STREAM_BYTES) return -1;
+            int n = (int) Math.min(Math.min(len, DECODER_READ), STREAM_BYTES-position);
+            for (int i=0; i<n; i++) b[off+i] = (byte) (position+i);
+            position += n;
+            return n;
+        }
+    }
+
+    /** Simulates the audio line, which only reads the data. */
+    private static class SinkLine implements SourceDataLine {
+        @Override
+        public int write(byte[] b, int off, int len) {
+            long s = 0;
+            for (int i=off; i<off+len; i+=64) s += b[i];
+            sink += s;
+            return len;
+        }
+
+        @Override public AudioFormat getFormat() { return FORMAT; }
+        @Override public int getBufferSize() { return 1; }
+        @Override public int available() { return 0; }
+        @Override public void open(AudioFormat format, int bufferSize) {}
+        @Override public void open(AudioFormat format) {}
+        @Override public void open() {}
+        @Override public void close() {}
+        @Override public boolean isOpen() { return true; }
+        @Override public void drain() {}
+        @Override public void flush() {}
+        @Override public void start() {}
+        @Override public void stop() {}
+        @Override public boolean isRunning() { return true; }
+        @Override public boolean isActive() { return true; }
+        @Override public int getFramePosition() { return 0; }
+        @Override public long getLongFramePosition() { return 0; }
+        @Override public long getMicrosecondPosition() { return 0; }
+        @Override public float getLevel() { return AudioSystem.NOT_SPECIFIED; }
+        @Override public Line.Info getLineInfo() { return new DataLine.Info(SourceDataLine.class, FORMAT); }
+        @Override public Control[] getControls() { return new Control[0]; }
+        @Override public boolean isControlSupported(Control.Type control) { return false; }
+        @Override public Control getControl(Control.Type control) { throw new IllegalArgumentException(); }
+        @Override public void addLineListener(LineListener listener) {}
+        @Override public void removeLineListener(LineListener listener) {}
+    }
+
+    /** Simulates a listener handing the event over to another thread, so it escapes. */
+    private static class Listener implements PlaybackListener {
+        volatile PlaybackEvent last;
+
+        @Override
+        public void playbackProgress(PlaybackEvent pe) {
+            last = pe;
+        }
+
+        @Override public void playbackBuffering(PlaybackEvent pe) {}
+        @Override public void playbackOpened(PlaybackEvent pe) {}
+        @Override public void playbackEndOfMedia(PlaybackEvent pe) {}
+        @Override public void playbackPlaying(PlaybackEvent pe) {}
+        @Override public void playbackPaused(PlaybackEvent pe) {}
+        @Override public void playbackStopped(PlaybackEvent pe) {}
+    }
+}
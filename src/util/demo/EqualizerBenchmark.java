@@ -0,0 +1,54 @@
+package util.demo;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import audio.playback.player.xtrememp.audio.EqAudioInputStream;
+
+import static util.demo.Benchmark.best;
+
+/**
+ * Measures throughput of {@link EqAudioInputStream} in samples per second per channel, for common
+ * pcm formats, with all bands boosted and with all bands at 0 dB, i.e., passed through.
+ * <p/>
+ * The audio is generated noise, read through the equalizer into a fixed buffer, as the player
+ * reads decoded data. Real time playback of 44.1kHz stereo needs 44100 samples/s per channel.
+ *
+ * @author Martin Polakovic
+ */
+public class EqualizerBenchmark {
+
+    private static final int SECONDS = 20;
+    private static final int READ_BUFFER_SIZE = 4*1024;
+
+    public static void main(String[] args) throws Exception {
+        print(new AudioFormat(44100, 16, 2, true, false));
+        print(new AudioFormat(48000, 16, 2, true, false));
+        print(new AudioFormat(96000, 24, 2, true, false));
+        print(new AudioFormat(44100, 16, 6, true, true));
+    }
+
+    private static void print(AudioFormat format) throws Exception {
+        byte[] data = new byte[(int) (SECONDS*format.getSampleRate())*format.getFrameSize()];
+        new Random(0).nextBytes(data);
+        long frames = data.length/format.getFrameSize();
+        double eq = frames/best(() -> read(format, data, 6)).seconds();
+        double bypass = frames/best(() -> read(format, data, 0)).seconds();
+        System.out.printf("%6.0fHz %2dbit %dch: %7.2f M samples/s per channel (bypass %7.2f M, real time %.3f M)%n",
+            format.getSampleRate(), format.getSampleSizeInBits(), format.getChannels(),
+            eq/1e6, bypass/1e6, format.getSampleRate()/1e6);
+    }
+
+    private static void read(AudioFormat format, byte[] data, int gain) throws Exception {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        AudioInputStream source = new AudioInputStream(new ByteArrayInputStream(data), format, data.length/format.getFrameSize());
+        try (EqAudioInputStream eq = new EqAudioInputStream(source)) {
+            for (int band=0; band<EqAudioInputStream.BAND_COUNT; band++)
+                eq.setGain(band, gain);
+            while (eq.read(buffer, 0, buffer.length)!=-1) {}
+        }
+    }
+}
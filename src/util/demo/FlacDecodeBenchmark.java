@@ -0,0 +1,235 @@
+package util.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.kc7bfi.jflac.FLACDecoder;
+import org.kc7bfi.jflac.PCMProcessor;
+import org.kc7bfi.jflac.metadata.StreamInfo;
+import org.kc7bfi.jflac.util.ByteData;
+
+import static util.demo.Benchmark.best;
+
+/**
+ * Measures decoding throughput of the jflac decoder used by the flac audio SPI, over a corpus of
+ * generated flac streams: tonal and noisy 16 bit stereo at 44.1kHz and tonal 24 bit stereo at
+ * 96kHz. Tonal audio yields small residuals, i.e., short rice codes, noise yields long ones. The
+ * noise is also stored verbatim, as encoders do with audio they can not compress, which is decoded
+ * by raw reads of {@link org.kc7bfi.jflac.io.BitInputStream} only.
+ * <p/>
+ * The decoder is taken from the classpath. To compare the bit reader of
+ * extra/projects/xtrememp-audio-spi-flac with the one in the bundled jar, run once with the compiled
+ * project classes placed before the jar on the classpath and once without them.
+ * <p/>
+ * The streams are encoded by a minimal encoder below (fixed predictor or verbatim, single rice
+ * partition), so they are valid flac, but larger than what a real encoder produces. Every stream is
+ * decoded and checked for sample count and bad frames before it is measured.
+ *
+ * @author Martin Polakovic
+ */
+public class FlacDecodeBenchmark {
+
+    private static final int SECONDS = 60;
+    private static final int BLOCK_SIZE = 4096;
+
+    public static void main(String[] args) throws Exception {
+        print("44.1kHz 16bit tonal", encode(44100, 16, 2, tonal(44100, 16), false));
+        print("44.1kHz 16bit noise", encode(44100, 16, 2, noise(16), false));
+        print("44.1kHz 16bit raw", encode(44100, 16, 2, noise(16), true));
+        print("96kHz   24bit tonal", encode(96000, 24, 2, tonal(96000, 24), false));
+    }
+
+    private static void print(String name, Stream s) throws Exception {
+        Counter c = decode(s.data);
+        if (c.samples!=s.samples || c.badFrames!=0)
+            throw new AssertionError(name + ": decoded " + c.samples + "/" + s.samples + " samples, bad frames: " + c.badFrames);
+
+        double time = best(() -> decode(s.data)).seconds();
+        System.out.printf("%-20s %5d kB: %7.1f MB/s flac, %6.1fx real time%n",
+            name, s.data.length/1024, s.data.length/1e6/time, SECONDS/time);
+    }
+
+    private static Counter decode(byte[] data) throws Exception {
+        Counter c = new Counter();
+        FLACDecoder decoder = new FLACDecoder(new ByteArrayInputStream(data));
+        decoder.addPCMProcessor(c);
+        decoder.decode();
+        c.badFrames = decoder.getBadFrames();
+        return c;
+    }
+
+    /** Sum of two sines with a little noise, in the given sample size. */
+    private static Signal tonal(int sampleRate, int bits) {
+        Random r = new Random(0);
+        double amplitude = (1 << (bits-1)) * 0.4;
+        return (channel, i) -> (int) (amplitude*(Math.sin(2*Math.PI*(220+110*channel)*i/sampleRate)
+            + 0.5*Math.sin(2*Math.PI*1234.5*i/sampleRate)) + r.nextGaussian()*(1 << (bits-12)));
+    }
+
+    /** White noise at a quarter of full scale. */
+    private static Signal noise(int bits) {
+        Random r = new Random(0);
+        int amplitude = 1 << (bits-3);
+        return (channel, i) -> r.nextInt(2*amplitude) - amplitude;
+    }
+
+    private static Stream encode(int sampleRate, int bits, int channels, Signal signal, boolean verbatim) {
+        long samples = (long) SECONDS*sampleRate/BLOCK_SIZE*BLOCK_SIZE;
+        BitWriter w = new BitWriter();
+        w.bytes("fLaC".getBytes());
+        // STREAMINFO, the last metadata block
+        w.bits(1, 1); w.bits(0, 7); w.bits(34, 24);
+        w.bits(BLOCK_SIZE, 16); w.bits(BLOCK_SIZE, 16);
+        w.bits(0, 24); w.bits(0, 24);     // frame sizes unknown
+        w.bits(sampleRate, 20); w.bits(channels-1, 3); w.bits(bits-1, 5);
+        w.bits(samples >>> 32, 4); w.bits(samples, 32);
+        w.bytes(new byte[16]);              // md5 unknown
+
+        int[][] block = new int[channels][BLOCK_SIZE];
+        for (long frame=0; frame*BLOCK_SIZE<samples; frame++) {
+            for (int ch=0; ch<channels; ch++)
+                for (int i=0; i<BLOCK_SIZE; i++)
+                    block[ch][i] = signal.sample(ch, frame*BLOCK_SIZE + i);
+            encodeFrame(w, frame, sampleRate, bits, block, verbatim);
+        }
+        return new Stream(w.toByteArray(), samples);
+    }
+
+    private static void encodeFrame(BitWriter w, long frame, int sampleRate, int bits, int[][] block, boolean verbatim) {
+        w.resetCrc();
+        w.bits(0x3FFE, 14); w.bits(0, 1); w.bits(0, 1);
+        w.bits(12, 4);                                       // 4096 samples
+        w.bits(sampleRate==96000 ? 11 : 9, 4);               // 96kHz or 44.1kHz
+        w.bits(block.length-1, 4);                           // independent channels
+        w.bits(bits==24 ? 6 : 4, 3); w.bits(0, 1);           // 24 or 16 bit
+        w.utf8(frame);
+        w.bits(w.crc8(), 8);
+
+        int order = 2;
+        for (int[] samples : block) {
+            if (verbatim) {
+                w.bits(0, 1); w.bits(1, 6); w.bits(0, 1);
+                for (int sample : samples) w.bits(sample, bits);
+                continue;
+            }
+            w.bits(0, 1); w.bits(8 + order, 6); w.bits(0, 1);   // fixed predictor, no wasted bits
+            for (int i=0; i<order; i++) w.bits(samples[i], bits);
+            long sum = 0;
+            int[] residual = new int[samples.length];
+            for (int i=order; i<samples.length; i++) {
+                int r = samples[i] - (2*samples[i-1] - samples[i-2]);
+                residual[i] = (r << 1) ^ (r >> 31);
+                sum += residual[i];
+            }
+            int k = 0;
+            while (k<14 && (samples.length << (k+1)) < sum) k++;
+            w.bits(0, 2); w.bits(0, 4); w.bits(k, 4);        // rice, single partition
+            for (int i=order; i<samples.length; i++) {
+                int u = residual[i];
+                for (int q=u >>> k; q>0; q--) w.bits(0, 1);
+                w.bits(1, 1);
+                w.bits(u, k);
+            }
+        }
+        w.align();
+        w.bits(w.crc16(), 16);
+    }
+
+    private interface Signal {
+        int sample(int channel, long index);
+    }
+
+    private static class Stream {
+        final byte[] data;
+        final long samples;
+
+        Stream(byte[] data, long samples) {
+            this.data = data;
+            this.samples = samples;
+        }
+    }
+
+    private static class Counter implements PCMProcessor {
+        int channels, bytesPerSample;
+        long samples;
+        int badFrames;
+
+        @Override
+        public void processStreamInfo(StreamInfo info) {
+            channels = info.getChannels();
+            bytesPerSample = (info.getBitsPerSample() + 7)/8;
+        }
+
+        @Override
+        public void processPCM(ByteData pcm) {
+            samples += pcm.getLen()/channels/bytesPerSample;
+        }
+    }
+
+    /** Big endian bit writer. */
+    private static class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private long acc;
+        private int accBits;
+        private int crc8;
+        private int crc16;
+
+        void bits(long value, int count) {
+            for (int i=count-1; i>=0; i--) {
+                acc = (acc << 1) | ((value >>> i) & 1);
+                if (++accBits==8) {
+                    out.write((int) acc);
+                    updateCrc((int) acc);
+                    acc = accBits = 0;
+                }
+            }
+        }
+
+        void bytes(byte[] bytes) {
+            for (byte b : bytes) bits(b, 8);
+        }
+
+        void utf8(long v) {
+            if (v<0x80) { bits(v, 8); return; }
+            int n = 2;
+            while (v >= 1L << (5*n + 1)) n++;
+            bits((0xFF00 >> n) & 0xFF | (v >>> 6*(n-1)), 8);
+            for (int i=n-2; i>=0; i--) bits(0x80 | ((v >>> 6*i) & 0x3F), 8);
+        }
+
+        void align() {
+            while (accBits!=0) bits(0, 1);
+        }
+
+        /** Starts computing crc of the following bytes. */
+        void resetCrc() {
+            crc8 = 0;
+            crc16 = 0;
+        }
+
+        int crc8() {
+            return crc8;
+        }
+
+        int crc16() {
+            return crc16;
+        }
+
+        // crc-8 with polynomial x^8+x^2+x+1 and crc-16 with polynomial x^16+x^15+x^2+1, as flac uses
+        private void updateCrc(int b) {
+            crc8 ^= b;
+            crc16 ^= b << 8;
+            for (int i=0; i<8; i++) {
+                crc8 = (crc8 & 0x80)!=0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000)!=0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            crc8 &= 0xFF;
+            crc16 &= 0xFFFF;
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
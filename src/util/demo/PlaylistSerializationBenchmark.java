@@ -0,0 +1,71 @@
+package util.demo;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+
+import javafx.collections.ObservableListBase;
+
+import com.sun.javafx.collections.ObservableListWrapper;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+
+import audio.playlist.Playlist;
+import audio.playlist.PlaylistItem;
+import main.AppSerializer;
+import util.serialize.xstream.PlaylistItemConverter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static util.demo.Benchmark.best;
+
+/**
+ * Measures time of saving and loading playlists of 10k and 100k items with the streaming
+ * serializer used for playlist files and compares it with DOM based serialization used before.
+ *
+ * @author Martin Polakovic
+ */
+public class PlaylistSerializationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        AppSerializer serializer = new AppSerializer(UTF_8);
+        configure(serializer.x);
+        XStream dom = new XStream(new DomDriver(UTF_8.name()));
+        configure(dom);
+
+        for (int size : new int[]{10000, 100000}) {
+            Playlist p = playlist(size);
+            File f = File.createTempFile("playlist-benchmark", ".xml");
+            f.deleteOnExit();
+
+            long save = best(3, () -> serializer.toXML(p, f)).millis();
+            long load = best(3, () -> serializer.fromXML(Playlist.class, f)).millis();
+            long saveDom = best(3, () -> {
+                try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), UTF_8))) {
+                    dom.toXML(p, w);
+                }
+            }).millis();
+            long loadDom = best(3, () -> dom.fromXML(f)).millis();
+
+            System.out.printf("%7d items (%5d kB): save %5dms (dom %5dms), load %5dms (dom %5dms)%n",
+                size, f.length()/1024, save, saveDom, load, loadDom);
+        }
+    }
+
+    // same as the configuration of the serializer of playlist files, see Playlist.serializeToFile()
+    private static void configure(XStream x) {
+        x.registerConverter(new PlaylistItemConverter());
+        x.omitField(ObservableListBase.class, "listenerHelper");
+        x.omitField(ObservableListBase.class, "changeBuilder");
+        x.omitField(ObservableListWrapper.class, "elementObserver");
+    }
+
+    private static Playlist playlist(int size) {
+        Playlist p = new Playlist();
+        for (int i=0; i<size; i++)
+            p.add(new PlaylistItem(URI.create("file:///music/artist%20" + i%100 + "/album/track%20" + i + ".mp3"), "Artist " + i%100, "Title " + i, 180000+i));
+        return p;
+    }
+}
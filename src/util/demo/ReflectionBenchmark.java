@@ -0,0 +1,103 @@
+package util.demo;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.time.DayOfWeek;
+
+import util.demo.Benchmark.Task;
+import util.units.FileSize;
+
+import static util.demo.Benchmark.best;
+import static util.parsing.Parser.DEFAULT;
+import static util.type.Util.getFieldValue;
+import static util.type.Util.invokeMethodP0;
+import static util.type.Util.invokeMethodP1;
+import static util.type.Util.setField;
+
+/**
+ * Measures time of {@link util.parsing.Parser#DEFAULT} to/from string conversions of types with
+ * parsers built by reflection and of the reflection methods of {@link util.type.Util}, and compares
+ * them with plain core reflection, i.e., looking up and invoking the members on every call, as done
+ * before.
+ *
+ * @author Martin Polakovic
+ */
+public class ReflectionBenchmark {
+
+    private static final int OPS = 1000000;
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        Constructor<FileSize> fileSize = FileSize.class.getConstructor(String.class);
+        Method dayOfWeek = DayOfWeek.class.getMethod("valueOf", String.class);
+        Method toString = FileSize.class.getMethod("toString");
+        FileSize size = new FileSize("1048576");
+
+        print("fromS FileSize (constructor)",
+            () -> sink = DEFAULT.fromS(FileSize.class, "1048576"),
+            () -> sink = fileSize.newInstance("1048576"));
+        print("fromS DayOfWeek (valueOf)",
+            () -> sink = DEFAULT.fromS(DayOfWeek.class, "FRIDAY"),
+            () -> sink = dayOfWeek.invoke(null, "FRIDAY"));
+        print("toS FileSize",
+            () -> sink = DEFAULT.toS(size),
+            () -> sink = toString.invoke(size));
+
+        Sample s = new Sample();
+        print("getFieldValue",
+            () -> sink = getFieldValue(s, Integer.class, "value"),
+            () -> {
+                Field f = Sample.class.getDeclaredField("value");
+                f.setAccessible(true);
+                sink = f.get(s);
+                f.setAccessible(false);
+            });
+        print("setField",
+            () -> setField(s, "value", 1),
+            () -> {
+                Field f = Sample.class.getDeclaredField("value");
+                f.setAccessible(true);
+                f.set(s, 1);
+                f.setAccessible(false);
+            });
+        print("invokeMethodP0",
+            () -> sink = invokeMethodP0(Sample.class, s, "get"),
+            () -> {
+                Method m = Sample.class.getDeclaredMethod("get");
+                m.setAccessible(true);
+                sink = m.invoke(s);
+                m.setAccessible(false);
+            });
+        print("invokeMethodP1",
+            () -> sink = invokeMethodP1(Sample.class, s, "add", Integer.class, 1),
+            () -> {
+                Method m = Sample.class.getDeclaredMethod("add", Integer.class);
+                m.setAccessible(true);
+                sink = m.invoke(s, 1);
+                m.setAccessible(false);
+            });
+    }
+
+    private static void print(String name, Task now, Task before) throws Exception {
+        System.out.printf("%-30s %7.1f ns/op (core reflection %7.1f ns/op)%n", name, nsPerOp(now), nsPerOp(before));
+    }
+
+    private static double nsPerOp(Task task) throws Exception {
+        return best(() -> {
+            for (int j=0; j<OPS; j++) task.run();
+        }).nanos/(double) OPS;
+    }
+
+    private static class Sample {
+        private Integer value = 0;
+
+        private Integer get() {
+            return value;
+        }
+
+        private Integer add(Integer i) {
+            return value + i;
+        }
+    }
+}
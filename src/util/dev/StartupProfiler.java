@@ -0,0 +1,180 @@
+package util.dev;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static util.dev.Util.log;
+
+/**
+ * Records timeline of named, possibly nested, phases of the application startup.
+ * <p/>
+ * A phase is started by {@link #phase(String)} and ends when closed, which makes it usable in
+ * try-with-resources block. Phases started on a thread while another phase of the same thread is
+ * running are nested within it. Phases can be recorded from any thread.
+ * <p/>
+ * The recorded timeline can be obtained any time by {@link #dump()}. If system property
+ * {@value #JFR_PROPERTY} is true, every phase is also committed as Java Flight Recorder event, so
+ * it shows in the recording alongside other events, e.g., garbage collection or class loading.
+ * The jdk.jfr api is only available since java 11, so it is used through reflection and the events
+ * are disabled when it is not present.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+public final class StartupProfiler {
+
+    /** Name of the system property which enables Java Flight Recorder events. */
+    public static final String JFR_PROPERTY = "startup.profiler.jfr";
+
+    private static final long START = System.nanoTime();
+    private static final List<Phase> phases = new ArrayList<>();
+    private static final ThreadLocal<Deque<Phase>> running = ThreadLocal.withInitial(ArrayDeque::new);
+    private static boolean jfr = Boolean.getBoolean(JFR_PROPERTY);
+
+    private StartupProfiler() {}
+
+    /**
+     * Starts phase of given name.
+     *
+     * @param name name of the phase
+     * @return the started phase, which must be closed when the phase ends
+     */
+    public static Phase phase(String name) {
+        Deque<Phase> stack = running.get();
+        Phase p = new Phase(name, stack.size(), Thread.currentThread().getName());
+        stack.push(p);
+        synchronized (phases) {
+            phases.add(p);
+        }
+        return p;
+    }
+
+    /** Runs the action as a phase of given name. */
+    public static void phase(String name, Runnable action) {
+        try (Phase p = phase(name)) {
+            action.run();
+        }
+    }
+
+    /**
+     * Returns the recorded timeline as text, phase per line in the order the phases started. Every
+     * line contains start and duration of the phase in ms and the thread it executed on. Nested
+     * phases are indented. Phases that have not ended yet have no duration.
+     */
+    public static String dump() {
+        List<Phase> ps;
+        synchronized (phases) {
+            ps = new ArrayList<>(phases);
+        }
+        StringBuilder s = new StringBuilder("Startup timeline (start ms, duration ms, phase, thread):");
+        for (Phase p : ps) {
+            long end = p.end;
+            s.append(String.format("%n%9.1f %9s  ", ms(p.start-START), end<0 ? "-" : String.format("%.1f", ms(end-p.start))));
+            for (int i=0; i<p.depth; i++) s.append("  ");
+            s.append(p.name).append("  [").append(p.thread).append("]");
+        }
+        return s.toString();
+    }
+
+    private static double ms(long nanos) {
+        return nanos/1000000d;
+    }
+
+    // returns started jfr event of the phase or null if disabled or unavailable
+    private static Object beginJfr(String name, int depth) {
+        if (!jfr) return null;
+        try {
+            Object e = Jfr.NEW_EVENT.invoke(Jfr.FACTORY);
+            Jfr.SET.invoke(e, 0, name);
+            Jfr.SET.invoke(e, 1, depth);
+            Jfr.BEGIN.invoke(e);
+            return e;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // the java runtime does not provide the jdk.jfr api
+            jfr = false;
+            log(StartupProfiler.class).warn("Java Flight Recorder events not available", e);
+            return null;
+        }
+    }
+
+    private static void commitJfr(Object event) {
+        try {
+            Jfr.COMMIT.invoke(event);
+        } catch (ReflectiveOperationException e) {
+            log(StartupProfiler.class).warn("Committing Java Flight Recorder event failed", e);
+        }
+    }
+
+    /**
+     * Factory of the jfr events of the phases, defined at runtime by jdk.jfr.EventFactory. Loaded
+     * on first use, which fails with {@link ExceptionInInitializerError} if the api is missing.
+     */
+    private static final class Jfr {
+        static final Object FACTORY;
+        static final Method NEW_EVENT, SET, BEGIN, COMMIT;
+
+        static {
+            try {
+                Class<?> annotationType = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> fieldType = Class.forName("jdk.jfr.ValueDescriptor");
+                Class<?> factoryType = Class.forName("jdk.jfr.EventFactory");
+                Class<?> eventType = Class.forName("jdk.jfr.Event");
+                Class<?> name = Class.forName("jdk.jfr.Name");
+                Class<?> label = Class.forName("jdk.jfr.Label");
+                Class<?> category = Class.forName("jdk.jfr.Category");
+                Constructor<?> annotation = annotationType.getConstructor(Class.class, Object.class);
+                Constructor<?> field = fieldType.getConstructor(Class.class, String.class, List.class);
+
+                List<Object> annotations = asList(
+                    annotation.newInstance(name, "app.StartupPhase"),
+                    annotation.newInstance(label, "Startup Phase"),
+                    annotation.newInstance(category, new String[]{"Application"})
+                );
+                List<Object> fields = asList(
+                    field.newInstance(String.class, "phase", singletonList(annotation.newInstance(label, "Phase"))),
+                    field.newInstance(int.class, "depth", singletonList(annotation.newInstance(label, "Depth")))
+                );
+                FACTORY = factoryType.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+                NEW_EVENT = factoryType.getMethod("newEvent");
+                SET = eventType.getMethod("set", int.class, Object.class);
+                BEGIN = eventType.getMethod("begin");
+                COMMIT = eventType.getMethod("commit");
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    /** Phase of the startup. Ends when closed. */
+    public static final class Phase implements AutoCloseable {
+        private final String name;
+        private final int depth;
+        private final String thread;
+        private final Object jfrEvent;
+        private final long start = System.nanoTime();
+        private volatile long end = -1;
+
+        private Phase(String name, int depth, String thread) {
+            this.name = name;
+            this.depth = depth;
+            this.thread = thread;
+            this.jfrEvent = beginJfr(name, depth);
+        }
+
+        /** Ends this phase. Must be called on the thread that started it. Subsequent calls have no effect. */
+        @Override
+        public void close() {
+            if (end>=0) return;
+            end = System.nanoTime();
+            running.get().remove(this);
+            if (jfrEvent!=null) commitJfr(jfrEvent);
+        }
+    }
+}
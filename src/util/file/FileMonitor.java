@@ -14,25 +14,36 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchEvent.Kind;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
-import util.async.executor.EventReducer;
-import util.collections.Tuple2;
 import util.dev.TODO;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static util.async.Async.runFX;
-import static util.async.Async.runNew;
-import static util.collections.Tuples.tuple;
+import static util.async.Async.threadFactory;
 import static util.dev.TODO.Purpose.DOCUMENTATION;
 import static util.dev.Util.log;
 
 /**
+ * Monitors a directory for changes of its files.
+ * <p/>
+ * All monitors share single watch service and single thread waiting for its events, which are
+ * then dispatched to the monitors on single dispatcher thread. Number of threads and system watch
+ * handles does not depend on the number of monitors. Monitors of the same directory share its
+ * registration.
  *
  * @author Martin Polakovic
  */
@@ -57,14 +68,20 @@ public class FileMonitor {
       *    be thrown for any direct child or
       */
 
+    /** Time in ms since the last modification event of a file after which the event is emitted. */
+    private static final long MODIFY_DEBOUNCE = 50;
+    private static WatchService watchService;
+    private static final Map<WatchKey,List<FileMonitor>> monitors = new HashMap<>();
+    private static final ScheduledExecutorService dispatcher = newSingleThreadScheduledExecutor(threadFactory("file-monitor-dispatcher", true));
+
     private File monitoredFileDir;
-    private WatchService watchService;
     private Predicate<File> filter;
     private BiConsumer<Kind<Path>,File> action;
     private boolean isFile;
     private String name; // purely for logging "Directory" or "File"
-
-    EventReducer<Tuple2<Kind<Path>,File>> modificationReducer = EventReducer.toLast(50, e -> emitEvent(e._1,e._2));
+    private WatchKey key;
+    private volatile boolean stopped = false;
+    private final Map<File,ScheduledFuture<?>> modifications = new HashMap<>(); // accessed on dispatcher thread only
 
     private void emitEvent(Kind<Path> type, File file) {
         // This works as it should.
@@ -72,7 +89,9 @@ public class FileMonitor {
         // log(FileMonitor.class).info("{} event {} on {}", name,type,file);
 
         // always run on fx thread
-        runFX(() -> action.accept(type,file));
+        runFX(() -> {
+            if(!stopped) action.accept(type,file);
+        });
     }
 
     /**
@@ -104,63 +123,13 @@ public class FileMonitor {
      * @return directory monitor
      */
     public static FileMonitor monitorDirsFiles(File monitoredDir, Predicate<File> filter, BiConsumer<Kind<Path>,File> handler) {
-
         FileMonitor fm = new FileMonitor();
         fm.monitoredFileDir = monitoredDir;
         fm.filter = filter;
         fm.action = handler;
         fm.isFile = true;
         fm.name = fm.isFile ? "File" : "Directory";
-
-        Path dir = fm.monitoredFileDir.toPath();
-        try {
-            fm.watchService = FileSystems.getDefault().newWatchService();
-            dir.register(fm.watchService, ENTRY_CREATE,ENTRY_DELETE,ENTRY_MODIFY,OVERFLOW);
-            runNew(() -> {
-                // The check requires I/O so lets do that on bgr thread as well
-//                if(!monitoredDir.isDirectory()) throw new IllegalArgumentException("File not a directory or does not exist.");
-
-                boolean valid;
-                WatchKey watchKey;
-                do {
-                    try {
-                        watchKey = fm.watchService.take();
-                    } catch (InterruptedException e) {
-                        log(FileMonitor.class).error("Interrupted monitoring of directory {}", dir,e);
-                        return;
-                    } catch (ClosedWatchServiceException e) {
-                        // watching ended
-                        return;
-                    }
-
-                    for (WatchEvent<?> event : watchKey.pollEvents()) {
-                        Kind<?> type = event.kind();
-
-                        if (type==OVERFLOW) continue;
-
-                        WatchEvent<Path> ev = (WatchEvent<Path>) event;
-                        String modifiedFileName = ev.context().toString();
-                        File modifiedFile = new File(fm.monitoredFileDir, modifiedFileName);
-
-//                        if(modifiedFile.getParentFile().equals(fm.monitoredFileDir)) // to do
-                        if(fm.filter.test(modifiedFile)) {
-                            if(type==ENTRY_MODIFY) {
-                                runFX(() ->
-                                    fm.modificationReducer.push(tuple((Kind)type, modifiedFile))
-                                );
-                            } else {
-                                fm.emitEvent((Kind)type, modifiedFile);
-                            }
-                        }
-                    }
-
-                    valid = watchKey.reset();
-                } while (valid);
-            });
-        } catch (IOException e) {
-            log(FileMonitor.class).error("Error when starting file monitoring {}", fm.monitoredFileDir,e);
-        }
-
+        fm.start();
         return fm;
     }
 
@@ -168,57 +137,98 @@ public class FileMonitor {
     public static FileMonitor monitorDirectory(File toMonitor, BiConsumer<Kind<Path>,File> handler) {
         FileMonitor fm = new FileMonitor();
         fm.monitoredFileDir = toMonitor;
+        fm.filter = file -> true;
         fm.action = handler;
         fm.isFile = false;
         fm.name = fm.isFile ? "File" : "Directory";
+        fm.start();
+        return fm;
+    }
 
-        Path dir = fm.monitoredFileDir.toPath();
+    private void start() {
         try {
-            fm.watchService = FileSystems.getDefault().newWatchService();
-            dir.register(fm.watchService, ENTRY_CREATE,ENTRY_DELETE,ENTRY_MODIFY,OVERFLOW);
-            runNew(() -> {
-                // The check requires I/O so lets do that on bgr thread as well
-//                if(!toMonitor.isDirectory()) throw new IllegalArgumentException("File not a directory or does not exist.");
-
-                boolean valid = true;
-                WatchKey watchKey;
-                do {
-                    try {
-                        watchKey = fm.watchService.take();
-                    } catch (InterruptedException e) {
-                        log(FileMonitor.class).error("Interrupted monitoring of directory {}", dir,e);
-                        return;
-                    } catch (ClosedWatchServiceException e) {
-                        // watching ended
-                        return;
-                    }
-
-                    for (WatchEvent<?> event : watchKey.pollEvents()) {
-                        Kind<?> type = event.kind();
-                        if (type!=OVERFLOW) {
-                            WatchEvent<Path> ev = (WatchEvent<Path>) event;
-                            String modifiedFileName = ev.context().toString();
-                            File modifiedFile = new File(fm.monitoredFileDir, modifiedFileName);
-
-                            fm.emitEvent((Kind)type, modifiedFile);
-                        }
-                    }
-
-                    valid = watchKey.reset();
-                } while (valid);
-            });
+            synchronized(FileMonitor.class) {
+                if(watchService==null) {
+                    watchService = FileSystems.getDefault().newWatchService();
+                    Thread t = new Thread(FileMonitor::watch, "file-monitor");
+                    t.setDaemon(true);
+                    t.start();
+                }
+                key = monitoredFileDir.toPath().register(watchService, ENTRY_CREATE,ENTRY_DELETE,ENTRY_MODIFY,OVERFLOW);
+                monitors.computeIfAbsent(key, k -> new ArrayList<>()).add(this);
+            }
         } catch (IOException e) {
-            log(FileMonitor.class).error("Error when starting directory monitoring {}", fm.monitoredFileDir,e);
+            log(FileMonitor.class).error("Error when starting {} monitoring {}", name.toLowerCase(), monitoredFileDir,e);
         }
+    }
 
-        return fm;
+    // waits for events of all monitored directories, runs on the watching thread
+    private static void watch() {
+        while(true) {
+            WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException e) {
+                log(FileMonitor.class).error("Interrupted file monitoring", e);
+                return;
+            } catch (ClosedWatchServiceException e) {
+                // watching ended
+                return;
+            }
+
+            List<WatchEvent<?>> events = watchKey.pollEvents();
+            boolean valid = watchKey.reset();
+            List<FileMonitor> fms;
+            synchronized(FileMonitor.class) {
+                // invalid key, e.g., directory no longer exists, will not receive events anymore
+                List<FileMonitor> registered = valid ? monitors.get(watchKey) : monitors.remove(watchKey);
+                fms = registered==null ? null : new ArrayList<>(registered);
+            }
+            if(fms!=null && !events.isEmpty())
+                dispatcher.execute(() -> fms.forEach(fm -> fm.dispatch(events)));
+        }
+    }
+
+    // runs on dispatcher thread
+    @SuppressWarnings("unchecked")
+    private void dispatch(List<WatchEvent<?>> events) {
+        if(stopped) return;
+        for (WatchEvent<?> event : events) {
+            Kind<?> type = event.kind();
+            if (type==OVERFLOW) continue;
+
+            WatchEvent<Path> ev = (WatchEvent<Path>) event;
+            String modifiedFileName = ev.context().toString();
+            File modifiedFile = new File(monitoredFileDir, modifiedFileName);
+
+            if(filter.test(modifiedFile)) {
+                if(type==ENTRY_MODIFY) {
+                    // emit only the last of a burst of modifications of the same file
+                    ScheduledFuture<?> f = modifications.remove(modifiedFile);
+                    if(f!=null) f.cancel(false);
+                    modifications.put(modifiedFile, dispatcher.schedule(() -> {
+                        modifications.remove(modifiedFile);
+                        emitEvent(ENTRY_MODIFY, modifiedFile);
+                    }, MODIFY_DEBOUNCE, MILLISECONDS));
+                } else {
+                    emitEvent((Kind) type, modifiedFile);
+                }
+            }
+        }
     }
 
     public void stop() {
-        try {
-            if(watchService!=null) watchService.close();
-        } catch (IOException e) {
-            log(FileMonitor.class).error("Error when closing file monitoring {}", monitoredFileDir, e);
+        stopped = true;
+        synchronized(FileMonitor.class) {
+            List<FileMonitor> fms = key==null ? null : monitors.get(key);
+            if(fms!=null) {
+                fms.remove(this);
+                // last monitor of the directory, stop watching it
+                if(fms.isEmpty()) {
+                    monitors.remove(key);
+                    key.cancel();
+                }
+            }
         }
     }
 }
@@ -1,6 +1,9 @@
 package util.parsing;
 
 import java.io.File;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.InvocationTargetException;
@@ -42,6 +45,11 @@ import util.parsing.StringParseStrategy.From;
 import util.parsing.StringParseStrategy.To;
 
 import static java.lang.Double.parseDouble;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.permuteArguments;
+import static java.lang.invoke.MethodType.genericMethodType;
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.joining;
 import static javafx.scene.text.FontPosture.ITALIC;
 import static javafx.scene.text.FontPosture.REGULAR;
@@ -105,6 +113,7 @@ public abstract class Parser {
     private static final String DELIMITER_CONFIG_VALUE = "-";
     private static final String DELIMITER_CONFIG_NAME = ":";
     private static final String CONSTANT_NULL = "<NULL>";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
 
     /** Default to string parser, which calls objects toString() or returns null constant. */
     public static final Function<Object,String> DEFAULT_TOS = o -> o==null ? CONSTANT_NULL : o.toString();
@@ -365,16 +374,19 @@ public abstract class Parser {
                 throw new IllegalArgumentException("Failed to create from string converter. Class '"+ t +"'s parsing strategy forbids parsing from string.");
             } else if (strategy==From.ANNOTATED_METHOD) {
                 Invokable<T,Object> invokableAny = null;  // in class T returns ?
+                Executable member = null;
 
                 if(invokableAny==null) {
                     Constructor<T> c = getConstructorAnnotated(t, ParsesFromString.class);
                     if(c!=null) invokableAny = (Invokable) TypeToken.of(t).constructor(c);
+                    member = c;
                 }
 
                 if(invokableAny==null) {
                     Method m = getMethodAnnotated(t, ParsesFromString.class);
                     if(m!=null) invokableAny = TypeToken.of(t).method(m);
                     if(!invokableAny.isStatic()) invokableAny = null;
+                    member = m;
                 }
 
                 if(invokableAny==null)
@@ -383,7 +395,7 @@ public abstract class Parser {
                     throw new IllegalArgumentException("Failed to create from string converter. Responsible method returns bad type");
 
                 Invokable<T,T> invokable = invokableAny.returning(t); // in class T returns T
-                fromS = parserOfI(invokable, String.class, t, a, ParseDir.FROMS);
+                fromS = parserOfI(invokable, member, String.class, t, a, ParseDir.FROMS);
             } else if (strategy==From.FX) {
                 fromS = text -> FX.fromS(t, text);
             } else {
@@ -420,21 +432,21 @@ public abstract class Parser {
                 if(m==null || m.getReturnType()!=String.class || m.getParameterCount()>1 || (m.getParameterCount()==1 && !m.getParameterTypes()[0].isAssignableFrom(c)))
                     throw new IllegalArgumentException("Failed to create to string converter. Class not parsable to string, because suitable method was not found: " + m);
                 boolean pass_params = m.getParameterCount()==1;
-                Function<T,String> f = pass_params
-                    ? in -> {
-                        try {
-                            return (String) m.invoke(in,in);
-                        } catch( IllegalAccessException | InvocationTargetException e ) {
-                            throw new RuntimeException("Parser cant invoke the method: " + m, e.getCause());
-                        }
-                    }
-                    : in -> {
-                        try {
-                            return (String) m.invoke(in);
-                        } catch( IllegalAccessException | InvocationTargetException e ) {
-                            throw new RuntimeException("Parser cant invoke the method: " + m, e.getCause());
-                        }
-                    };
+                boolean is_static = Modifier.isStatic(m.getModifiers());
+                MethodHandle h = handleOf(m);
+                Invoker invoker;
+                if(is_static==pass_params) {
+                    // method(in) or in.method()
+                    invoker = link(m, h);
+                } else if(pass_params) {
+                    // in.method(in)
+                    h = h.asType(methodType(Object.class, Object.class, Object.class));
+                    invoker = invoker(permuteArguments(h, genericMethodType(1), 0, 0));
+                } else {
+                    // method()
+                    invoker = invoker(dropArguments(h, 0, Object.class));
+                }
+                Function<T,String> f = invoking(m, invoker, emptySet());
                 toS = noExWrap(m, a, ParseDir.TOS, f);
             } else if (strategy==To.TO_STRING_METHOD) {
                 toS = (Function)DEFAULT_TOS;
@@ -459,8 +471,10 @@ public abstract class Parser {
             type = type.getEnclosingClass();
 
         try {
-            return type.getDeclaredMethod("valueOf", String.class);
+            Method m = type.getDeclaredMethod("valueOf", String.class);
 //            if (m.getReturnType().equals(type)) throw new NoSuchMethodException();
+            if (!Modifier.isStatic(m.getModifiers())) throw new NoSuchMethodException();
+            return m;
         } catch ( NoSuchMethodException ex) {
             return null;
         }
@@ -469,14 +483,14 @@ public abstract class Parser {
     private static Method getMethodStatic(String name, Class<?> type) {
         try {
             Method m = type.getDeclaredMethod(name, String.class);
-            if (!m.getReturnType().equals(type)) throw new NoSuchMethodException();
+            if (!m.getReturnType().equals(type) || !Modifier.isStatic(m.getModifiers())) throw new NoSuchMethodException();
             return m;
         } catch (NoSuchMethodException ex) {
             return null;
         }
     }
 
-    private static <I,O> Function<I,O> parserOfI(Invokable<?,O> m, Class<I> itype, Class<O> otype, StringParseStrategy a, ParseDir dir) {
+    private static <I,O> Function<I,O> parserOfI(Invokable<?,O> m, Executable member, Class<I> itype, Class<O> otype, StringParseStrategy a, ParseDir dir) {
         Collection<Parameter> params = m.getParameters();
         if(params.size()>1)
             throw new IllegalArgumentException("Parser method/constructor must take 0 or 1 parameter");
@@ -487,31 +501,7 @@ public abstract class Parser {
         if(m!=null) ecs.addAll(map(m.getExceptionTypes(),tt -> tt.getRawType()));
 
         boolean no_input = params.isEmpty();
-        Function<I,O> f = no_input
-            ?   in -> {
-                    try {
-                        return m.invoke(null);
-                    } catch(IllegalAccessException | InvocationTargetException e ) {
-                        for(Class<?> ec : ecs) {
-                            if(e.getCause()!=null && ec.isInstance(e.getCause().getCause())) return null;
-                            if(ec.isInstance(e.getCause())) return null;
-                            if(ec.isInstance(e)) return null;
-                        }
-                        throw new RuntimeException("Parser cant invoke the method: " + m, e.getCause());
-                    }
-                }
-            :   in -> {
-                    try {
-                        return m.invoke(null, in);
-                    } catch(IllegalAccessException | InvocationTargetException e ) {
-                        for(Class<?> ec : ecs) {
-                            if(e.getCause()!=null && ec.isInstance(e.getCause().getCause())) return null;
-                            if(ec.isInstance(e.getCause())) return null;
-                            if(ec.isInstance(e)) return null;
-                        }
-                        throw new RuntimeException("Parser cant invoke the method: " + m, e.getCause());
-                    }
-                };
+        Function<I,O> f = invoking(member, invokerOf(member, no_input), ecs);
 
         return noEx(f, ecs);
     }
@@ -521,35 +511,97 @@ public abstract class Parser {
         if(a!=null) ecs.addAll(list(dir==ParseDir.TOS ? a.exTo() : a.exFrom())); else ecs.add(Exception.class);
         if(m!=null) ecs.addAll(list(m.getExceptionTypes()));
         boolean isSupplier = i==Void.class || i==void.class || i==null;
-        boolean isStatic = Modifier.isStatic(m.getModifiers());
-        Function<I,O> f = isSupplier
-            ?   in -> {
-                    try {
-                        return (O) m.invoke(null);
-                    } catch(IllegalAccessException | InvocationTargetException e ) {
-                        for(Class<?> ec : ecs) {
-                            if(e.getCause()!=null && ec.isInstance(e.getCause().getCause())) return null;
-                            if(ec.isInstance(e.getCause())) return null;
-                            if(ec.isInstance(e)) return null;
-                        }
-                        throw new RuntimeException("Parser cant invoke the method: " + m, e.getCause());
-                    }
-                }
-            :   in -> {
-                    try {
-                        return (O) m.invoke(null, in);
-                    } catch(IllegalAccessException | InvocationTargetException e ) {
-                        for(Class<?> ec : ecs) {
-                            if(e.getCause()!=null && ec.isInstance(e.getCause().getCause())) return null;
-                            if(ec.isInstance(e.getCause())) return null;
-                            if(ec.isInstance(e)) return null;
-                        }
-                        throw new RuntimeException("Parser cant invoke the method: " + m, e.getCause());
-                    }
-                };
+        Function<I,O> f = invoking(m, invokerOf(m, isSupplier), ecs);
         return noExWrap(m, a, dir, f);
     }
 
+    /**
+     * Returns function calling the invoker. Exception thrown by the invoked method, which is, or is
+     * caused by, an instance of any of the specified exception types, results in null.
+     */
+    private static <I,O> Function<I,O> invoking(Executable m, Invoker invoker, Set<Class<?>> ecs) {
+        return in -> {
+            try {
+                return (O) invoker.invoke(in);
+            } catch(Throwable e) {
+                for(Class<?> ec : ecs) {
+                    if(ec.isInstance(e.getCause())) return null;
+                    if(ec.isInstance(e)) return null;
+                }
+                throw new RuntimeException("Parser cant invoke the method: " + m, e);
+            }
+        };
+    }
+
+    /**
+     * Returns invoker of the static method or constructor, taking the input as the only argument
+     * or ignoring it if the method has no parameters.
+     */
+    private static Invoker invokerOf(Executable m, boolean no_input) {
+        MethodHandle h = handleOf(m);
+        return no_input ? invoker(dropArguments(h, 0, Object.class)) : link(m, h);
+    }
+
+    /**
+     * Returns direct method handle of the method or constructor. The member is made accessible if
+     * possible, so it can be invoked no matter its visibility.
+     *
+     * @throws IllegalArgumentException if the member is not accessible
+     */
+    private static MethodHandle handleOf(Executable m) {
+        try {
+            m.trySetAccessible();
+            return m instanceof Method
+                ? LOOKUP.unreflect((Method) m)
+                : LOOKUP.unreflectConstructor((Constructor<?>) m);
+        } catch(IllegalAccessException | SecurityException e) {
+            throw new IllegalArgumentException("Parser cant access the method: " + m, e);
+        }
+    }
+
+    /**
+     * Returns invoker of the direct method handle of the method or constructor, which must take
+     * exactly one argument (the receiver of an instance method counts).
+     * <p/>
+     * If possible, the invoker is generated by {@link LambdaMetafactory}, which makes the invocation
+     * as fast as that of a method reference. This is only possible for public members of public
+     * classes visible from the class loader of this class (e.g., not widget classes), because the
+     * generated class calls the member directly. Otherwise invoker of the method handle is returned.
+     */
+    private static Invoker link(Executable m, MethodHandle h) {
+        if(isLinkable(m)) {
+            try {
+                return (Invoker) LambdaMetafactory.metafactory(
+                    LOOKUP, "invoke", methodType(Invoker.class), genericMethodType(1), h, h.type().wrap()
+                ).getTarget().invokeExact();
+            } catch(Throwable e) {
+                // fall back to the method handle
+            }
+        }
+        return invoker(h);
+    }
+
+    /** Returns invoker of the method handle, which must take exactly one argument. */
+    private static Invoker invoker(MethodHandle h) {
+        MethodHandle g = h.asType(genericMethodType(1));
+        return in -> g.invokeExact(in);
+    }
+
+    private static boolean isLinkable(Executable m) {
+        Class<?> c = m.getDeclaringClass();
+        if(!Modifier.isPublic(m.getModifiers()) || !Modifier.isPublic(c.getModifiers())) return false;
+        try {
+            return Class.forName(c.getName(), false, Parser.class.getClassLoader())==c;
+        } catch(ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /** Function invoking a method. Unlike {@link Function}, it lets the method throw anything. */
+    private interface Invoker {
+        Object invoke(Object in) throws Throwable;
+    }
+
     private static <O> Function<String,O> parserOfC(StringParseStrategy a, ParseDir dir, Class<O> type, Class<?>... params) {
         try {
             Constructor<O> cn = type.getConstructor(params);
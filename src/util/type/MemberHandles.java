@@ -0,0 +1,141 @@
+package util.type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.invoke.MethodType.genericMethodType;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Cache of method handles of fields and methods, backing the reflection methods of {@link Util}.
+ * <p/>
+ * Every member is looked up and made accessible only once, on first use. Then it is accessed through
+ * a method handle adapted to a generic type, so callers can use {@link MethodHandle#invokeExact(Object...)}
+ * and avoid the lookup, access checks and argument arrays of core reflection on every call.
+ * <p/>
+ * The handles are stored per class in a {@link ClassValue}, so the cache does not prevent classes
+ * loaded by their own class loaders, e.g., widgets, from being unloaded.
+ * <p/>
+ * Members that are not found are not cached, failed lookup is repeated on every call.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Martin Polakovic
+ */
+final class MemberHandles {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType GETTER = genericMethodType(1);
+    private static final MethodType SETTER = methodType(void.class, Object.class, Object.class);
+    private static final MethodType METHOD_P0 = genericMethodType(1);
+    private static final MethodType METHOD_P1 = genericMethodType(2);
+    private static final ClassValue<Members> MEMBERS = new ClassValue<>() {
+        @Override
+        protected Members computeValue(Class<?> type) {
+            return new Members();
+        }
+    };
+
+    private MemberHandles() {}
+
+    /**
+     * Returns handle of type (Object)Object returning value of the field of the object passed in.
+     * For static field the object is ignored.
+     *
+     * @param c class declaring the field or its subclass
+     * @param name name of the field
+     */
+    static MethodHandle getter(Class<?> c, String name) throws ReflectiveOperationException {
+        Map<String,MethodHandle> getters = MEMBERS.get(c).getters;
+        MethodHandle h = getters.get(name);
+        if (h==null) {
+            Field f = accessible(Util.getField(c, name));
+            h = LOOKUP.unreflectGetter(f);
+            if (Modifier.isStatic(f.getModifiers())) h = MethodHandles.dropArguments(h, 0, Object.class);
+            h = h.asType(GETTER);
+            getters.putIfAbsent(name, h);
+        }
+        return h;
+    }
+
+    /**
+     * Returns handle of type (Object,Object)void setting value of the field of the object passed in.
+     * For static field the object is ignored.
+     *
+     * @param c class declaring the field or its subclass
+     * @param name name of the field
+     */
+    static MethodHandle setter(Class<?> c, String name) throws ReflectiveOperationException {
+        Map<String,MethodHandle> setters = MEMBERS.get(c).setters;
+        MethodHandle h = setters.get(name);
+        if (h==null) {
+            Field f = accessible(Util.getField(c, name));
+            h = LOOKUP.unreflectSetter(f);
+            if (Modifier.isStatic(f.getModifiers())) h = MethodHandles.dropArguments(h, 0, Object.class);
+            h = h.asType(SETTER);
+            setters.putIfAbsent(name, h);
+        }
+        return h;
+    }
+
+    /**
+     * Returns handle of type (Object)Object invoking the method with no parameters on the object
+     * passed in. For static method the object is ignored. Void method returns null.
+     *
+     * @param c class declaring the method
+     * @param name name of the method
+     */
+    static MethodHandle method(Class<?> c, String name) throws ReflectiveOperationException {
+        Map<String,MethodHandle> methods = MEMBERS.get(c).methodsP0;
+        MethodHandle h = methods.get(name);
+        if (h==null) {
+            h = unreflect(c.getDeclaredMethod(name)).asType(METHOD_P0);
+            methods.putIfAbsent(name, h);
+        }
+        return h;
+    }
+
+    /**
+     * Returns handle of type (Object,Object)Object invoking the method with one parameter on the
+     * object passed in. For static method the object is ignored. Void method returns null.
+     *
+     * @param c class declaring the method
+     * @param name name of the method
+     * @param paramType type of the parameter of the method
+     */
+    static MethodHandle method(Class<?> c, String name, Class<?> paramType) throws ReflectiveOperationException {
+        Map<Class<?>,MethodHandle> methods = MEMBERS.get(c).methodsP1.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+        MethodHandle h = methods.get(paramType);
+        if (h==null) {
+            h = unreflect(c.getDeclaredMethod(name, paramType)).asType(METHOD_P1);
+            methods.putIfAbsent(paramType, h);
+        }
+        return h;
+    }
+
+    private static MethodHandle unreflect(Method m) throws IllegalAccessException {
+        MethodHandle h = LOOKUP.unreflect(accessible(m));
+        if (Modifier.isStatic(m.getModifiers())) h = MethodHandles.dropArguments(h, 0, Object.class);
+        return h;
+    }
+
+    // the handle keeps the access, so the flag of the (copied) member need not be reset
+    private static <M extends AccessibleObject> M accessible(M member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    private static final class Members {
+        final Map<String,MethodHandle> getters = new ConcurrentHashMap<>();
+        final Map<String,MethodHandle> setters = new ConcurrentHashMap<>();
+        final Map<String,MethodHandle> methodsP0 = new ConcurrentHashMap<>();
+        final Map<String,Map<Class<?>,MethodHandle>> methodsP1 = new ConcurrentHashMap<>();
+    }
+}
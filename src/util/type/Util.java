@@ -322,17 +322,15 @@ public interface Util {
 
     /**
      * Gets value of a field of an object using reflection or null on error. Consumes all
-     * exceptions.
+     * exceptions. The field is looked up only once, then it is accessed through a cached method handle.
      * @return value of a field of given object or null if value null or not possible
      */
     static <T> T getFieldValue(Object o, Class<T> type, String fieldname) {
         try {
-            Field f = getField(o.getClass(), fieldname);
-            f.setAccessible(true);
-            T t = (T) f.get(o);
-            f.setAccessible(false);
-            return t;
-        } catch(Exception e) {
+            return (T) (Object) MemberHandles.getter(o.getClass(), fieldname).invokeExact(o);
+        } catch(Error e) {
+            throw e;
+        } catch(Throwable e) {
             return null;
         }
     }
@@ -358,11 +356,10 @@ public interface Util {
      */
     static void setField(Class c, Object o, String f, Object v) {
         try {
-            Field fl = getField(c,f);
-            fl.setAccessible(true);
-            fl.set(o,v);
-            fl.setAccessible(false);
-        } catch (Exception x) {
+            MemberHandles.setter(c,f).invokeExact(o,v);
+        } catch (Error x) {
+            throw x;
+        } catch (Throwable x) {
             throw new RuntimeException(x);
         }
     }
@@ -370,25 +367,17 @@ public interface Util {
     /** Invokes method with no parameters on given object and returns the result. */
     static <T> Object invokeMethodP0(Class<T> exactclass, T o, String name) {
         try {
-            Method m = exactclass.getDeclaredMethod(name);
-            m.setAccessible(true);
-            Object r = m.invoke(o);
-            m.setAccessible(false);
-            return r;
-        } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+            return (Object) MemberHandles.method(exactclass,name).invokeExact((Object) o);
+        } catch (Throwable e) {
             throw new RuntimeException("Failed to invoke method: " + name, e);
         }
     }
 
-    /** Invokes method with no parameters on given object and returns the result. */
+    /** Invokes method with one parameter on given object and returns the result. */
     static <T,P> Object invokeMethodP1(Class<T>  exactclass, T o, String name, Class<P> paramtype, P param) {
         try {
-            Method m = exactclass.getDeclaredMethod(name,paramtype);
-            m.setAccessible(true);
-            Object r = m.invoke(o,param);
-            m.setAccessible(false);
-            return r;
-        } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+            return (Object) MemberHandles.method(exactclass,name,paramtype).invokeExact((Object) o, (Object) param);
+        } catch (Throwable e) {
             throw new RuntimeException("Failed to invoke method: " + name, e);
         }
     }
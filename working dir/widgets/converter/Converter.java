@@ -18,6 +18,7 @@ import javafx.collections.ObservableList;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
@@ -25,9 +26,7 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 
 import audio.Item;
-import audio.Player;
 import audio.tagging.Metadata;
-import audio.tagging.MetadataReader;
 import audio.tagging.MetadataWriter;
 import de.jensd.fx.glyphs.octicons.OctIcon;
 import gui.itemnode.ChainValueNode.ConfigPane;
@@ -184,16 +183,13 @@ public class Converter extends ClassController implements SongWriter {
         acts.accumulate(new Act<>("Edit song tags", Item.class, 100, () -> map(util.type.Util.getEnumConstants(Metadata.Field.class),Object::toString), data -> {
             List<Item> songs = (List)list(source);
             if(songs.isEmpty()) return;
-            Fut.fut()
-               .then(() -> {
-                    for(int i=0; i<songs.size(); i++) {
-                        int j = i;
-                        MetadataWriter.useNoRefresh(songs.get(i), w -> data.forEach((field,vals) -> w.setFieldS(Metadata.Field.valueOf(field), vals.get(j))));
-                    }
-                    Player.refreshItemsWith(MetadataReader.readMetadata(songs));
-               },Player.IO_THREAD)
-               .showProgress(getWidget().getWindow().taskAdd())
-               .run();
+            ProgressIndicator p = getWidget().getWindow().taskAdd();
+            p.setProgress(-1);
+            MetadataWriter.useEach(songs,
+                j -> w -> data.forEach((field,vals) -> w.setFieldS(Metadata.Field.valueOf(field), vals.get(j))),
+                (done, total) -> p.setProgress(done/(double) total),
+                items -> p.setProgress(1)
+            );
         }));
         acts.accumulate(new WriteFileAct());
         acts.accumulate(new ActCreateDirs());
@@ -163,6 +163,9 @@ public class Library extends FXMLController implements SongReader {
     private final Property<Boolean> editOnAdd = editOnAdd_menuItem.selected;
 
     private final ExecuteN runOnce = new ExecuteN(1);
+    // whether the table displays the in memory library and the latest library change was applied to it
+    private boolean displaysLibrary = false;
+    private boolean libraryChangeApplied = false;
 
 
     @Override
@@ -178,12 +181,21 @@ public class Library extends FXMLController implements SongReader {
         table.setFixedCellSize(Gui.font.getValue().getSize() + 5);
         table.getSelectionModel().setSelectionMode(MULTIPLE);
         table.searchSetColumn(TITLE);
+        table.setFilterIndex(Db.items_index::predicate);
         d(maintain(orient,table.nodeOrientationProperty()));
         d(maintain(zeropad,table.zeropadIndex));
         d(maintain(orig_index,table.showOriginalIndex));
         d(maintain(show_header,table.headerVisible));
         d(maintain(show_footer,table.footerVisible));
 
+        // update only affected rows when displaying library
+        d(Db.onLibraryChange(c -> {
+            if(displaysLibrary) {
+                table.updateItemsRaw(c.added, c.removed, c.updated);
+                libraryChangeApplied = true;
+            }
+        }));
+
         // add progress indicator to bottom controls
         ((Pane)table.footerPane.getRight()).getChildren().addAll(taskInfo.message, taskInfo.progressIndicator);
         taskInfo.setVisible(false);
@@ -303,7 +315,11 @@ public class Library extends FXMLController implements SongReader {
     @IsInput("To display")
     public void setItems(List<? extends Metadata> items) {
         if(items==null) return;
-        table.setItemsRaw(items);
+        boolean isLibrary = items==Db.items.o.getValue();
+        boolean isApplied = displaysLibrary && isLibrary && libraryChangeApplied;
+        displaysLibrary = isLibrary;
+        libraryChangeApplied = false;
+        if(!isApplied) table.setItemsRaw(items);
     }
 
     @FXML private void addDirectory() {
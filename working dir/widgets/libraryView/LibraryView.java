@@ -18,6 +18,7 @@ import audio.playlist.PlaylistManager;
 import audio.tagging.Metadata;
 import audio.tagging.Metadata.Field;
 import audio.tagging.MetadataGroup;
+import audio.tagging.MetadataGroupIndex;
 import gui.Gui;
 import gui.objects.contextmenu.ImprovedContextMenu;
 import gui.objects.contextmenu.SelectionMenuItem;
@@ -124,6 +125,10 @@ public class LibraryView extends FXMLController {
     );
 
     private final ExecuteN runOnce = new ExecuteN(1);
+    // groups of the displayed items, null if not built yet
+    private MetadataGroupIndex groups;
+    private List<Metadata> groupsSource;
+    private boolean libraryChangeApplied = false;
 
     @Override
     public void init() {
@@ -262,6 +267,18 @@ public class LibraryView extends FXMLController {
                     sel_last = nv==null ? "null" : VALUE.toS(nv,nv.getValue(), "");
         }));
 
+        // update only affected groups when displaying library
+        d(Db.onLibraryChange(c -> {
+            boolean displaysLibrary = groups!=null && groupsSource==Db.items.o.getValue() && groups.field==fieldFilter.getValue();
+            if(displaysLibrary) {
+                MetadataGroupIndex.Change gc = groups.update(c.added, c.removed, c.updated);
+                selectionStore();
+                table.updateItemsRaw(gc.added, gc.removed, gc.updated);
+                selectionReStore();
+                libraryChangeApplied = true;
+            }
+        }));
+
         // prevent volume change
         table.setOnScroll(Event::consume);
     }
@@ -309,14 +326,27 @@ public class LibraryView extends FXMLController {
     /** populates metadata groups to table from metadata list */
     private void setItems(List<Metadata> list) {
         if(list==null) return;
+        boolean isApplied = libraryChangeApplied && list==Db.items.o.getValue();
+        libraryChangeApplied = false;
+        if(isApplied) {
+            groupsSource = list;
+            out_sel_met.setValue(filterList(list,true,false));
+            return;
+        }
+
+        groups = null;
+        groupsSource = null;
         fut(fieldFilter.getValue())
             .use(f -> {
-                List<MetadataGroup> mgs = stream(
-                    MetadataGroup.groupOf(f,list),
-                    MetadataGroup.groupsOf(f,list)
-                ).collect(toList());
+                MetadataGroupIndex mgi = new MetadataGroupIndex(f);
+                mgi.setAll(list);
+                List<MetadataGroup> mgs = mgi.getGroups();
                 List<Metadata> fl = filterList(list,true,false);
                 runLater(() -> {
+                    if(in_items.getValue()==list && fieldFilter.getValue()==f) {
+                        groups = mgi;
+                        groupsSource = list;
+                    }
                     if(!mgs.isEmpty()) {
                         selectionStore();
                         table.setItemsRaw(mgs);
@@ -92,7 +92,7 @@ public class Spectrum extends ClassController  {
             double midH = getHeight()/2;
             double barGap = 5;
             double barW = (getWidth()+barGap)/bars-barGap;
-            for (int i = 0; i < bars; i++) {
+            for (int i = 0; i < bars && i < magnitudes.length; i++) {
 //                double barH = 60*phases[i];
                 double barH = 60 + magnitudes[i]; // i so don't understand this line
                        barH *=8;
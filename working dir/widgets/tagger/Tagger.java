@@ -438,7 +438,7 @@ public class Tagger extends FXMLController implements SongWriter, SongReader {
             // if ((boolean)custom2F.getUserData())      w.setCustom2(custom2F.getText());
             // if ((boolean)custom3F.getUserData())      w.setCustom3(custom3F.getText());
             // if ((boolean)custom5F.getUserData())      w.setCustom5(custom5F.getText());
-        }, items -> {
+        }, (done, total) -> progressI.setProgress(done/(double) total), items -> {
             // post (make sure its on FX)
             runFX(() -> {
                 writing = false;